@@ -0,0 +1,91 @@
+package com.co2plant.rtc.loadgen;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scenario settings, from {@code --name=value} arguments.
+ *
+ * @param signalUrl     WebSocket endpoint under test
+ * @param metricsUrl    Prometheus scrape endpoint of the same node for server-side throughput; null to skip
+ * @param clients       simulated clients arriving over the run, rejoins after churn not included
+ * @param roomSize      clients per room; rooms are filled one after the other, so arrivals storm a room
+ * @param arrivalRate   mean arrivals per second (Poisson); 0 starts every client at once
+ * @param hold          time a client stays in its room once connected; exponentially distributed around
+ *                      this mean when churn is on, exact otherwise
+ * @param churn         probability that a client rejoins its room with a new connection after leaving
+ * @param maxDuration   hard stop; clients still running are abandoned
+ * @param candidates    ICE candidates each client trickles per peer connection
+ * @param phaseTimeout  how long a client waits for each server reply before giving up
+ * @param busyRetries   times a join or subscription refused as busy is sent again after the server's
+ *                      {@code retryAfter}, as the browser client does; 0 counts the refusal as a failure
+ * @param seed          seed for the arrival schedule
+ */
+record LoadConfig(URI signalUrl, URI metricsUrl, int clients, int roomSize, double arrivalRate, Duration hold,
+                  double churn, Duration maxDuration, int candidates, Duration phaseTimeout, int busyRetries,
+                  long seed) {
+
+    static final String USAGE = """
+            Options (all optional):
+              --url=ws://localhost:8080/signal
+              --metrics=http://localhost:8080/actuator/prometheus   (empty to skip)
+              --clients=100 --room-size=4 --rate=20 --hold=10s --churn=0
+              --max-duration=5m --candidates=4 --timeout=10s --busy-retries=5 --seed=42
+            Durations take ms, s or m suffixes.""";
+
+    static LoadConfig parse(String... args) {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got '" + arg + "'\n" + USAGE);
+            }
+            final int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        final String metrics = options.remove("metrics");
+        final LoadConfig config = new LoadConfig(
+                URI.create(options.getOrDefault("url", "ws://localhost:8080/signal")),
+                metrics == null ? URI.create("http://localhost:8080/actuator/prometheus")
+                        : metrics.isEmpty() ? null : URI.create(metrics),
+                Integer.parseInt(options.getOrDefault("clients", "100")),
+                Integer.parseInt(options.getOrDefault("room-size", "4")),
+                Double.parseDouble(options.getOrDefault("rate", "20")),
+                duration(options.getOrDefault("hold", "10s")),
+                Double.parseDouble(options.getOrDefault("churn", "0")),
+                duration(options.getOrDefault("max-duration", "5m")),
+                Integer.parseInt(options.getOrDefault("candidates", "4")),
+                duration(options.getOrDefault("timeout", "10s")),
+                Integer.parseInt(options.getOrDefault("busy-retries", "5")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        options.keySet().removeAll(Set.of("url", "clients", "room-size", "rate", "hold", "churn",
+                "max-duration", "candidates", "timeout", "busy-retries", "seed"));
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown option(s) " + options.keySet() + "\n" + USAGE);
+        }
+        if (config.roomSize < 1 || config.clients < 1) {
+            throw new IllegalArgumentException("--clients and --room-size must be at least 1");
+        }
+        if (config.busyRetries < 0) {
+            throw new IllegalArgumentException("--busy-retries must not be negative");
+        }
+        if (config.churn < 0 || config.churn >= 1) {
+            throw new IllegalArgumentException("--churn must be in [0, 1)");
+        }
+        return config;
+    }
+
+    static Duration duration(String text) {
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        final long amount = Long.parseLong(text.substring(0, text.length() - 1));
+        return switch (text.charAt(text.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("Bad duration '" + text + "'");
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package com.co2plant.rtc.loadgen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives {@code /signal} with simulated clients and reports what one node sustains.
+ * <p>
+ * Clients arrive open-loop (Poisson at {@code --rate}), fill rooms of {@code --room-size} in order, go
+ * through join, publish, subscribe, trickle and leave, and with {@code --churn} rejoin with a fresh
+ * connection. Each client runs on its own virtual thread. Busy replies are counted apart from errors
+ * and retried as the browser client does ({@code --busy-retries}). Against a laptop build:
+ * <pre>
+ *   ./gradlew fakeKms
+ *   KURENTO_URL=ws://localhost:8888/kurento ./gradlew bootRun
+ *   ./gradlew :loadgen:run --args="--clients=500 --room-size=8 --rate=50"
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private final LoadConfig config;
+    private final PhaseStats stats = new PhaseStats();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder sessions = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadConfig config;
+        try {
+            config = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new LoadGenerator(config).run(System.out);
+    }
+
+    void run(PrintStream out) throws InterruptedException {
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             ExecutorService background = Executors.newVirtualThreadPerTaskExecutor()) {
+            final HttpClient http = HttpClient.newBuilder().executor(background).build();
+            final ServerMetrics before = scrape(http, out);
+            final Random arrivals = new Random(config.seed());
+            out.printf("%d clients in rooms of %d at %.1f/s against %s%n", config.clients(), config.roomSize(),
+                    config.arrivalRate(), config.signalUrl());
+
+            final long start = System.nanoTime();
+            final long deadline = start + config.maxDuration().toNanos();
+            long nextArrival = start;
+            for (int i = 0; i < config.clients() && System.nanoTime() < deadline; i++) {
+                if (config.arrivalRate() > 0) {
+                    // Exponential inter-arrival times make a Poisson process
+                    nextArrival += (long) (-Math.log(1 - arrivals.nextDouble()) / config.arrivalRate() * 1e9);
+                    TimeUnit.NANOSECONDS.sleep(Math.max(0, nextArrival - System.nanoTime()));
+                }
+                final String room = "load-" + (i / config.roomSize());
+                final String name = "client-" + i;
+                clients.execute(() -> live(http, background, room, name, deadline));
+            }
+            clients.shutdown();
+            if (!clients.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                out.println("max duration reached, abandoning clients still running");
+                clients.shutdownNow();
+            }
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            report(out, elapsed, before, scrape(http, out));
+            background.shutdownNow();
+        }
+    }
+
+    private void live(HttpClient http, ExecutorService background, String room, String name, long deadline) {
+        int generation = 0;
+        boolean again;
+        do {
+            final int now = active.incrementAndGet();
+            peakActive.accumulateAndGet(now, Math::max);
+            sessions.increment();
+            try {
+                final String identity = generation == 0 ? name : name + "-" + generation;
+                final SimulatedClient client = new SimulatedClient(room, identity, config, stats, serverErrors,
+                        background);
+                again = client.run(http, holdNanos()) && ThreadLocalRandom.current().nextDouble() < config.churn();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                active.decrementAndGet();
+            }
+            generation++;
+        } while (again && System.nanoTime() < deadline);
+    }
+
+    private long holdNanos() {
+        final long mean = config.hold().toNanos();
+        if (config.churn() == 0) {
+            return mean;
+        }
+        return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * mean);
+    }
+
+    private ServerMetrics scrape(HttpClient http, PrintStream out) throws InterruptedException {
+        try {
+            return ServerMetrics.scrape(http, config.metricsUrl());
+        } catch (IOException e) {
+            out.println("server metrics unavailable: " + e.getMessage());
+            return ServerMetrics.EMPTY;
+        }
+    }
+
+    private void report(PrintStream out, Duration elapsed, ServerMetrics before, ServerMetrics after) {
+        final double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        out.println();
+        out.printf("ran %.1f s, %d sessions, peak %d concurrent, %d server error replies%n",
+                seconds, sessions.sum(), peakActive.get(), serverErrors.sum());
+        // Admitted joins are the throughput; refusals show how hard admission control pushed back
+        out.printf("joins completed: %.1f/s, refused as busy: %.1f/s%n", stats.count(Phase.JOIN) / seconds,
+                stats.refusals(Phase.JOIN) / seconds);
+        out.println();
+        stats.print(out);
+        if (after.messages().isEmpty()) {
+            return;
+        }
+        final ServerMetrics rates = after.ratesSince(before, elapsed);
+        out.println();
+        out.println("server throughput (/s):");
+        rates.messages().forEach((type, rate) -> out.printf("  %-20s %10.1f%n", type, rate));
+        rates.kurentoCalls().forEach((operation, rate) -> out.printf("  kms %-16s %10.1f%n", operation, rate));
+    }
+}
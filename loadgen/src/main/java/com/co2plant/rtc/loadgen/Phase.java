@@ -0,0 +1,17 @@
+package com.co2plant.rtc.loadgen;
+
+/**
+ * Steps of a simulated client's life, each measured separately.
+ */
+enum Phase {
+    /** WebSocket open and joinRoom until existingParticipants arrives */
+    JOIN,
+    /** Own offer until its receiveVideoAnswer */
+    PUBLISH,
+    /** Offer for one existing participant until its receiveVideoAnswer; one sample per subscription */
+    SUBSCRIBE,
+    /** Offer until the server's first ICE candidate for that connection; one sample per connection */
+    TRICKLE,
+    /** leaveRoom and the WebSocket close handshake */
+    LEAVE
+}
@@ -0,0 +1,73 @@
+package com.co2plant.rtc.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms, failure counts and busy refusals per {@link Phase}, safe to record into from any thread.
+ */
+final class PhaseStats {
+
+    // Microsecond resolution up to one minute, three significant digits
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<Phase, Histogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> failures = new EnumMap<>(Phase.class);
+    // Requests the server turned away with a busy error, retried or not
+    private final Map<Phase, LongAdder> refusals = new EnumMap<>(Phase.class);
+
+    PhaseStats() {
+        for (final Phase phase : Phase.values()) {
+            latencies.put(phase, new ConcurrentHistogram(MAX_MICROS, 3));
+            failures.put(phase, new LongAdder());
+            refusals.put(phase, new LongAdder());
+        }
+    }
+
+    void record(Phase phase, long startNanos, long endNanos) {
+        final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+        latencies.get(phase).recordValue(Math.min(micros, MAX_MICROS));
+    }
+
+    void fail(Phase phase) {
+        failures.get(phase).increment();
+    }
+
+    void refuse(Phase phase) {
+        refusals.get(phase).increment();
+    }
+
+    long count(Phase phase) {
+        return latencies.get(phase).getTotalCount();
+    }
+
+    long failures(Phase phase) {
+        return failures.get(phase).sum();
+    }
+
+    long refusals(Phase phase) {
+        return refusals.get(phase).sum();
+    }
+
+    double percentileMillis(Phase phase, double percentile) {
+        return latencies.get(phase).getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-10s %8s %7s %7s %9s %9s %9s %9s %9s%n",
+                "phase", "count", "failed", "busy", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (final Phase phase : Phase.values()) {
+            final Histogram histogram = latencies.get(phase);
+            out.printf("%-10s %8d %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", phase.name().toLowerCase(),
+                    histogram.getTotalCount(), failures(phase), refusals(phase),
+                    percentileMillis(phase, 50), percentileMillis(phase, 90), percentileMillis(phase, 99),
+                    percentileMillis(phase, 99.9), histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.co2plant.rtc.loadgen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counters scraped from the node's {@code /actuator/prometheus}: handled signaling messages by type and
+ * Kurento calls by operation.
+ */
+record ServerMetrics(Map<String, Double> messages, Map<String, Double> kurentoCalls) {
+
+    private static final Pattern SAMPLE = Pattern.compile("^(\\w+)\\{([^}]*)}\\s+(\\S+)");
+
+    static final ServerMetrics EMPTY = new ServerMetrics(Map.of(), Map.of());
+
+    static ServerMetrics scrape(HttpClient http, URI url) throws IOException, InterruptedException {
+        if (url == null) {
+            return EMPTY;
+        }
+        final HttpRequest request = HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(5)).GET().build();
+        final HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Scraping " + url + " returned " + response.statusCode());
+        }
+        return parse(response.body());
+    }
+
+    static ServerMetrics parse(String exposition) {
+        final Map<String, Double> messages = new TreeMap<>();
+        final Map<String, Double> kurentoCalls = new TreeMap<>();
+        for (final String line : exposition.split("\n")) {
+            final Matcher sample = SAMPLE.matcher(line);
+            if (!sample.find()) {
+                continue;
+            }
+            switch (sample.group(1)) {
+                case "rtc_signaling_message_seconds_count" ->
+                        messages.merge(label(sample.group(2), "type"), Double.parseDouble(sample.group(3)), Double::sum);
+                case "rtc_kurento_rpc_seconds_count" ->
+                        kurentoCalls.merge(label(sample.group(2), "operation"), Double.parseDouble(sample.group(3)),
+                                Double::sum);
+                default -> {
+                }
+            }
+        }
+        return new ServerMetrics(messages, kurentoCalls);
+    }
+
+    private static String label(String labels, String name) {
+        final Matcher value = Pattern.compile("\\b" + name + "=\"([^\"]*)\"").matcher(labels);
+        return value.find() ? value.group(1) : "";
+    }
+
+    /**
+     * @return per-second rates of what happened between {@code before} and this scrape
+     */
+    ServerMetrics ratesSince(ServerMetrics before, Duration elapsed) {
+        final double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        return new ServerMetrics(rates(messages, before.messages, seconds),
+                rates(kurentoCalls, before.kurentoCalls, seconds));
+    }
+
+    private static Map<String, Double> rates(Map<String, Double> after, Map<String, Double> before, double seconds) {
+        final Map<String, Double> rates = new TreeMap<>();
+        after.forEach((key, count) -> rates.put(key, (count - before.getOrDefault(key, 0.0)) / seconds));
+        return rates;
+    }
+}
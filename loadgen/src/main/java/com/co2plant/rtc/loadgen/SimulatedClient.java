@@ -0,0 +1,307 @@
+package com.co2plant.rtc.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One participant speaking the browser client's protocol: join, publish, subscribe to everyone already
+ * in the room (and to later arrivals), trickle candidates, stay, leave. No media flows; SDP and
+ * candidates are canned.
+ * <p>
+ * A join or subscription refused as {@code busy} is counted and, like the browser client does, sent again
+ * after the server's {@code retryAfter}; its latency runs from the first attempt, so it includes the wait.
+ */
+final class SimulatedClient implements WebSocket.Listener {
+
+    static final String OFFER = "v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n"
+            + "a=group:BUNDLE 0 1\\r\\na=msid-semantic: WMS\\r\\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111\\r\\nc=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n"
+            + "a=ice-ufrag:load\\r\\na=ice-pwd:loadgeneratorpassword00\\r\\na=ice-options:trickle\\r\\n"
+            + "a=fingerprint:sha-256 00:11:22:33:44:55:66:77:88:99:AA:BB:CC:DD:EE:FF:00:11:22:33:44:55:66:77:88:99:AA:BB:CC:DD:EE:FF\\r\\n"
+            + "a=setup:actpass\\r\\na=mid:0\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\na=rtpmap:111 opus/48000/2\\r\\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96\\r\\nc=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n"
+            + "a=ice-ufrag:load\\r\\na=ice-pwd:loadgeneratorpassword00\\r\\na=ice-options:trickle\\r\\n"
+            + "a=setup:actpass\\r\\na=mid:1\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\na=rtpmap:96 VP8/90000\\r\\n";
+
+    // Wait before sending a busy request again when the server gives no hint, as in the browser client
+    private static final long BUSY_DEFAULT_RETRY_MS = 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String room;
+    private final String name;
+    private final LoadConfig config;
+    private final PhaseStats stats;
+    private final LongAdder serverErrors;
+    private final ExecutorService background;
+
+    private final CompletableFuture<List<String>> joined = new CompletableFuture<>();
+    // Completed with the System.nanoTime() of arrival, keyed by the stream's sender name
+    private final ConcurrentMap<String, CompletableFuture<Long>> answers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Long>> firstCandidates = new ConcurrentHashMap<>();
+    private final Queue<String> newcomers = new ConcurrentLinkedQueue<>();
+    // Busy retries so far, keyed by "joinRoom" or "receiveVideoFrom/" plus the sender
+    private final ConcurrentMap<String, Integer> busyRetries = new ConcurrentHashMap<>();
+    private final StringBuilder partial = new StringBuilder();
+    private volatile boolean published;
+    private WebSocket socket;
+
+    SimulatedClient(String room, String name, LoadConfig config, PhaseStats stats, LongAdder serverErrors,
+                    ExecutorService background) {
+        this.room = room;
+        this.name = name;
+        this.config = config;
+        this.stats = stats;
+        this.serverErrors = serverErrors;
+        this.background = background;
+    }
+
+    /**
+     * Runs the whole life of the client. Each phase that times out or fails is counted and ends the run.
+     *
+     * @return false if a phase failed
+     */
+    boolean run(HttpClient http, long holdNanos) throws InterruptedException {
+        Phase phase = Phase.JOIN;
+        try {
+            long start = System.nanoTime();
+            socket = http.newWebSocketBuilder()
+                    .connectTimeout(config.phaseTimeout())
+                    .buildAsync(config.signalUrl(), this)
+                    .get(config.phaseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            send(joinMessage());
+            final List<String> others = await(joined);
+            stats.record(Phase.JOIN, start, System.nanoTime());
+
+            phase = Phase.PUBLISH;
+            start = offer(name);
+            stats.record(Phase.PUBLISH, start, await(answer(name)));
+            trickle(name);
+
+            phase = Phase.SUBSCRIBE;
+            final List<Long> offered = new ArrayList<>(others.size());
+            for (final String other : others) {
+                offered.add(offer(other));
+            }
+            published = true;
+            background.execute(this::subscribeLate);
+            for (int i = 0; i < others.size(); i++) {
+                stats.record(Phase.SUBSCRIBE, offered.get(i), await(answer(others.get(i))));
+                trickle(others.get(i));
+            }
+
+            phase = Phase.TRICKLE;
+            stats.record(Phase.TRICKLE, start, await(firstCandidate(name)));
+            for (int i = 0; i < others.size(); i++) {
+                stats.record(Phase.TRICKLE, offered.get(i), await(firstCandidate(others.get(i))));
+            }
+
+            TimeUnit.NANOSECONDS.sleep(holdNanos);
+
+            phase = Phase.LEAVE;
+            start = System.nanoTime();
+            send("{\"id\":\"leaveRoom\"}");
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "bye")
+                    .get(config.phaseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            stats.record(Phase.LEAVE, start, System.nanoTime());
+            return true;
+        } catch (InterruptedException e) {
+            abort();
+            throw e;
+        } catch (Exception e) {
+            stats.fail(phase);
+            abort();
+            return false;
+        }
+    }
+
+    private long offer(String sender) throws Exception {
+        final long start = System.nanoTime();
+        send(offerMessage(sender));
+        return start;
+    }
+
+    private String joinMessage() {
+        return "{\"id\":\"joinRoom\",\"room\":\"" + room + "\",\"name\":\"" + name + "\",\"role\":\"user\"}";
+    }
+
+    private String offerMessage(String sender) {
+        return "{\"id\":\"receiveVideoFrom\",\"sender\":\"" + sender + "\",\"sdpOffer\":\"" + OFFER + "\"}";
+    }
+
+    // The client's own candidates, sent as soon as its side of the connection exists
+    private void trickle(String connection) throws Exception {
+        for (int i = 0; i < config.candidates(); i++) {
+            send("{\"id\":\"onIceCandidate\",\"name\":\"" + connection + "\",\"candidate\":{\"candidate\":"
+                    + "\"candidate:" + (i + 1) + " 1 UDP " + (2122252543 - i) + " 10.0.0." + (i + 1)
+                    + " " + (50000 + i) + " typ host\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}");
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get(config.phaseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Long> answer(String sender) {
+        return answers.computeIfAbsent(sender, s -> new CompletableFuture<>());
+    }
+
+    private CompletableFuture<Long> firstCandidate(String sender) {
+        return firstCandidates.computeIfAbsent(sender, s -> new CompletableFuture<>());
+    }
+
+    // WebSocket allows one outstanding send at a time
+    private synchronized void send(String text) throws Exception {
+        socket.sendText(text, true).get(config.phaseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void abort() {
+        if (socket != null) {
+            socket.abort();
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        final long now = System.nanoTime();
+        partial.append(data);
+        if (last) {
+            final String text = partial.toString();
+            partial.setLength(0);
+            try {
+                receive(mapper.readTree(text), now);
+            } catch (Exception e) {
+                serverErrors.increment();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    private void receive(JsonNode message, long now) {
+        switch (message.path("id").asText()) {
+            case "existingParticipants" -> {
+                final List<String> names = new ArrayList<>();
+                for (final JsonNode participant : message.path("data")) {
+                    names.add(participant.path("name").asText());
+                }
+                joined.complete(names);
+            }
+            case "receiveVideoAnswer" -> answer(message.path("name").asText()).complete(now);
+            case "iceCandidate", "iceCandidates" -> firstCandidate(message.path("name").asText()).complete(now);
+            case "newParticipantArrived" -> {
+                // Mesh: everyone subscribes to newcomers too; not timed, but it is part of the load
+                newcomers.add(message.path("name").asText());
+                background.execute(this::subscribeLate);
+            }
+            case "error" -> {
+                if ("busy".equals(message.path("code").asText())) {
+                    refused(message);
+                    return;
+                }
+                serverErrors.increment();
+                // A rejected join would otherwise only show up as a timeout
+                joined.completeExceptionally(new IllegalStateException(message.toString()));
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void refused(JsonNode error) {
+        final String request = error.path("requestId").asText();
+        // A refused subscription names its sender
+        final String sender = error.path("name").asText(name);
+        final CompletableFuture<?> pending;
+        final String message;
+        switch (request) {
+            case "joinRoom" -> {
+                stats.refuse(Phase.JOIN);
+                pending = joined;
+                message = joinMessage();
+            }
+            case "receiveVideoFrom" -> {
+                stats.refuse(sender.equals(name) ? Phase.PUBLISH : Phase.SUBSCRIBE);
+                pending = answer(sender);
+                message = offerMessage(sender);
+            }
+            case "onIceCandidate" -> {
+                // Lost candidates show up as slower or failed trickles; the browser does not resend them either
+                stats.refuse(Phase.TRICKLE);
+                return;
+            }
+            case "leaveRoom" -> {
+                stats.refuse(Phase.LEAVE);
+                return;
+            }
+            default -> {
+                return;
+            }
+        }
+        if (pending.isDone()) {
+            return;
+        }
+        if (busyRetries.merge(request + "/" + sender, 1, Integer::sum) > config.busyRetries()) {
+            pending.completeExceptionally(new IllegalStateException("Still busy after "
+                    + config.busyRetries() + " retries: " + error));
+            return;
+        }
+        final long retryAfter = error.path("retryAfter").asLong();
+        CompletableFuture.runAsync(() -> {
+            // Answered, or given up on by the phase timeout, meanwhile
+            if (pending.isDone()) {
+                return;
+            }
+            try {
+                send(message);
+            } catch (Exception e) {
+                pending.completeExceptionally(e);
+            }
+        }, CompletableFuture.delayedExecutor(retryAfter > 0 ? retryAfter : BUSY_DEFAULT_RETRY_MS,
+                TimeUnit.MILLISECONDS, background));
+    }
+
+    // Newcomers announced before this client published wait until it has
+    private void subscribeLate() {
+        if (!published) {
+            return;
+        }
+        String newcomer;
+        while ((newcomer = newcomers.poll()) != null) {
+            if (socket.isOutputClosed()) {
+                return;
+            }
+            try {
+                offer(newcomer);
+                trickle(newcomer);
+            } catch (Exception e) {
+                // The client may be leaving; these subscriptions are not measured
+                return;
+            }
+        }
+    }
+}
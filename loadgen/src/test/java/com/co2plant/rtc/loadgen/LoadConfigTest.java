@@ -0,0 +1,55 @@
+package com.co2plant.rtc.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoadConfigTest {
+
+    @Test
+    void parsesOptionsOverDefaults() {
+        LoadConfig config = LoadConfig.parse("--clients=500", "--room-size=8", "--rate=0", "--hold=250ms",
+                "--churn=0.3", "--metrics=");
+
+        assertThat(config.clients()).isEqualTo(500);
+        assertThat(config.roomSize()).isEqualTo(8);
+        assertThat(config.arrivalRate()).isZero();
+        assertThat(config.hold()).isEqualTo(Duration.ofMillis(250));
+        assertThat(config.churn()).isEqualTo(0.3);
+        assertThat(config.metricsUrl()).isNull();
+        assertThat(config.signalUrl()).isEqualTo(URI.create("ws://localhost:8080/signal"));
+        assertThat(config.maxDuration()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(config.busyRetries()).isEqualTo(5);
+    }
+
+    @Test
+    void rejectsUnknownOptionsAndImpossibleChurn() {
+        assertThatThrownBy(() -> LoadConfig.parse("--clinets=5")).hasMessageContaining("clinets");
+        assertThatThrownBy(() -> LoadConfig.parse("--churn=1")).hasMessageContaining("churn");
+        assertThatThrownBy(() -> LoadConfig.parse("--busy-retries=-1")).hasMessageContaining("busy-retries");
+    }
+
+    @Test
+    void turnsScrapedCountersIntoRates() {
+        ServerMetrics before = ServerMetrics.parse("""
+                # TYPE rtc_signaling_message_seconds summary
+                rtc_signaling_message_seconds_count{application="rtc",type="joinRoom",} 10.0
+                rtc_kurento_rpc_seconds_count{application="rtc",operation="processOffer",outcome="success",} 4.0
+                """);
+        ServerMetrics after = ServerMetrics.parse("""
+                rtc_signaling_message_seconds_count{application="rtc",type="joinRoom",} 30.0
+                rtc_signaling_message_seconds_sum{application="rtc",type="joinRoom",} 0.5
+                rtc_kurento_rpc_seconds_count{application="rtc",operation="processOffer",outcome="success",} 20.0
+                rtc_kurento_rpc_seconds_count{application="rtc",operation="processOffer",outcome="error",} 4.0
+                """);
+
+        ServerMetrics rates = after.ratesSince(before, Duration.ofSeconds(2));
+
+        assertThat(rates.messages()).containsEntry("joinRoom", 10.0);
+        assertThat(rates.kurentoCalls()).containsEntry("processOffer", 10.0);
+    }
+}
@@ -0,0 +1,87 @@
+package com.co2plant.rtc.signaling;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SignalDecoder} alone, per message type and wire format, against Jackson's tree model reading the
+ * same frame, plus the cost of encoding it. {@code ./gradlew jmh -Pjmh.profilers=gc} also compares the bytes
+ * allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SignalDecodeBenchmark {
+
+    private static final String CANDIDATE = "{\"candidate\":\"candidate:1 1 UDP 2122252543 192.168.1.10 54321 typ host\","
+            + "\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+
+    private static final Map<String, String> FRAMES = Map.of(
+            "joinRoom", "{\"id\":\"joinRoom\",\"room\":\"bench\",\"name\":\"alice\",\"role\":\"user\"}",
+            "receiveVideoFrom", "{\"id\":\"receiveVideoFrom\",\"sender\":\"alice\",\"sdpOffer\":\""
+                    + "v=0\\r\\no=- 0 0 IN IP4 127.0.0.1\\r\\n".repeat(120) + "\"}",
+            "leaveRoom", "{\"id\":\"leaveRoom\"}",
+            "onIceCandidate", "{\"id\":\"onIceCandidate\",\"name\":\"alice\",\"candidate\":" + CANDIDATE + "}",
+            "onIceCandidates", "{\"id\":\"onIceCandidates\",\"name\":\"alice\",\"candidates\":["
+                    + String.join(",", Collections.nCopies(8, CANDIDATE)) + "]}");
+
+    @Param({"joinRoom", "receiveVideoFrom", "leaveRoom", "onIceCandidate", "onIceCandidates"})
+    public String type;
+
+    @Param({"JSON", "CBOR"})
+    public SignalFormat format;
+
+    private SignalDecoder decoder;
+    private ObjectMapper treeMapper;
+    private JsonNode message;
+    private String text;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        decoder = format.decoder();
+        treeMapper = format == SignalFormat.CBOR ? new CBORMapper() : new ObjectMapper();
+        message = new ObjectMapper().readTree(FRAMES.get(type));
+        final WebSocketMessage<?> frame = format.encode(message);
+        if (frame instanceof TextMessage message) {
+            text = message.getPayload();
+        } else {
+            bytes = ((BinaryMessage) frame).getPayload().array();
+        }
+    }
+
+    @Benchmark
+    public SignalMessage decode() {
+        return text != null ? decoder.decode(text) : decoder.decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * What decoding cost before {@link SignalDecoder}: a full tree of the frame.
+     */
+    @Benchmark
+    public JsonNode treeModel() throws IOException {
+        return text != null ? treeMapper.readTree(text) : treeMapper.readTree(bytes);
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encode() {
+        return format.encode(message);
+    }
+}
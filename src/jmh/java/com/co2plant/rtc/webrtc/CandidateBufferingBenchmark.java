@@ -0,0 +1,61 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.kurento.client.IceCandidate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserSession#addCandidate} for a subscription whose endpoint does not exist yet (buffered)
+ * and for the publisher's own, already negotiated endpoint (forwarded).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CandidateBufferingBenchmark {
+
+    // A typical trickle burst: host, srflx and relay candidates for a few interfaces
+    private static final int BURST = 16;
+
+    private UserSession user;
+    private IceCandidate candidate;
+
+    @Setup
+    public void setUp() {
+        final SignalingProperties properties = Stubs.properties(64);
+        final Room room = Stubs.room("bench", properties);
+        user = Stubs.participant(room, "alice", properties);
+        // Opens the buffer for alice's own endpoint
+        user.receiveFromClient("v=0").join();
+        candidate = new IceCandidate("candidate:1 1 UDP 2122252543 192.168.1.10 54321 typ host", "0", 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        user.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void bufferForPendingSubscription() {
+        for (int i = 0; i < BURST; i++) {
+            user.addCandidate(candidate, "bob");
+        }
+        user.getCandidateBuffer().reset("bob");
+    }
+
+    @Benchmark
+    public void forwardToOpenEndpoint() {
+        user.addCandidate(candidate, "alice");
+    }
+}
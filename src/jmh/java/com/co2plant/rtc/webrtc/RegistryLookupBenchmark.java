@@ -0,0 +1,71 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lookups every signaling message starts with: session to user in the handler's registry, and
+ * participant by name in the room.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegistryLookupBenchmark {
+
+    @Param({"100", "1000"})
+    public int users;
+
+    private SignalHandler.UserRegistry registry;
+    private Room room;
+    private WebSocketSession[] sessions;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        final SignalingProperties properties = Stubs.properties(64);
+        registry = new SignalHandler.UserRegistry();
+        room = Stubs.room("bench", properties);
+        sessions = new WebSocketSession[users];
+        names = new String[users];
+        for (int i = 0; i < users; i++) {
+            final UserSession user = Stubs.participant(room, "user" + i, properties);
+            registry.register(user);
+            room.join(user);
+            sessions[i] = user.getSession();
+            names[i] = user.getName();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        room.close();
+    }
+
+    private int nextIndex() {
+        next = next + 1 == users ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public UserSession userBySession() {
+        return registry.getBySession(sessions[nextIndex()]);
+    }
+
+    @Benchmark
+    public UserSession participantByName() {
+        return room.getParticipant(names[nextIndex()]);
+    }
+}
@@ -0,0 +1,55 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Room#broadcast} by room size: encoding once and handing the frame to every outbound queue.
+ * Rooms above the parallel threshold (64) are split into chunks of 64, each enqueued on its own virtual thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoomBroadcastBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int participants;
+
+    private Room room;
+    private ObjectNode message;
+
+    @Setup
+    public void setUp() throws IOException {
+        final SignalingProperties properties = Stubs.properties(64);
+        room = Stubs.room("bench-" + participants, properties);
+        for (int i = 0; i < participants; i++) {
+            room.join(Stubs.participant(room, "user" + i, properties));
+        }
+        message = new ObjectMapper().createObjectNode();
+        message.put("id", "participantLeft");
+        message.put("name", "someone");
+    }
+
+    @TearDown
+    public void tearDown() {
+        room.close();
+    }
+
+    @Benchmark
+    public Room.BroadcastResult broadcast() {
+        return room.broadcast(message, null);
+    }
+}
@@ -0,0 +1,106 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.signaling.SignalDecoder;
+import com.co2plant.rtc.signaling.SignalFormat;
+import com.co2plant.rtc.signaling.SignalMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.socket.CloseStatus;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A text frame through {@link SignalHandler}: decode, dispatch and the handler up to its first KMS call,
+ * which the stubs answer at once. {@code joinRoom} is measured together with the {@code leaveRoom}
+ * that undoes it. The handler runs on the benchmark thread, bypassing the session's inbound queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignalDispatchBenchmark {
+
+    static final String CANDIDATE = "{\"candidate\":\"candidate:1 1 UDP 2122252543 192.168.1.10 54321 typ host\","
+            + "\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+    static final String SDP_OFFER = "v=0\\r\\no=- 0 0 IN IP4 127.0.0.1\\r\\n".repeat(120);
+
+    static final Map<String, String> FRAMES = Map.of(
+            "joinRoom", "{\"id\":\"joinRoom\",\"room\":\"bench\",\"name\":\"alice\",\"role\":\"user\"}",
+            "receiveVideoFrom", "{\"id\":\"receiveVideoFrom\",\"sender\":\"alice\",\"sdpOffer\":\"" + SDP_OFFER + "\"}",
+            "onIceCandidate", "{\"id\":\"onIceCandidate\",\"name\":\"alice\",\"candidate\":" + CANDIDATE + "}",
+            "onIceCandidates", "{\"id\":\"onIceCandidates\",\"name\":\"alice\",\"candidates\":["
+                    + String.join(",", Collections.nCopies(8, CANDIDATE)) + "]}");
+
+    private static final String LEAVE = "{\"id\":\"leaveRoom\"}";
+    private static final SignalDecoder DECODER = SignalFormat.JSON.decoder();
+
+    @Param({"joinRoom", "receiveVideoFrom", "onIceCandidate", "onIceCandidates"})
+    public String type;
+
+    private SignalHandler handler;
+    private TestWebSocketSession session;
+    private String frame;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        final SignalingProperties properties = Stubs.properties(64);
+        final Room room = Stubs.room("bench", properties);
+        final RoomManager rooms = new RoomManager(null, properties) {
+            @Override
+            public Room acquireRoom(String roomName, RoomMode mode) {
+                room.acquire();
+                return room;
+            }
+
+            @Override
+            public Room findRoom(String roomName) {
+                return room;
+            }
+        };
+        final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        final AdmissionControl admission = new AdmissionControl(meters, false, Map.of(
+                AdmissionControl.Scope.NODE, new TokenBucket.Limit(0, 1),
+                AdmissionControl.Scope.ROOM, new TokenBucket.Limit(0, 1),
+                AdmissionControl.Scope.SESSION, new TokenBucket.Limit(0, 1)), Duration.ZERO, 0, System::nanoTime);
+        handler = new SignalHandler(rooms, Stubs.of(ObjectProvider.class), meters, properties, admission);
+        session = new TestWebSocketSession("alice");
+        frame = FRAMES.get(type);
+        if (!type.equals("joinRoom")) {
+            // In the room and publishing, so candidates go straight to the outgoing endpoint
+            handle(FRAMES.get("joinRoom"));
+            handle(FRAMES.get("receiveVideoFrom"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        handle(frame);
+        if (type.equals("joinRoom")) {
+            handle(LEAVE);
+        }
+    }
+
+    private void handle(String payload) {
+        final long arrived = System.nanoTime();
+        final SignalMessage signal = DECODER.decode(payload);
+        handler.handle(session, signal, null, arrived);
+    }
+}
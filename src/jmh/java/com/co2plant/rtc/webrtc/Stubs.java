@@ -0,0 +1,96 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+
+/**
+ * Offline stand-ins for the benchmarks. Unlike mocks they record nothing, so they cost next to nothing
+ * next to the code under measurement.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * An implementation of {@code type} that does nothing: async calls complete at once with a null
+     * result, everything else returns null, zero or false.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T of(Class<T> type) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return switch (method.getName()) {
+                            case "equals" -> proxy == args[0];
+                            case "hashCode" -> System.identityHashCode(proxy);
+                            default -> type.getSimpleName() + "Stub";
+                        };
+                    }
+                    if (args != null && args.length > 0 && args[args.length - 1] instanceof Continuation<?> c) {
+                        ((Continuation<Object>) c).onSuccess(null);
+                        return null;
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        return type == int.class ? 0 : type == short.class ? (short) 0 : (byte) 0;
+    }
+
+    /**
+     * Properties as in application.yaml, with a large DROP queue so the drainers never push back.
+     */
+    static SignalingProperties properties(int broadcastParallelThreshold) {
+        return SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 4096)
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .set(SignalingProperties::setBroadcastParallelThreshold, broadcastParallelThreshold)
+                .set(SignalingProperties::setIceBatchWindow, Duration.ZERO)
+                .build();
+    }
+
+    /**
+     * A participant of {@code room} with a stub outgoing endpoint and a session that discards its frames.
+     */
+    static UserSession participant(Room room, String name, SignalingProperties properties) {
+        return SignalingFixtures.participant(room, name, new TestWebSocketSession(name), properties,
+                of(WebRtcEndpoint.class));
+    }
+
+    /**
+     * A room whose publishers get stub endpoints instead of building them on the pipeline.
+     */
+    static Room room(String name, SignalingProperties properties) {
+        return new Room(name, of(MediaPipeline.class), properties) {
+            @Override
+            WebRtcEndpoint takeOutgoingEndpoint() {
+                return of(WebRtcEndpoint.class);
+            }
+        };
+    }
+}
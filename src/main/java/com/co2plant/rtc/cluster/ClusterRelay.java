@@ -0,0 +1,341 @@
+package com.co2plant.rtc.cluster;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.webrtc.OutboundQueue;
+import com.co2plant.rtc.webrtc.Room;
+import com.co2plant.rtc.webrtc.RoomListener;
+import com.co2plant.rtc.webrtc.UserSession;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets several signaling nodes share rooms through Redis.
+ * <p>
+ * Each room is owned by exactly one node, recorded under {@code rtc:room:{name}:owner} with a TTL the
+ * owner keeps refreshing; the room's pipeline only ever lives there. A client connected to another
+ * node is relayed: its frames are published on the owner's channel and handled there against a
+ * {@link RelayedWebSocketSession}, and the owner's replies come back on the origin node's channel.
+ * Participant presence is kept in the {@code rtc:room:{name}:participants} hash (name -> node).
+ * <p>
+ * Room callbacks run inside the room's mailbox, so the presence and ownership writes they cause are
+ * handed to a single background writer instead of waiting on Redis there; one writer keeps a join and
+ * the following leave in order. If Redis is slow the writer falls behind, and beyond
+ * {@link #WRITE_QUEUE_CAPACITY} pending writes further ones are dropped and logged.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.cluster.enabled", havingValue = "true")
+public class ClusterRelay implements MessageListener, RoomListener {
+
+    private static final String CHANNEL_PREFIX = "rtc:signal:";
+    static final int WRITE_QUEUE_CAPACITY = 10_000;
+
+    // Only delete the owner key if we still hold it
+    private static final RedisScript<Long> RELEASE_OWNERSHIP = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final Logger log = LoggerFactory.getLogger(ClusterRelay.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final StringRedisTemplate redis;
+    private final SignalingProperties properties;
+    private final String nodeId;
+    private final Duration ownershipTtl;
+
+    private volatile WebSocketHandler localHandler;
+
+    // Origin side: client sessions whose room lives on another node
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    // Owner side: stand-ins for clients connected to other nodes
+    private final ConcurrentMap<String, RelayedWebSocketSession> remoteSessions = new ConcurrentHashMap<>();
+    private final Set<String> ownedRooms = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writer;
+
+    @Autowired
+    public ClusterRelay(StringRedisTemplate redis, RedisMessageListenerContainer listenerContainer,
+                        SignalingProperties properties,
+                        @Value("${rtc.cluster.node-id:${random.uuid}}") String nodeId,
+                        @Value("${rtc.cluster.ownership-ttl:30s}") Duration ownershipTtl) {
+        this(redis, listenerContainer, properties, nodeId, ownershipTtl, null);
+    }
+
+    /**
+     * @param writer runs the presence and ownership writes; null for the default single background thread
+     */
+    ClusterRelay(StringRedisTemplate redis, RedisMessageListenerContainer listenerContainer,
+                 SignalingProperties properties, String nodeId, Duration ownershipTtl, ExecutorService writer) {
+        this.writer = writer != null ? writer : new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY),
+                Thread.ofVirtual().name("cluster-redis-writer").factory(),
+                (task, executor) -> log.warn("Redis write queue full, dropping a presence update"));
+        this.redis = redis;
+        this.properties = properties;
+        this.nodeId = nodeId;
+        this.ownershipTtl = ownershipTtl;
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL_PREFIX + nodeId));
+        log.info("Cluster relay started as node {}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Sets the handler that relayed frames are delivered to on this node.
+     */
+    public void bind(WebSocketHandler handler) {
+        this.localHandler = handler;
+    }
+
+    /**
+     * Returns the node owning {@code roomName}, claiming it for this node if nobody does.
+     */
+    public String resolveOwner(String roomName) {
+        final String key = ownerKey(roomName);
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(key, nodeId, ownershipTtl))) {
+                return nodeId;
+            }
+            final String owner = redis.opsForValue().get(key);
+            if (owner != null) {
+                return owner;
+            }
+            // Expired between the two calls; try to claim again
+        }
+        return nodeId;
+    }
+
+    /**
+     * Called for a client's joinRoom. If the room is owned elsewhere, the session is routed there from
+     * now on and {@code payload} is forwarded.
+     *
+     * @return true if the frame was relayed and must not be handled locally
+     */
+    public boolean routeIfRemote(WebSocketSession session, String roomName, String payload) {
+        if (session instanceof RelayedWebSocketSession) {
+            return false;
+        }
+        final String owner = resolveOwner(roomName);
+        final Route previous = routes.remove(session.getId());
+        if (previous != null) {
+            notifyClosed(session, previous);
+        }
+        if (owner.equals(nodeId)) {
+            return false;
+        }
+        log.debug("SESSION {}: room {} is owned by node {}, relaying", session.getId(), roomName, owner);
+        final OutboundQueue queue = new OutboundQueue(session, properties.getOutboundCapacity(),
+                properties.getOverflowPolicy());
+        routes.put(session.getId(), new Route(owner, session, queue));
+        publish(owner, new RelayEnvelope(RelayEnvelope.Type.INBOUND, nodeId, session.getId(), payload));
+        return true;
+    }
+
+    public boolean isRouted(WebSocketSession session) {
+        return routes.containsKey(session.getId());
+    }
+
+    /**
+     * @return the queue writing relayed frames to {@code session}, or null if it is not routed
+     */
+    public OutboundQueue getOutbound(WebSocketSession session) {
+        final Route route = routes.get(session.getId());
+        return route != null ? route.queue() : null;
+    }
+
+    /**
+     * @return true if the session is relayed and the frame was forwarded to the room owner
+     */
+    public boolean forwardIfRouted(WebSocketSession session, String payload) {
+        final Route route = routes.get(session.getId());
+        if (route == null) {
+            return false;
+        }
+        publish(route.owner(), new RelayEnvelope(RelayEnvelope.Type.INBOUND, nodeId, session.getId(), payload));
+        return true;
+    }
+
+    /**
+     * @return true if the session was relayed; the owner has been told it is gone
+     */
+    public boolean sessionClosed(WebSocketSession session) {
+        final Route route = routes.remove(session.getId());
+        if (route == null) {
+            return false;
+        }
+        notifyClosed(session, route);
+        return true;
+    }
+
+    private void notifyClosed(WebSocketSession session, Route route) {
+        route.queue().close();
+        publish(route.owner(), new RelayEnvelope(RelayEnvelope.Type.CLOSED, nodeId, session.getId(), null));
+    }
+
+    void publish(String node, RelayEnvelope envelope) {
+        try {
+            redis.convertAndSend(CHANNEL_PREFIX + node, mapper.writeValueAsString(envelope));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode relay envelope", e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        final RelayEnvelope envelope;
+        try {
+            envelope = mapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), RelayEnvelope.class);
+        } catch (IOException e) {
+            log.warn("Dropping malformed relay envelope: {}", e.getMessage());
+            return;
+        }
+
+        try {
+            switch (envelope.type()) {
+                case INBOUND -> {
+                    final RelayedWebSocketSession remote = remoteSessions.computeIfAbsent(
+                            RelayedWebSocketSession.idOf(envelope.origin(), envelope.session()),
+                            id -> new RelayedWebSocketSession(this, envelope.origin(), envelope.session()));
+                    localHandler.handleMessage(remote, new TextMessage(envelope.payload()));
+                }
+                case CLOSED -> {
+                    final RelayedWebSocketSession remote = remoteSessions.remove(
+                            RelayedWebSocketSession.idOf(envelope.origin(), envelope.session()));
+                    if (remote != null) {
+                        remote.closedByOrigin();
+                        localHandler.afterConnectionClosed(remote, CloseStatus.NORMAL);
+                    }
+                }
+                case OUTBOUND -> {
+                    final Route route = routes.get(envelope.session());
+                    if (route != null) {
+                        route.queue().offer(envelope.payload());
+                    }
+                }
+                case CLOSE -> {
+                    final Route route = routes.remove(envelope.session());
+                    if (route != null) {
+                        route.queue().close();
+                        route.session().close(new CloseStatus(Integer.parseInt(envelope.payload())));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error handling relayed {} for session {}", envelope.type(), envelope.session(), e);
+        }
+    }
+
+    @Override
+    public void roomCreated(Room room) {
+        ownedRooms.add(room.getName());
+    }
+
+    @Override
+    public void participantJoined(Room room, UserSession participant) {
+        final String node = participant.getSession() instanceof RelayedWebSocketSession relayed
+                ? relayed.getOriginNode()
+                : nodeId;
+        final String roomName = room.getName();
+        final String name = participant.getName();
+        writeBehind("record " + name + " in " + roomName,
+                () -> redis.opsForHash().put(participantsKey(roomName), name, node));
+    }
+
+    @Override
+    public void participantLeft(Room room, UserSession participant) {
+        final String roomName = room.getName();
+        final String name = participant.getName();
+        writeBehind("remove " + name + " from " + roomName,
+                () -> redis.opsForHash().delete(participantsKey(roomName), name));
+    }
+
+    @Override
+    public void roomClosed(Room room) {
+        final String roomName = room.getName();
+        ownedRooms.remove(roomName);
+        writeBehind("release room " + roomName, () -> {
+            // Created again here meanwhile: the key is ours once more and must stay
+            if (!ownedRooms.contains(roomName)) {
+                redis.execute(RELEASE_OWNERSHIP, List.of(ownerKey(roomName)), nodeId);
+            }
+            redis.delete(participantsKey(roomName));
+        });
+    }
+
+    private void writeBehind(String what, Runnable write) {
+        writer.execute(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                log.warn("Could not {} in Redis: {}", what, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Lets queued presence writes and ownership releases reach Redis before the connection goes away.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Gave up waiting for {} queued Redis writes", writer.shutdownNow().size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.cluster.refresh-interval:10000}")
+    public void refreshOwnership() {
+        for (final String roomName : ownedRooms) {
+            final String key = ownerKey(roomName);
+            if (nodeId.equals(redis.opsForValue().get(key))) {
+                redis.expire(key, ownershipTtl);
+            } else if (Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(key, nodeId, ownershipTtl))) {
+                log.warn("Room {}: ownership had expired, reclaimed", roomName);
+            } else {
+                log.error("Room {}: ownership lost to another node", roomName);
+            }
+        }
+    }
+
+    private static String ownerKey(String roomName) {
+        return "rtc:room:" + roomName + ":owner";
+    }
+
+    private static String participantsKey(String roomName) {
+        return "rtc:room:" + roomName + ":participants";
+    }
+
+    private record Route(String owner, WebSocketSession session, OutboundQueue queue) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.co2plant.rtc.cluster;
+
+/**
+ * Unit of cross-node signaling traffic published on a node's Redis channel.
+ *
+ * @param type    what happened to the relayed client session
+ * @param origin  node holding the client's WebSocket
+ * @param session client's WebSocket session id on the origin node
+ * @param payload signaling frame, for {@link Type#INBOUND} and {@link Type#OUTBOUND}
+ */
+public record RelayEnvelope(Type type, String origin, String session, String payload) {
+
+    public enum Type {
+        /** Client frame, origin node -> room owner */
+        INBOUND,
+        /** Server frame, room owner -> origin node */
+        OUTBOUND,
+        /** The client's socket closed on the origin node */
+        CLOSED,
+        /** The room owner asks the origin node to close the client's socket */
+        CLOSE
+    }
+}
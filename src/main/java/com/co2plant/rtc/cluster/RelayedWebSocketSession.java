@@ -0,0 +1,148 @@
+package com.co2plant.rtc.cluster;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in, on the room owner node, for a client whose WebSocket is held by another node. Frames sent
+ * to it are published back to the origin node through the {@link ClusterRelay}.
+ */
+public class RelayedWebSocketSession implements WebSocketSession {
+
+    private final ClusterRelay relay;
+    private final String originNode;
+    private final String originSessionId;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    RelayedWebSocketSession(ClusterRelay relay, String originNode, String originSessionId) {
+        this.relay = relay;
+        this.originNode = originNode;
+        this.originSessionId = originSessionId;
+    }
+
+    public String getOriginNode() {
+        return originNode;
+    }
+
+    public String getOriginSessionId() {
+        return originSessionId;
+    }
+
+    static String idOf(String originNode, String originSessionId) {
+        return originNode + "/" + originSessionId;
+    }
+
+    @Override
+    public String getId() {
+        return idOf(originNode, originSessionId);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!open) {
+            throw new IOException("Relayed session " + getId() + " is closed");
+        }
+        if (!(message instanceof TextMessage text)) {
+            throw new IllegalArgumentException("Only text frames can be relayed");
+        }
+        relay.publish(originNode, new RelayEnvelope(RelayEnvelope.Type.OUTBOUND, originNode, originSessionId,
+                text.getPayload()));
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Marks the session closed without notifying the origin, which already knows.
+     */
+    void closedByOrigin() {
+        open = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        if (open) {
+            open = false;
+            relay.publish(originNode, new RelayEnvelope(RelayEnvelope.Type.CLOSE, originNode, originSessionId,
+                    String.valueOf(status.getCode())));
+        }
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return HttpHeaders.EMPTY;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return 0;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+}
@@ -1,19 +1,51 @@
 package com.co2plant.rtc.config;
 
+import com.co2plant.rtc.webrtc.KmsCluster;
+import com.co2plant.rtc.webrtc.KmsNode;
+import com.co2plant.rtc.webrtc.PipelinePool;
 import org.kurento.client.KurentoClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import org.springframework.beans.factory.annotation.Value;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class KurentoConfig {
 
-    @Value("${kurento.client.url}")
-    private String kurentoRawUrl;
+    // Comma separated list of media servers; falls back to the single kurento.client.url
+    @Value("${kurento.client.urls:${kurento.client.url}}")
+    private List<String> kurentoRawUrls;
+
+    @Value("${kurento.placement.strategy:ENDPOINTS}")
+    private KmsCluster.PlacementStrategy placementStrategy;
+
+    // Pre-warmed pipelines kept per media server; 0 disables the pool
+    @Value("${kurento.pool.size:0}")
+    private int poolSize;
+
+    @Value("${kurento.pool.endpoints-per-pipeline:0}")
+    private int poolEndpointsPerPipeline;
+
+    @Value("${kurento.pool.ttl:10m}")
+    private Duration poolTtl;
 
-    @Bean
-    public KurentoClient kurentoClient() {
-        return KurentoClient.create(kurentoRawUrl);
+    @Bean(destroyMethod = "close")
+    public KmsCluster kmsCluster() {
+        List<KmsNode> nodes = new ArrayList<>();
+        for (String rawUrl : kurentoRawUrls) {
+            String url = rawUrl.trim();
+            if (!url.isEmpty()) {
+                KurentoClient client = KurentoClient.create(url);
+                PipelinePool pool = poolSize > 0
+                        ? new PipelinePool(url, client, poolSize, poolEndpointsPerPipeline, poolTtl)
+                        : null;
+                nodes.add(new KmsNode(url, client, pool));
+            }
+        }
+        return new KmsCluster(nodes, placementStrategy);
     }
 }
@@ -0,0 +1,61 @@
+package com.co2plant.rtc.config;
+
+import com.co2plant.rtc.webrtc.OutboundQueue;
+import com.co2plant.rtc.webrtc.RoomMode;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tunables for the signaling layer, read from the {@code rtc.signaling.*} properties.
+ * The setters are for tests and benchmarks that build one without Spring.
+ */
+@Getter
+@Setter
+@Component
+public class SignalingProperties {
+
+    // Max frames waiting to be written to one WebSocket before the overflow policy kicks in
+    @Value("${rtc.signaling.outbound.capacity:256}")
+    private int outboundCapacity;
+
+    @Value("${rtc.signaling.outbound.overflow-policy:COALESCE_ICE}")
+    private OutboundQueue.OverflowPolicy overflowPolicy;
+
+    // Messages from one client waiting for their handler; more are answered with a "busy" error
+    @Value("${rtc.signaling.inbound.capacity:64}")
+    private int inboundCapacity;
+
+    // Broadcasts to more recipients than this are split into chunks of this size and fanned out in parallel
+    @Value("${rtc.signaling.broadcast.parallel-threshold:64}")
+    private int broadcastParallelThreshold;
+
+    // Window for batching trickle ICE candidates per connection, for clients that negotiate it; 0 disables
+    @Value("${rtc.signaling.ice-batch-window:20ms}")
+    private Duration iceBatchWindow;
+
+    // Client candidates held per connection until its endpoint is ready
+    @Value("${rtc.signaling.candidate-buffer.max-peers:64}")
+    private int candidateBufferMaxPeers;
+
+    @Value("${rtc.signaling.candidate-buffer.max-per-peer:64}")
+    private int candidateBufferMaxPerPeer;
+
+    @Value("${rtc.signaling.candidate-buffer.ttl:30s}")
+    private Duration candidateBufferTtl;
+
+    // Mode of rooms whose first joiner does not ask for one
+    @Value("${rtc.room.default-mode:MESH}")
+    private RoomMode defaultRoomMode;
+
+    // MESH rooms with more participants than this switch to COMPOSITE; 0 never switches
+    @Value("${rtc.room.composite-threshold:0}")
+    private int compositeThreshold;
+
+    // How long an empty room keeps its pipeline before the sweeper reaps it
+    @Value("${rtc.room.linger:30s}")
+    private Duration roomLinger;
+}
@@ -1,6 +1,6 @@
 package com.co2plant.rtc.config;
 
-import com.co2plant.rtc.webrtc.SignalHandler;
+import com.co2plant.rtc.webrtc.SignalProtocolRouter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -12,7 +12,8 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketConfigurer {
 
-    private final SignalHandler signalHandler;
+    // JSON or CBOR, per the Sec-WebSocket-Protocol the client asks for
+    private final SignalProtocolRouter signalHandler;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
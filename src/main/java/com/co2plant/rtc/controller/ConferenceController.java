@@ -0,0 +1,42 @@
+package com.co2plant.rtc.controller;
+
+import com.co2plant.rtc.service.ConferenceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/conferences")
+@RequiredArgsConstructor
+public class ConferenceController {
+
+    private final ConferenceService conferenceService;
+
+    /**
+     * Active conferences in start time order, e.g.
+     * {@code GET /api/conferences?categoryId=3&from=2026-01-05T00:00:00&to=2026-01-12T00:00:00&size=20}.
+     * Follow {@code nextCursor} as {@code cursor=...} for the next page.
+     */
+    @GetMapping
+    public ResponseEntity<ConferenceService.ConferencePage> search(
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(conferenceService.search(categoryId, owner, from, to, cursor, size));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,24 @@
+package com.co2plant.rtc.controller;
+
+import com.co2plant.rtc.webrtc.KmsCluster;
+import com.co2plant.rtc.webrtc.KmsNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/kms")
+@RequiredArgsConstructor
+public class KmsController {
+
+    private final KmsCluster kmsCluster;
+
+    @GetMapping("/nodes")
+    public ResponseEntity<List<KmsNode.NodeStats>> getNodes() {
+        return ResponseEntity.ok(kmsCluster.getStats());
+    }
+}
@@ -1,6 +1,6 @@
 package com.co2plant.rtc.controller;
 
-import com.co2plant.rtc.domain.User;
+import com.co2plant.rtc.service.UserProfile;
 import com.co2plant.rtc.service.UserService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -29,8 +29,8 @@ public class UserController {
 
     @GetMapping("/{userId}")
     public ResponseEntity<UserDto> getUser(@PathVariable String userId) {
-        User user = userService.findByUserId(userId);
-        return ResponseEntity.ok(new UserDto(user));
+        UserProfile profile = userService.getProfile(userId);
+        return ResponseEntity.ok(new UserDto(profile));
     }
 
     @Data
@@ -52,13 +52,13 @@ public class UserController {
         private String position;
         private String email;
 
-        public UserDto(User user) {
-            this.id = user.getId();
-            this.userId = user.getUserId();
-            this.name = user.getName();
-            this.department = user.getDepartment();
-            this.position = user.getPosition();
-            this.email = user.getEmail();
+        public UserDto(UserProfile profile) {
+            this.id = profile.id();
+            this.userId = profile.userId();
+            this.name = profile.name();
+            this.department = profile.department();
+            this.position = profile.position();
+            this.email = profile.email();
         }
     }
 }
@@ -11,7 +11,12 @@ import java.time.LocalDateTime;
 @Entity
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
-@Table(name = "conference")
+@Table(name = "conference", indexes = {
+        // Listing and keyset paging of active conferences, by category or by owner, in start time order
+        @Index(name = "idx_conference_active_category_start", columnList = "is_active, conference_category_id, call_start_time"),
+        @Index(name = "idx_conference_active_owner_start", columnList = "is_active, owner_id, call_start_time"),
+        @Index(name = "idx_conference_active_start", columnList = "is_active, call_start_time")
+})
 public class Conference {
 
     @Id
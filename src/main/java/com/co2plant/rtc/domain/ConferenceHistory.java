@@ -5,15 +5,12 @@ import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.CreatedDate;
-import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
-@EntityListeners(AuditingEntityListener.class)
 @Table(name = "conference_history")
 public class ConferenceHistory {
 
@@ -21,8 +18,14 @@ public class ConferenceHistory {
         CREATE, JOIN, EXIT
     }
 
+    public static final String ID_SEQUENCE = "conference_history_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence rather than IDENTITY so Hibernate can batch the inserts; ids are handed out 50 at a time.
+    // Existing databases are moved past their AUTO_INCREMENT ids by ConferenceHistorySequenceInitializer
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -37,14 +40,15 @@ public class ConferenceHistory {
     @Column(nullable = false)
     private Action action;
 
-    @CreatedDate
+    // When it happened, not when the row was written: history is persisted write-behind
     @Column(name = "inserted_time", updatable = false)
     private LocalDateTime insertedTime;
 
     @Builder
-    public ConferenceHistory(Conference conference, User user, Action action) {
+    public ConferenceHistory(Conference conference, User user, Action action, LocalDateTime insertedTime) {
         this.conference = conference;
         this.user = user;
         this.action = action;
+        this.insertedTime = insertedTime != null ? insertedTime : LocalDateTime.now();
     }
 }
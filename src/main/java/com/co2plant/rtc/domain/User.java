@@ -46,4 +46,22 @@ public class User {
         this.position = position;
         this.email = email;
     }
+
+    /**
+     * Changes the profile fields that are given; null leaves a field as it is.
+     */
+    public void updateProfile(String name, String department, String position, String email) {
+        if (name != null) {
+            this.name = name;
+        }
+        if (department != null) {
+            this.department = department;
+        }
+        if (position != null) {
+            this.position = position;
+        }
+        if (email != null) {
+            this.email = email;
+        }
+    }
 }
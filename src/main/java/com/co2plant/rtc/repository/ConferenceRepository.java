@@ -1,7 +1,47 @@
 package com.co2plant.rtc.repository;
 
 import com.co2plant.rtc.domain.Conference;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface ConferenceRepository extends JpaRepository<Conference, Long> {
+
+    @Query("select c.id from Conference c where c.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Active, scheduled conferences in start time order, owner and category joined in the same query.
+     * Every filter is optional (null). Paging is by keyset: pass the start time and id of the last row
+     * of the previous page, so a page costs the same however deep it is.
+     */
+    @Query("""
+            select new com.co2plant.rtc.repository.ConferenceSummary(
+                c.id, c.title, c.thumbnailUrl, c.callStartTime, c.callEndTime, o.userId, o.name, cat.id, cat.name)
+            from Conference c
+                join c.owner o
+                join c.conferenceCategory cat
+            where c.isActive = true
+                and c.callStartTime is not null
+                and (:categoryId is null or cat.id = :categoryId)
+                and (:ownerUserId is null or o.userId = :ownerUserId)
+                and (:from is null or c.callStartTime >= :from)
+                and (:to is null or c.callStartTime < :to)
+                and (:afterStart is null
+                    or c.callStartTime > :afterStart
+                    or (c.callStartTime = :afterStart and c.id > :afterId))
+            order by c.callStartTime, c.id
+            """)
+    List<ConferenceSummary> searchActive(@Param("categoryId") Long categoryId,
+                                         @Param("ownerUserId") String ownerUserId,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to,
+                                         @Param("afterStart") LocalDateTime afterStart,
+                                         @Param("afterId") Long afterId,
+                                         Limit limit);
 }
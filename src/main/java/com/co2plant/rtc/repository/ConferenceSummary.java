@@ -0,0 +1,18 @@
+package com.co2plant.rtc.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only view of a conference for listings, with its owner and category already resolved. Built
+ * straight from a single joined query, so no entity or lazy association is ever loaded.
+ */
+public record ConferenceSummary(Long id,
+                                String title,
+                                String thumbnailUrl,
+                                LocalDateTime callStartTime,
+                                LocalDateTime callEndTime,
+                                String ownerUserId,
+                                String ownerName,
+                                Long categoryId,
+                                String categoryName) {
+}
@@ -0,0 +1,241 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.ConferenceHistory;
+import com.co2plant.rtc.webrtc.Room;
+import com.co2plant.rtc.webrtc.RoomListener;
+import com.co2plant.rtc.webrtc.UserSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind recorder of {@link ConferenceHistory} events.
+ * <p>
+ * Room callbacks only put an event on a bounded in-memory queue and return; if the queue is full the
+ * event is dropped and counted, so a slow or unavailable database never holds up a room. A single
+ * background thread takes events off the queue and hands them to {@link ConferenceHistoryWriter} in
+ * batches of {@code rtc.history.batch-size}, or whatever has accumulated after
+ * {@code rtc.history.flush-interval}. A failed batch is retried with the next flush up to
+ * {@code rtc.history.max-attempts} times. On shutdown the queue is drained and written before the
+ * data source goes away.
+ * <p>
+ * The first participant of a new room is recorded as its creator (CREATE, then JOIN); participants
+ * still present when a room is closed get an EXIT.
+ */
+@Component
+public class ConferenceHistoryRecorder implements RoomListener {
+
+    /**
+     * @param room name of the room, the conference id
+     * @param user participant name, the user id
+     */
+    public record Event(String room, String user, ConferenceHistory.Action action, LocalDateTime at) {
+    }
+
+    // Longest the writer sleeps without checking whether it should stop
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Logger log = LoggerFactory.getLogger(ConferenceHistoryRecorder.class);
+
+    private final ConferenceHistoryWriter writer;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxAttempts;
+    private final BlockingQueue<Event> queue;
+    private final Set<Room> awaitingCreator = ConcurrentHashMap.newKeySet();
+    private final Thread flusher;
+    private volatile boolean stopping;
+
+    // Writer thread only
+    private final List<Event> pending = new ArrayList<>();
+    private int attempts;
+
+    // Metrics
+    private final Counter queued;
+    private final Counter dropped;
+    private final Counter written;
+    private final Counter discarded;
+    private final Timer flushes;
+
+    @Autowired
+    public ConferenceHistoryRecorder(ConferenceHistoryWriter writer, MeterRegistry meters,
+                                     @Value("${rtc.history.enabled:true}") boolean enabled,
+                                     @Value("${rtc.history.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${rtc.history.batch-size:200}") int batchSize,
+                                     @Value("${rtc.history.flush-interval:1s}") Duration flushInterval,
+                                     @Value("${rtc.history.max-attempts:3}") int maxAttempts) {
+        this.writer = writer;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        this.queued = Counter.builder("rtc.history.events")
+                .description("History events accepted for writing")
+                .tag("outcome", "queued")
+                .register(meters);
+        this.dropped = Counter.builder("rtc.history.events")
+                .description("History events accepted for writing")
+                .tag("outcome", "dropped")
+                .register(meters);
+        this.written = Counter.builder("rtc.history.written")
+                .description("History rows inserted")
+                .register(meters);
+        this.discarded = Counter.builder("rtc.history.discarded")
+                .description("History events given up on after repeated write failures")
+                .register(meters);
+        this.flushes = Timer.builder("rtc.history.flush")
+                .description("Time to write one batch of history rows")
+                .register(meters);
+        Gauge.builder("rtc.history.queued", queue, BlockingQueue::size)
+                .description("History events waiting to be written")
+                .register(meters);
+
+        // Daemon threads keep running during shutdown hooks, and stop() waits for this one there
+        this.flusher = enabled
+                ? Thread.ofPlatform().daemon().name("history-writer").start(this::run)
+                : null;
+    }
+
+    @Override
+    public void roomCreated(Room room) {
+        if (enabled) {
+            awaitingCreator.add(room);
+        }
+    }
+
+    @Override
+    public void participantJoined(Room room, UserSession participant) {
+        if (awaitingCreator.remove(room)) {
+            record(room, participant, ConferenceHistory.Action.CREATE);
+        }
+        record(room, participant, ConferenceHistory.Action.JOIN);
+    }
+
+    @Override
+    public void participantLeft(Room room, UserSession participant) {
+        record(room, participant, ConferenceHistory.Action.EXIT);
+    }
+
+    @Override
+    public void roomClosed(Room room) {
+        awaitingCreator.remove(room);
+        for (final String name : room.getParticipantNames()) {
+            record(room.getName(), name, ConferenceHistory.Action.EXIT);
+        }
+    }
+
+    private void record(Room room, UserSession participant, ConferenceHistory.Action action) {
+        record(room.getName(), participant.getName(), action);
+    }
+
+    /**
+     * Queues an event without ever blocking.
+     *
+     * @return false if it was dropped because the queue is full or the recorder is off or shutting down
+     */
+    public boolean record(String room, String user, ConferenceHistory.Action action) {
+        if (!enabled || stopping) {
+            return false;
+        }
+        if (queue.offer(new Event(room, user, action, LocalDateTime.now()))) {
+            queued.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void run() {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (!stopping) {
+            try {
+                final long wait = Math.min(STOP_CHECK_NANOS, Math.max(0, deadline - System.nanoTime()));
+                final Event event = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (event != null) {
+                    pending.add(event);
+                    queue.drainTo(pending, batchSize - pending.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            // A batch that failed is only retried when the interval is up, not on every new event
+            if ((attempts == 0 && pending.size() >= batchSize) || System.nanoTime() - deadline >= 0) {
+                flush();
+                deadline = System.nanoTime() + flushIntervalNanos;
+            }
+        }
+
+        // Shutting down: one attempt per batch for whatever is left
+        attempts = maxAttempts - 1;
+        flush();
+        while (!queue.isEmpty()) {
+            queue.drainTo(pending, batchSize);
+            attempts = maxAttempts - 1;
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            written.increment(writer.write(pending));
+            pending.clear();
+            attempts = 0;
+        } catch (RuntimeException e) {
+            attempts++;
+            if (attempts >= maxAttempts) {
+                log.error("Giving up on {} history event(s) after {} attempts", pending.size(), attempts, e);
+                discarded.increment(pending.size());
+                pending.clear();
+                attempts = 0;
+            } else {
+                log.warn("Could not write {} history event(s), attempt {} of {}: {}", pending.size(), attempts,
+                        maxAttempts, e.getMessage());
+            }
+        } finally {
+            flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops accepting events and waits until everything still queued has been written. The writer is
+     * not interrupted, so a batch in flight is not cut off.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null || stopping) {
+            return;
+        }
+        stopping = true;
+        flusher.join();
+        log.info("History writer stopped");
+    }
+
+    int getPendingCount() {
+        return queue.size() + pending.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.ConferenceHistory;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the {@link ConferenceHistory} id sequence past the ids already in {@code conference_history}.
+ * <p>
+ * The table used to be filled through AUTO_INCREMENT. With {@code ddl-auto: update} the new
+ * {@code conference_history_seq} is created starting at 1, so without this the first history batch on an
+ * existing database collides with old rows. Runs on every start and only ever moves the sequence forward:
+ * on MySQL, which has no sequences, by raising {@code next_val} in the table Hibernate emulates it with,
+ * elsewhere by restarting the sequence. A fresh or already migrated database is left alone.
+ */
+@Component
+public class ConferenceHistorySequenceInitializer {
+
+    private static final String SEQUENCE = ConferenceHistory.ID_SEQUENCE;
+
+    private final Logger log = LoggerFactory.getLogger(ConferenceHistorySequenceInitializer.class);
+
+    private final JdbcTemplate jdbc;
+    private final Dialect dialect;
+
+    // Taking the EntityManagerFactory also makes sure the schema update has created the sequence
+    public ConferenceHistorySequenceInitializer(JdbcTemplate jdbc, EntityManagerFactory entityManagerFactory) {
+        this.jdbc = jdbc;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        advance();
+    }
+
+    /**
+     * @return true if the sequence had to be moved
+     */
+    boolean advance() {
+        final Long maxId = jdbc.queryForObject("select max(id) from conference_history", Long.class);
+        if (maxId == null) {
+            return false;
+        }
+        // A pooled value V hands out V - (allocation size - 1) .. V, so this makes the next id maxId + 1
+        final long next = maxId + ConferenceHistory.ID_ALLOCATION_SIZE;
+
+        if (!dialect.getSequenceSupport().supportsSequences()) {
+            // Hibernate's table emulation: a single row whose next_val is the next pooled value
+            final int updated = jdbc.update("update " + SEQUENCE + " set next_val = ? where next_val < ?",
+                    next, next);
+            if (updated > 0) {
+                log.info("Moved {} to {}, past existing history ids", SEQUENCE, next);
+            }
+            return updated > 0;
+        }
+
+        // Reading the sequence uses up one block of ids, which only leaves a gap
+        final Long current = jdbc.queryForObject(
+                dialect.getSequenceSupport().getSequenceNextValString(SEQUENCE), Long.class);
+        if (current != null && current >= maxId) {
+            return false;
+        }
+        jdbc.execute("alter sequence " + SEQUENCE + " restart with " + next);
+        log.info("Restarted {} at {}, past existing history ids", SEQUENCE, next);
+        return true;
+    }
+}
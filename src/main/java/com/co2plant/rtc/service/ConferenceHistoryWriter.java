@@ -0,0 +1,93 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.ConferenceHistory;
+import com.co2plant.rtc.domain.User;
+import com.co2plant.rtc.repository.ConferenceHistoryRepository;
+import com.co2plant.rtc.repository.ConferenceRepository;
+import com.co2plant.rtc.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists a batch of {@link ConferenceHistoryRecorder.Event}s in one transaction.
+ * <p>
+ * Rooms are named after the conference id and participants after their user id. Both are resolved
+ * with one query each for the whole batch; events for unknown conferences or users are skipped. The
+ * rows are then inserted as JDBC batches, which the pooled sequence on {@link ConferenceHistory}
+ * makes possible.
+ */
+@Service
+@DependsOn("conferenceHistorySequenceInitializer")
+@RequiredArgsConstructor
+public class ConferenceHistoryWriter {
+
+    private final Logger log = LoggerFactory.getLogger(ConferenceHistoryWriter.class);
+
+    private final ConferenceHistoryRepository historyRepository;
+    private final ConferenceRepository conferenceRepository;
+    private final UserRepository userRepository;
+
+    /**
+     * @return rows written
+     */
+    @Transactional
+    public int write(List<ConferenceHistoryRecorder.Event> events) {
+        final Set<Long> conferenceIds = new HashSet<>();
+        final Set<String> userIds = new HashSet<>();
+        for (final ConferenceHistoryRecorder.Event event : events) {
+            final Long conferenceId = conferenceId(event.room());
+            if (conferenceId != null) {
+                conferenceIds.add(conferenceId);
+                userIds.add(event.user());
+            }
+        }
+        if (conferenceIds.isEmpty()) {
+            return 0;
+        }
+        final Set<Long> conferences = new HashSet<>(conferenceRepository.findExistingIds(conferenceIds));
+        final Map<String, User> users = new HashMap<>();
+        for (final User user : userRepository.findByUserIdIn(userIds)) {
+            users.put(user.getUserId(), user);
+        }
+
+        final List<ConferenceHistory> rows = new ArrayList<>(events.size());
+        for (final ConferenceHistoryRecorder.Event event : events) {
+            final Long conferenceId = conferenceId(event.room());
+            final User user = users.get(event.user());
+            if (conferenceId == null || !conferences.contains(conferenceId) || user == null) {
+                continue;
+            }
+            rows.add(ConferenceHistory.builder()
+                    .conference(conferenceRepository.getReferenceById(conferenceId))
+                    .user(user)
+                    .action(event.action())
+                    .insertedTime(event.at())
+                    .build());
+        }
+        historyRepository.saveAll(rows);
+        if (rows.size() < events.size()) {
+            log.debug("{} of {} history events had no matching conference or user", events.size() - rows.size(),
+                    events.size());
+        }
+        return rows.size();
+    }
+
+    private static Long conferenceId(String room) {
+        try {
+            return Long.valueOf(room);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.repository.ConferenceRepository;
+import com.co2plant.rtc.repository.ConferenceSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ConferenceService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final ConferenceRepository conferenceRepository;
+
+    /**
+     * One page of active conferences matching the filters, in start time order. All filters may be null.
+     *
+     * @param cursor {@link ConferencePage#nextCursor()} of the previous page, or null for the first one
+     */
+    public ConferencePage search(Long categoryId, String ownerUserId, LocalDateTime from, LocalDateTime to,
+                                 String cursor, Integer size) {
+        final int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.clamp(size, 1, MAX_PAGE_SIZE);
+        final Cursor after = cursor == null || cursor.isBlank() ? null : Cursor.decode(cursor);
+
+        // One row more than asked tells whether there is a next page without a count query
+        final List<ConferenceSummary> rows = conferenceRepository.searchActive(categoryId, ownerUserId, from, to,
+                after != null ? after.callStartTime() : null, after != null ? after.id() : null,
+                Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return new ConferencePage(rows, null);
+        }
+        final List<ConferenceSummary> page = rows.subList(0, pageSize);
+        final ConferenceSummary last = page.get(pageSize - 1);
+        return new ConferencePage(List.copyOf(page), new Cursor(last.callStartTime(), last.id()).encode());
+    }
+
+    /**
+     * @param nextCursor pass back to get the following page; null on the last page
+     */
+    public record ConferencePage(List<ConferenceSummary> items, String nextCursor) {
+    }
+
+    // Position after the last row of a page, opaque to clients
+    record Cursor(LocalDateTime callStartTime, Long id) {
+
+        String encode() {
+            final String raw = callStartTime + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                final String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                final int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.valueOf(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+    }
+}
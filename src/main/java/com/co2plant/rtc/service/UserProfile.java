@@ -0,0 +1,14 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.User;
+
+/**
+ * The public part of a {@link User}, as cached and served by lookups. Never carries the password.
+ */
+public record UserProfile(Long id, String userId, String name, String department, String position, String email) {
+
+    public static UserProfile of(User user) {
+        return new UserProfile(user.getId(), user.getUserId(), user.getName(), user.getDepartment(),
+                user.getPosition(), user.getEmail());
+    }
+}
@@ -0,0 +1,264 @@
+package com.co2plant.rtc.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Two-tier cache of {@link UserProfile}s by user id.
+ * <p>
+ * Lookups go to a size-bounded in-process Caffeine cache first, then to Redis under
+ * {@code rtc:user:{userId}}, and only then to the database; whatever the database returns is written to
+ * both tiers. Concurrent misses for the same user on one node wait for a single load, which runs on the
+ * first caller's thread and never inside a cache lock.
+ * <p>
+ * {@link #evict} removes the user from both tiers and, when clustering is on, publishes the id on
+ * {@code rtc:user:invalidate} so every node drops its near copy too. A node that read the old row just
+ * before an eviction must not put it back into Redis afterwards, so every eviction also writes a fresh
+ * random token under {@code rtc:user-gen:{userId}}; a load reads the token before going to the database
+ * and only writes its result to Redis if the token is still the same. Near entries expire after
+ * {@code rtc.cache.user.near-ttl}, which bounds staleness if a broadcast is missed; the Redis entry of a
+ * user whose eviction failed because Redis was down lives until {@code rtc.cache.user.redis-ttl}.
+ * <p>
+ * Redis is an optimisation only: if it fails, lookups fall through to the database and Redis is left
+ * alone for {@code rtc.cache.user.redis-retry} instead of every request waiting on a timeout.
+ */
+@Component
+public class UserProfileCache implements MessageListener {
+
+    static final String KEY_PREFIX = "rtc:user:";
+    static final String TOKEN_PREFIX = "rtc:user-gen:";
+    static final String INVALIDATION_CHANNEL = "rtc:user:invalidate";
+
+    // KEYS: value, token. ARGV: token read before loading, value, ttl in ms
+    static final RedisScript<Long> WRITE_IF_CURRENT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[2]) or '') == ARGV[1] then "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1 end return 0",
+            Long.class);
+    // KEYS: value, token. ARGV: new token, token ttl in ms
+    static final RedisScript<Long> INVALIDATE = new DefaultRedisScript<>(
+            "redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[2]) return redis.call('del', KEYS[1])",
+            Long.class);
+
+    private final Logger log = LoggerFactory.getLogger(UserProfileCache.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AsyncCache<String, UserProfile> near;
+    private final StringRedisTemplate redis;
+    private final Duration redisTtl;
+    private final long redisRetryNanos;
+    private final LongSupplier clock;
+    private boolean broadcastEnabled;
+    private volatile long redisSkippedUntil;
+
+    // Metrics; the near tier is covered by CaffeineCacheMetrics (cache.gets etc., cache=users)
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    private final Counter redisErrors;
+
+    @Autowired
+    public UserProfileCache(ObjectProvider<StringRedisTemplate> redis,
+                            ObjectProvider<RedisMessageListenerContainer> listenerContainer, MeterRegistry meters,
+                            @Value("${rtc.cache.user.redis-enabled:true}") boolean redisEnabled,
+                            @Value("${rtc.cache.user.near-size:10000}") long nearSize,
+                            @Value("${rtc.cache.user.near-ttl:1m}") Duration nearTtl,
+                            @Value("${rtc.cache.user.redis-ttl:30m}") Duration redisTtl,
+                            @Value("${rtc.cache.user.redis-retry:30s}") Duration redisRetry) {
+        this(redisEnabled ? redis.getIfAvailable() : null, meters, nearSize, nearTtl, redisTtl, redisRetry,
+                System::nanoTime);
+        // The container only exists when rtc.cluster.enabled; a single node has nobody else to tell
+        final RedisMessageListenerContainer container = this.redis != null ? listenerContainer.getIfAvailable() : null;
+        if (container != null) {
+            container.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+        }
+        this.broadcastEnabled = container != null;
+    }
+
+    UserProfileCache(StringRedisTemplate redis, MeterRegistry meters, long nearSize, Duration nearTtl,
+                     Duration redisTtl, Duration redisRetry, LongSupplier clock) {
+        this.redis = redis;
+        this.redisTtl = redisTtl;
+        this.redisRetryNanos = redisRetry.toNanos();
+        this.clock = clock;
+        this.redisSkippedUntil = clock.getAsLong();
+        this.near = Caffeine.newBuilder()
+                .maximumSize(nearSize)
+                .expireAfterWrite(nearTtl)
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meters, near.synchronous(), "users");
+        this.redisHits = Counter.builder("rtc.cache.users.redis")
+                .description("User profile lookups that reached Redis")
+                .tag("result", "hit")
+                .register(meters);
+        this.redisMisses = Counter.builder("rtc.cache.users.redis")
+                .description("User profile lookups that reached Redis")
+                .tag("result", "miss")
+                .register(meters);
+        this.redisErrors = Counter.builder("rtc.cache.users.redis")
+                .description("User profile lookups that reached Redis")
+                .tag("result", "error")
+                .register(meters);
+    }
+
+    /**
+     * @param loader reads the profile from the database; exceptions propagate and nothing is cached
+     */
+    public UserProfile get(String userId, Function<String, UserProfile> loader) {
+        final CompletableFuture<UserProfile> loading = new CompletableFuture<>();
+        final CompletableFuture<UserProfile> cached = near.get(userId, (id, executor) -> loading);
+        if (cached == loading) {
+            // This caller won the miss: load here, after the cache has let go of the entry's lock
+            try {
+                loading.complete(load(userId, loader));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+            }
+        }
+        try {
+            return cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private UserProfile load(String userId, Function<String, UserProfile> loader) {
+        final Shared shared = readShared(userId);
+        if (shared != null && shared.profile() != null) {
+            return shared.profile();
+        }
+        final UserProfile loaded = loader.apply(userId);
+        if (loaded != null && shared != null) {
+            writeShared(loaded, shared.token());
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the user from every tier on every node. Call after the change is committed, or a concurrent
+     * lookup may cache the old row again.
+     */
+    public void evict(String userId) {
+        near.synchronous().invalidate(userId);
+        // Tried even while reads are skipping Redis, so a stale shared copy does not outlive the outage
+        if (redis == null) {
+            return;
+        }
+        try {
+            redis.execute(INVALIDATE, List.of(KEY_PREFIX + userId, TOKEN_PREFIX + userId),
+                    UUID.randomUUID().toString(), String.valueOf(redisTtl.toMillis()));
+            if (broadcastEnabled) {
+                redis.convertAndSend(INVALIDATION_CHANNEL, userId);
+            }
+        } catch (RuntimeException e) {
+            redisFailed("evict " + userId, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        near.synchronous().invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param profile null on a miss
+     * @param token   invalidation token at the time of the read, "" if there is none
+     */
+    private record Shared(UserProfile profile, String token) {
+    }
+
+    /**
+     * @return null if Redis is not used or could not be read
+     */
+    private Shared readShared(String userId) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        final List<String> found;
+        try {
+            // One round trip for the value and, on a miss, the token the write back is fenced with
+            found = redis.opsForValue().multiGet(List.of(KEY_PREFIX + userId, TOKEN_PREFIX + userId));
+        } catch (RuntimeException e) {
+            redisFailed("read " + userId, e);
+            return null;
+        }
+        final String json = found != null ? found.get(0) : null;
+        final String token = found != null && found.get(1) != null ? found.get(1) : "";
+        if (json == null) {
+            redisMisses.increment();
+            return new Shared(null, token);
+        }
+        try {
+            final UserProfile profile = mapper.readValue(json, UserProfile.class);
+            redisHits.increment();
+            return new Shared(profile, token);
+        } catch (JsonProcessingException e) {
+            // Written by an older version; the load overwrites it
+            log.debug("Unreadable cached profile for {}: {}", userId, e.getMessage());
+            redisMisses.increment();
+            return new Shared(null, token);
+        }
+    }
+
+    private void writeShared(UserProfile profile, String token) {
+        final String userId = profile.userId();
+        try {
+            final Long written = redis.execute(WRITE_IF_CURRENT,
+                    List.of(KEY_PREFIX + userId, TOKEN_PREFIX + userId),
+                    token, mapper.writeValueAsString(profile), String.valueOf(redisTtl.toMillis()));
+            if (written == null || written == 0) {
+                log.debug("Profile of {} changed while loading, not shared", userId);
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize profile of {}", userId, e);
+        } catch (RuntimeException e) {
+            redisFailed("write " + userId, e);
+        }
+    }
+
+    private boolean redisAvailable() {
+        return redis != null && clock.getAsLong() - redisSkippedUntil >= 0;
+    }
+
+    private void redisFailed(String operation, RuntimeException e) {
+        redisErrors.increment();
+        redisSkippedUntil = clock.getAsLong() + redisRetryNanos;
+        log.warn("Redis user cache unavailable ({}), using the database for {}: {}", operation,
+                Duration.ofNanos(redisRetryNanos), e.getMessage());
+    }
+
+    long getNearSize() {
+        near.synchronous().cleanUp();
+        return near.synchronous().estimatedSize();
+    }
+}
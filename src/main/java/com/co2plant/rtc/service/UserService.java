@@ -4,7 +4,10 @@ import com.co2plant.rtc.domain.User;
 import com.co2plant.rtc.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 @RequiredArgsConstructor
@@ -12,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final UserProfileCache profileCache;
 
     @Transactional
     public Long register(String userId, String password, String name, String department, String position, String email) {
@@ -24,12 +28,49 @@ public class UserService {
                 .position(position)
                 .email(email)
                 .build();
-        
-        return userRepository.save(user).getId();
+
+        Long id = userRepository.save(user).getId();
+        // A lookup before registration may have raced with it; make sure no node keeps a stale entry
+        evictAfterCommit(userId);
+        return id;
+    }
+
+    /**
+     * Changes the given profile fields; null ones are left as they are. Not exposed over HTTP while the
+     * API has no authentication to tell who may change whose profile.
+     */
+    @Transactional
+    public UserProfile update(String userId, String name, String department, String position, String email) {
+        User user = findByUserId(userId);
+        user.updateProfile(name, department, position, email);
+        evictAfterCommit(userId);
+        return UserProfile.of(user);
     }
 
     public User findByUserId(String userId) {
         return userRepository.findByUserId(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found: " + userId));
     }
+
+    /**
+     * Cached lookup for the read paths; see {@link UserProfileCache}. A cache hit does not open a
+     * transaction or touch the connection pool.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public UserProfile getProfile(String userId) {
+        return profileCache.get(userId, id -> UserProfile.of(findByUserId(id)));
+    }
+
+    private void evictAfterCommit(String userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            profileCache.evict(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                profileCache.evict(userId);
+            }
+        });
+    }
 }
@@ -0,0 +1,182 @@
+package com.co2plant.rtc.signaling;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Decodes signaling frames with Jackson's streaming parser straight into {@link SignalMessage} records.
+ * <p>
+ * No tree is built: known fields are read in a single pass in any order, everything else (including
+ * nested values) is skipped, and the record for the frame's {@code id} is picked from a table built
+ * once. Large SDP offers are read as a single string. Thread-safe; share one instance.
+ */
+public class SignalDecoder {
+
+    private static final Map<String, Function<Fields, SignalMessage>> TYPES = Map.of(
+            SignalMessage.JoinRoom.ID, f -> new SignalMessage.JoinRoom(
+                    f.required(f.room, "room"),
+                    f.required(f.name, "name"),
+                    f.role != null ? f.role : "user",
+                    f.iceBatching,
+                    f.mode),
+            SignalMessage.ReceiveVideoFrom.ID, f -> new SignalMessage.ReceiveVideoFrom(
+                    f.required(f.sender, "sender"),
+                    f.required(f.sdpOffer, "sdpOffer")),
+            SignalMessage.LeaveRoom.ID, f -> new SignalMessage.LeaveRoom(),
+            SignalMessage.OnIceCandidate.ID, f -> new SignalMessage.OnIceCandidate(
+                    f.name,
+                    f.required(f.candidate, "candidate")),
+            SignalMessage.OnIceCandidates.ID, f -> new SignalMessage.OnIceCandidates(
+                    f.name,
+                    f.required(f.candidates, "candidates")));
+
+    private final JsonFactory factory;
+
+    public SignalDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param factory format of the frames, e.g. a CBOR factory for a binary subprotocol
+     */
+    public SignalDecoder(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @throws SignalingException with {@link SignalingException#MALFORMED} or {@link SignalingException#UNKNOWN}
+     */
+    public SignalMessage decode(String payload) {
+        try (JsonParser parser = factory.createParser(payload)) {
+            return read(parser);
+        } catch (JsonProcessingException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Same as {@link #decode(String)} for frames that arrive as bytes.
+     */
+    public SignalMessage decode(byte[] payload, int offset, int length) {
+        try (JsonParser parser = factory.createParser(payload, offset, length)) {
+            return read(parser);
+        } catch (JsonProcessingException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getMessage(), e);
+        }
+    }
+
+    private SignalMessage read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new SignalingException(SignalingException.MALFORMED, null, "Expected an object");
+        }
+        final Fields fields = new Fields();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            final JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id" -> fields.id = text(parser, token, field, null);
+                case "room" -> fields.room = text(parser, token, field, fields.id);
+                case "name" -> fields.name = text(parser, token, field, fields.id);
+                case "role" -> fields.role = text(parser, token, field, fields.id);
+                case "mode" -> fields.mode = text(parser, token, field, fields.id);
+                case "sender" -> fields.sender = text(parser, token, field, fields.id);
+                case "sdpOffer" -> fields.sdpOffer = text(parser, token, field, fields.id);
+                case "iceBatching" -> fields.iceBatching = token == JsonToken.VALUE_TRUE;
+                case "candidate" -> fields.candidate = candidate(parser, token, fields.id);
+                case "candidates" -> fields.candidates = candidates(parser, token, fields.id);
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (fields.id == null) {
+            throw new SignalingException(SignalingException.MALFORMED, null, "Missing field 'id'");
+        }
+        final Function<Fields, SignalMessage> type = TYPES.get(fields.id);
+        if (type == null) {
+            throw new SignalingException(SignalingException.UNKNOWN, fields.id, "Unknown message id '" + fields.id + "'");
+        }
+        return type.apply(fields);
+    }
+
+    private static String text(JsonParser parser, JsonToken token, String field, String id) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new SignalingException(SignalingException.MALFORMED, id, "Field '" + field + "' must be a scalar");
+        }
+        return parser.getText();
+    }
+
+    private static List<SignalMessage.Candidate> candidates(JsonParser parser, JsonToken token, String id)
+            throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            throw new SignalingException(SignalingException.MALFORMED, id, "Field 'candidates' must be an array");
+        }
+        final List<SignalMessage.Candidate> candidates = new ArrayList<>();
+        JsonToken next;
+        while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+            candidates.add(candidate(parser, next, id));
+        }
+        return candidates;
+    }
+
+    private static SignalMessage.Candidate candidate(JsonParser parser, JsonToken token, String id)
+            throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new SignalingException(SignalingException.MALFORMED, id, "A candidate must be an object");
+        }
+        String candidate = "";
+        String sdpMid = null;
+        int sdpMLineIndex = 0;
+        String name = null;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "candidate" -> {
+                    final String text = text(parser, value, field, id);
+                    candidate = text != null ? text : "";
+                }
+                case "sdpMid" -> sdpMid = text(parser, value, field, id);
+                case "sdpMLineIndex" -> sdpMLineIndex = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : 0;
+                case "name" -> name = text(parser, value, field, id);
+                default -> parser.skipChildren();
+            }
+        }
+        return new SignalMessage.Candidate(candidate, sdpMid, sdpMLineIndex, name);
+    }
+
+    // Scratch space for one frame; the id may come after the fields it qualifies
+    private static final class Fields {
+        String id;
+        String room;
+        String name;
+        String role;
+        String mode;
+        String sender;
+        String sdpOffer;
+        boolean iceBatching;
+        SignalMessage.Candidate candidate;
+        List<SignalMessage.Candidate> candidates;
+
+        <T> T required(T value, String field) {
+            if (value == null) {
+                throw new SignalingException(SignalingException.MALFORMED, id, "Missing field '" + field + "'");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.co2plant.rtc.signaling;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Wire encodings of the signaling protocol, negotiated per connection with {@code Sec-WebSocket-Protocol}.
+ * <p>
+ * Both carry the same messages with the same field names; only the framing differs. A client that asks
+ * for no subprotocol gets JSON text frames. Traffic relayed between cluster nodes is always JSON.
+ */
+public enum SignalFormat {
+
+    /** UTF-8 JSON text frames */
+    JSON("rtc.json", new ObjectMapper()),
+    /** CBOR (RFC 8949) binary frames */
+    CBOR("rtc.cbor", new CBORMapper());
+
+    private final String subprotocol;
+    private final ObjectMapper mapper;
+    private final SignalDecoder decoder;
+
+    SignalFormat(String subprotocol, ObjectMapper mapper) {
+        this.subprotocol = subprotocol;
+        this.mapper = mapper;
+        this.decoder = new SignalDecoder(mapper.getFactory());
+    }
+
+    /**
+     * Subprotocols the server accepts, most preferred first.
+     */
+    public static List<String> subprotocols() {
+        return List.of(CBOR.subprotocol, JSON.subprotocol);
+    }
+
+    public static SignalFormat of(WebSocketSession session) {
+        return CBOR.subprotocol.equals(session.getAcceptedProtocol()) ? CBOR : JSON;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    public SignalDecoder decoder() {
+        return decoder;
+    }
+
+    public WebSocketMessage<?> encode(JsonNode message) {
+        if (this == JSON) {
+            return new TextMessage(message.toString());
+        }
+        try {
+            return new BinaryMessage(mapper.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode " + message.path("id").asText() + " as " + this, e);
+        }
+    }
+
+    /**
+     * Re-encodes a JSON text payload, e.g. a frame relayed from the room owner node.
+     */
+    public WebSocketMessage<?> fromJson(String json) {
+        if (this == JSON) {
+            return new TextMessage(json);
+        }
+        try {
+            return encode(JSON.mapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Converts a frame in this format to JSON text, e.g. to relay it to the room owner node.
+     */
+    public String toJson(byte[] payload, int offset, int length) {
+        try {
+            return mapper.readTree(payload, offset, length).toString();
+        } catch (IOException e) {
+            throw new SignalingException(SignalingException.MALFORMED, null, e.getMessage(), e);
+        }
+    }
+}
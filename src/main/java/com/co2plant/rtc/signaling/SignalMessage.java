@@ -0,0 +1,87 @@
+package com.co2plant.rtc.signaling;
+
+import java.util.List;
+
+/**
+ * Client-to-server signaling messages, as decoded by {@link SignalDecoder}.
+ * <p>
+ * Each record is immutable and carries its wire {@code id} as a constant, which is also the key of
+ * the decoder's and the handler's dispatch tables.
+ */
+public sealed interface SignalMessage {
+
+    String id();
+
+    /**
+     * @param role        "user" or "manager"; "user" when the client leaves it out
+     * @param iceBatching whether the client can receive batched "iceCandidates" frames
+     * @param mode        room mode asked for if this join creates the room, null for the server default
+     */
+    record JoinRoom(String room, String name, String role, boolean iceBatching, String mode)
+            implements SignalMessage {
+        public static final String ID = "joinRoom";
+
+        @Override
+        public String id() {
+            return ID;
+        }
+    }
+
+    /**
+     * @param sender whose video the SDP offer is for; the user's own name when publishing
+     */
+    record ReceiveVideoFrom(String sender, String sdpOffer) implements SignalMessage {
+        public static final String ID = "receiveVideoFrom";
+
+        @Override
+        public String id() {
+            return ID;
+        }
+    }
+
+    record LeaveRoom() implements SignalMessage {
+        public static final String ID = "leaveRoom";
+
+        @Override
+        public String id() {
+            return ID;
+        }
+    }
+
+    /**
+     * @param name connection the candidate belongs to, may be null for older clients that nest it in
+     *             the candidate
+     */
+    record OnIceCandidate(String name, Candidate candidate) implements SignalMessage {
+        public static final String ID = "onIceCandidate";
+
+        @Override
+        public String id() {
+            return ID;
+        }
+    }
+
+    /**
+     * Batched variant of {@link OnIceCandidate}: every candidate of one window for the same connection.
+     */
+    record OnIceCandidates(String name, List<Candidate> candidates) implements SignalMessage {
+        public static final String ID = "onIceCandidates";
+
+        public OnIceCandidates {
+            candidates = List.copyOf(candidates);
+        }
+
+        @Override
+        public String id() {
+            return ID;
+        }
+    }
+
+    /**
+     * A trickled ICE candidate as the browser reports it.
+     *
+     * @param name legacy location of the connection name, see {@link OnIceCandidate#name()}
+     */
+    record Candidate(String candidate, String sdpMid, int sdpMLineIndex, String name) {
+    }
+}
@@ -0,0 +1,71 @@
+package com.co2plant.rtc.signaling;
+
+import java.time.Duration;
+
+/**
+ * A signaling message that could not be decoded or handled, reported back to the client as an
+ * {@code error} message rather than only logged.
+ */
+public class SignalingException extends RuntimeException {
+
+    /** Not valid JSON, not an object, or a field of the wrong type or missing */
+    public static final String MALFORMED = "malformedMessage";
+    /** Valid frame with an id this server does not handle */
+    public static final String UNKNOWN = "unknownMessage";
+    /** Well-formed message that does not fit the session's state, e.g. a subscription before joining */
+    public static final String INVALID_STATE = "invalidState";
+    /** The server is shedding load; the message was not handled and may be sent again later */
+    public static final String BUSY = "busy";
+    /** Anything else that went wrong on the server */
+    public static final String INTERNAL = "internalError";
+
+    private final String code;
+    private final String requestId;
+    private final Duration retryAfter;
+
+    public SignalingException(String code, String requestId, String message) {
+        super(message);
+        this.code = code;
+        this.requestId = requestId;
+        this.retryAfter = null;
+    }
+
+    public SignalingException(String code, String requestId, String message, Throwable cause) {
+        super(message, cause);
+        this.code = code;
+        this.requestId = requestId;
+        this.retryAfter = null;
+    }
+
+    private SignalingException(String requestId, String message, Duration retryAfter) {
+        super(message);
+        this.code = BUSY;
+        this.requestId = requestId;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * A {@link #BUSY} refusal telling the client when sending the message again is likely to succeed.
+     */
+    public static SignalingException busy(String requestId, String message, Duration retryAfter) {
+        return new SignalingException(requestId, message, retryAfter);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return the id of the message that failed, or null if it could not be read
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return how long the client should wait before retrying, or null if there is no hint
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,78 @@
+package com.co2plant.rtc.webrtc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives Last-N forwarding in MESH rooms.
+ * <p>
+ * KMS does not raise voice activity events on WebRtcEndpoints, so activity is estimated from the bytes
+ * each publisher sends. Audio comes first: with Opus DTX a silent microphone drops to a trickle, counted
+ * as silence below {@link #SILENT_AUDIO_BYTES_PER_SECOND}. Publishers that are not talking, or like the
+ * bundled screen-sharing client send no audio at all, are ranked by video rate instead, which follows
+ * how much their picture changes. Every sample interval the publishers of each room are ranked this way
+ * and the room forwards video only from the top {@code rtc.room.last-n}.
+ */
+@Component
+public class ActiveSpeakerDetector {
+
+    // Opus speech is 3-4 KB/s; DTX comfort noise stays well below this
+    static final double SILENT_AUDIO_BYTES_PER_SECOND = 500;
+
+    private final RoomManager roomManager;
+    private final int lastN;
+
+    public ActiveSpeakerDetector(RoomManager roomManager, @Value("${rtc.room.last-n:0}") int lastN) {
+        this.roomManager = roomManager;
+        this.lastN = lastN;
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.room.speaker-sample-interval:1000}")
+    public void sampleRooms() {
+        if (lastN <= 0) {
+            return;
+        }
+        for (final Room room : roomManager.getRooms()) {
+            if (room.getMode() == RoomMode.MESH) {
+                sample(room);
+            }
+        }
+    }
+
+    CompletableFuture<Void> sample(Room room) {
+        final List<UserSession> publishers = new ArrayList<>();
+        final List<CompletableFuture<Void>> samples = new ArrayList<>();
+        for (final UserSession participant : room.getParticipants()) {
+            if (participant.isPublishing()) {
+                publishers.add(participant);
+                samples.add(participant.sampleActivity());
+            }
+        }
+        return CompletableFuture.allOf(samples.toArray(CompletableFuture[]::new))
+                .thenCompose(v -> room.applyActiveSpeakers(rank(publishers, lastN)));
+    }
+
+    /**
+     * @return names of the {@code n} most active publishers, most active first
+     */
+    static List<String> rank(List<UserSession> publishers, int n) {
+        return publishers.stream()
+                .sorted(Comparator.comparingDouble(ActiveSpeakerDetector::speech).reversed()
+                        .thenComparing(Comparator.comparingDouble(UserSession::getVideoActivity).reversed())
+                        .thenComparing(UserSession::getName))
+                .limit(n)
+                .map(UserSession::getName)
+                .toList();
+    }
+
+    private static double speech(UserSession publisher) {
+        final double audio = publisher.getAudioActivity();
+        return audio < SILENT_AUDIO_BYTES_PER_SECOND ? 0 : audio;
+    }
+}
@@ -0,0 +1,26 @@
+package com.co2plant.rtc.webrtc;
+
+/**
+ * Smoothed byte rate of one media stream, fed with cumulative byte counters read from KMS stats.
+ * Thread-safe.
+ */
+final class ActivityRate {
+
+    private volatile double bytesPerSecond;
+    private long lastBytes = -1; // guarded by this
+    private long lastSampleAt;   // guarded by this
+
+    synchronized void update(long bytes, long now) {
+        if (lastBytes >= 0 && now > lastSampleAt) {
+            final double rate = (bytes - lastBytes) * 1e9 / (now - lastSampleAt);
+            // Smoothed so a cough or a single scroll does not reshuffle everyone's layout
+            bytesPerSecond = 0.5 * bytesPerSecond + 0.5 * Math.max(0, rate);
+        }
+        lastBytes = bytes;
+        lastSampleAt = now;
+    }
+
+    double get() {
+        return bytesPerSecond;
+    }
+}
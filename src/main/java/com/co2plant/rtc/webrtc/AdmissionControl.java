@@ -0,0 +1,307 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.signaling.SignalingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces the signaling requests that make KMS build media elements: joins (pipeline and publishing
+ * endpoint) and subscriptions (one endpoint each).
+ * <p>
+ * Each request takes a token from three buckets: this node's, its room's and its session's. When one
+ * of them is empty the caller waits for the refill, in line behind earlier waiters, if that takes no
+ * longer than {@code rtc.admission.max-wait} and fewer than {@code rtc.admission.max-waiting} callers
+ * are already waiting; otherwise the request is refused with a {@link SignalingException#BUSY} error
+ * carrying a {@code retryAfter} hint. A reconnect storm is thus spread over time instead of hitting KMS
+ * all at once. Waiting blocks the session's own handler thread only.
+ * <p>
+ * Limits can be changed at runtime through the {@code admission} actuator endpoint.
+ */
+@Component
+public class AdmissionControl implements RoomListener {
+
+    public enum Scope { NODE, ROOM, SESSION }
+
+    private final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int maxWaiting;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // All guarded by lock
+    private final EnumMap<Scope, TokenBucket.Limit> limits = new EnumMap<>(Scope.class);
+    private final TokenBucket node;
+    private final Map<String, TokenBucket> rooms = new HashMap<>();
+    private final Map<String, TokenBucket> sessions = new HashMap<>();
+    private int waiting;
+
+    // Metrics
+    private final Counter admitted;
+    private final Counter delayed;
+    private final Map<Scope, Counter> rejected = new EnumMap<>(Scope.class);
+    private final Counter rejectedQueueFull;
+    private final Timer waits;
+
+    @Autowired
+    public AdmissionControl(MeterRegistry meters,
+                            @Value("${rtc.admission.enabled:true}") boolean enabled,
+                            @Value("${rtc.admission.node.rate:100}") double nodeRate,
+                            @Value("${rtc.admission.node.burst:200}") int nodeBurst,
+                            @Value("${rtc.admission.room.rate:30}") double roomRate,
+                            @Value("${rtc.admission.room.burst:60}") int roomBurst,
+                            @Value("${rtc.admission.session.rate:10}") double sessionRate,
+                            @Value("${rtc.admission.session.burst:40}") int sessionBurst,
+                            @Value("${rtc.admission.max-wait:2s}") Duration maxWait,
+                            @Value("${rtc.admission.max-waiting:500}") int maxWaiting) {
+        this(meters, enabled, Map.of(
+                        Scope.NODE, new TokenBucket.Limit(nodeRate, nodeBurst),
+                        Scope.ROOM, new TokenBucket.Limit(roomRate, roomBurst),
+                        Scope.SESSION, new TokenBucket.Limit(sessionRate, sessionBurst)),
+                maxWait, maxWaiting, System::nanoTime);
+    }
+
+    AdmissionControl(MeterRegistry meters, boolean enabled, Map<Scope, TokenBucket.Limit> limits, Duration maxWait,
+                     int maxWaiting, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxWaiting = maxWaiting;
+        this.clock = clock;
+        this.limits.putAll(limits);
+        this.node = new TokenBucket(limits.get(Scope.NODE), clock.getAsLong());
+
+        this.admitted = Counter.builder("rtc.admission.admitted")
+                .description("Requests admitted without waiting")
+                .register(meters);
+        this.delayed = Counter.builder("rtc.admission.delayed")
+                .description("Requests admitted after waiting for a token")
+                .register(meters);
+        for (final Scope scope : Scope.values()) {
+            final String tag = tag(scope);
+            rejected.put(scope, Counter.builder("rtc.admission.rejected")
+                    .description("Requests refused as busy, by the bucket that would have made them wait too long")
+                    .tag("scope", tag)
+                    .register(meters));
+            Gauge.builder("rtc.admission.rate", this, a -> a.getLimit(scope).ratePerSecond())
+                    .description("Configured admissions per second")
+                    .tag("scope", tag)
+                    .register(meters);
+            Gauge.builder("rtc.admission.burst", this, a -> a.getLimit(scope).burst())
+                    .description("Configured admission burst")
+                    .tag("scope", tag)
+                    .register(meters);
+        }
+        this.rejectedQueueFull = Counter.builder("rtc.admission.rejected")
+                .description("Requests refused as busy, by the bucket that would have made them wait too long")
+                .tag("scope", "queue")
+                .register(meters);
+        this.waits = Timer.builder("rtc.admission.wait")
+                .description("Time admitted requests waited for their tokens")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(maxWait.plusSeconds(1))
+                .register(meters);
+        Gauge.builder("rtc.admission.waiting", this, AdmissionControl::getWaiting)
+                .description("Requests currently waiting for a token")
+                .register(meters);
+        Gauge.builder("rtc.admission.node.tokens", this, AdmissionControl::getNodeTokens)
+                .description("Tokens left in this node's bucket; negative when reserved by waiting requests")
+                .register(meters);
+    }
+
+    /**
+     * Takes one token for {@code sessionId} in {@code roomName}, waiting for it if allowed.
+     *
+     * @param requestId id of the message asking, echoed in the refusal
+     * @throws SignalingException {@link SignalingException#BUSY} with a retry hint if not admitted
+     */
+    public void admit(String sessionId, String roomName, String requestId) {
+        if (!enabled) {
+            return;
+        }
+        final long waitNanos;
+        lock.lock();
+        try {
+            final long now = clock.getAsLong();
+            final TokenBucket room = rooms.computeIfAbsent(roomName, r -> new TokenBucket(limits.get(Scope.ROOM), now));
+            final TokenBucket session = sessions.computeIfAbsent(sessionId,
+                    s -> new TokenBucket(limits.get(Scope.SESSION), now));
+
+            Scope binding = Scope.NODE;
+            long wait = node.waitNanos(now);
+            final long roomWait = room.waitNanos(now);
+            if (roomWait > wait) {
+                binding = Scope.ROOM;
+                wait = roomWait;
+            }
+            final long sessionWait = session.waitNanos(now);
+            if (sessionWait > wait) {
+                binding = Scope.SESSION;
+                wait = sessionWait;
+            }
+
+            if (wait > maxWaitNanos) {
+                rejected.get(binding).increment();
+                throw busy(requestId, binding, wait);
+            }
+            if (wait > 0 && waiting >= maxWaiting) {
+                rejectedQueueFull.increment();
+                throw busy(requestId, null, wait);
+            }
+            node.take(now);
+            room.take(now);
+            session.take(now);
+            if (wait > 0) {
+                waiting++;
+            }
+            waitNanos = wait;
+        } finally {
+            lock.unlock();
+        }
+
+        if (waitNanos == 0) {
+            admitted.increment();
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy(requestId, null, waitNanos);
+        } finally {
+            lock.lock();
+            try {
+                waiting--;
+            } finally {
+                lock.unlock();
+            }
+        }
+        delayed.increment();
+        waits.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private SignalingException busy(String requestId, Scope scope, long waitNanos) {
+        final Duration retryAfter = Duration.ofMillis(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        log.debug("Refusing {}: {} over its admission rate, retry after {}", requestId,
+                scope != null ? tag(scope) : "wait queue", retryAfter);
+        return SignalingException.busy(requestId, "Too many requests, try again later", retryAfter);
+    }
+
+    /**
+     * Replaces the limit of a scope, for existing buckets as well as new ones.
+     */
+    void setLimit(Scope scope, TokenBucket.Limit limit) {
+        lock.lock();
+        try {
+            final long now = clock.getAsLong();
+            limits.put(scope, limit);
+            switch (scope) {
+                case NODE -> node.setLimit(limit, now);
+                case ROOM -> rooms.values().forEach(bucket -> bucket.setLimit(limit, now));
+                case SESSION -> sessions.values().forEach(bucket -> bucket.setLimit(limit, now));
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("Admission limit for {} set to {}/s, burst {}", tag(scope), limit.ratePerSecond(), limit.burst());
+    }
+
+    TokenBucket.Limit getLimit(Scope scope) {
+        lock.lock();
+        try {
+            return limits.get(scope);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Forgets the session's bucket once its connection is gone.
+     */
+    public void sessionClosed(String sessionId) {
+        lock.lock();
+        try {
+            sessions.remove(sessionId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void roomClosed(Room room) {
+        lock.lock();
+        try {
+            rooms.remove(room.getName());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops buckets that have refilled completely: a fresh one would behave the same. This also covers
+     * rooms that were refused before they were ever created.
+     */
+    @Scheduled(fixedDelayString = "${rtc.admission.prune-interval:60000}")
+    public void pruneIdleBuckets() {
+        lock.lock();
+        try {
+            final long now = clock.getAsLong();
+            rooms.values().removeIf(bucket -> bucket.isFull(now));
+            sessions.values().removeIf(bucket -> bucket.isFull(now));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getBucketCount() {
+        lock.lock();
+        try {
+            return rooms.size() + sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getNodeTokens() {
+        lock.lock();
+        try {
+            return node.available(clock.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String tag(Scope scope) {
+        return scope.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,50 @@
+package com.co2plant.rtc.webrtc;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@code /actuator/admission}: reads the admission limits and changes them without a restart, e.g.
+ * {@code POST {"scope":"room","rate":10,"burst":20}}. A rate of 0 lifts the limit for that scope.
+ * <p>
+ * Actuator is not authenticated, so the endpoint is not exposed by default and is read-only when it is.
+ * Writes need {@code management.endpoint.admission.access=unrestricted} and should only be enabled with
+ * {@code management.server.port} on a private interface.
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionEndpoint {
+
+    private final AdmissionControl admission;
+
+    public AdmissionEndpoint(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        final Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("enabled", admission.isEnabled());
+        for (final AdmissionControl.Scope scope : AdmissionControl.Scope.values()) {
+            final TokenBucket.Limit limit = admission.getLimit(scope);
+            limits.put(AdmissionControl.tag(scope), Map.of("rate", limit.ratePerSecond(), "burst", limit.burst()));
+        }
+        return limits;
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(String scope, double rate, int burst) {
+        if (burst < 1 && rate > 0) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        admission.setLimit(AdmissionControl.Scope.valueOf(scope.toUpperCase(Locale.ROOT)),
+                new TokenBucket.Limit(rate, burst));
+        return limits();
+    }
+}
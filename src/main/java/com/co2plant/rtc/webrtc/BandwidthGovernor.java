@@ -0,0 +1,141 @@
+package com.co2plant.rtc.webrtc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps video bitrates proportional to what each participant actually has to receive.
+ * <p>
+ * Every subscriber gets a downstream budget ({@code rtc.bandwidth.subscriber-budget-kbps}) split over
+ * the video streams it receives: every other participant already sending video in a MESH room (at most {@code rtc.room.last-n}
+ * when Last-N is on), a single stream in COMPOSITE and BROADCAST rooms. Publishers are capped at the
+ * per-stream rate their subscribers get, except presenters of a broadcast which get
+ * {@code presenter-max-kbps}. Everything is scaled down, to half at most, as the media server
+ * approaches {@code node-endpoint-capacity} endpoints or full CPU. Limits are recomputed for the whole
+ * room whenever someone joins, starts publishing or leaves.
+ * <p>
+ * Off unless {@code rtc.bandwidth.enabled} is set, since it overrides the bitrates clients negotiate.
+ */
+@Component
+public class BandwidthGovernor implements RoomListener {
+
+    // Above this fraction of node capacity, bitrates start being scaled down
+    private static final double LOAD_WATERMARK = 0.75;
+    private static final double MIN_LOAD_SCALE = 0.5;
+
+    private final Logger log = LoggerFactory.getLogger(BandwidthGovernor.class);
+
+    private final KmsCluster kms;
+    private final boolean enabled;
+    private final int minKbps;
+    private final int maxKbps;
+    private final int subscriberBudgetKbps;
+    private final int presenterMaxKbps;
+    private final int nodeEndpointCapacity;
+    private final boolean capOutputBitrate;
+    private final int lastN;
+
+    public BandwidthGovernor(KmsCluster kms,
+                             @Value("${rtc.bandwidth.enabled:false}") boolean enabled,
+                             @Value("${rtc.bandwidth.min-kbps:100}") int minKbps,
+                             @Value("${rtc.bandwidth.max-kbps:2500}") int maxKbps,
+                             @Value("${rtc.bandwidth.subscriber-budget-kbps:6000}") int subscriberBudgetKbps,
+                             @Value("${rtc.bandwidth.presenter-max-kbps:4000}") int presenterMaxKbps,
+                             @Value("${rtc.bandwidth.node-endpoint-capacity:1000}") int nodeEndpointCapacity,
+                             @Value("${rtc.bandwidth.cap-output-bitrate:false}") boolean capOutputBitrate,
+                             @Value("${rtc.room.last-n:0}") int lastN) {
+        this.kms = kms;
+        this.enabled = enabled;
+        this.minKbps = minKbps;
+        this.maxKbps = maxKbps;
+        this.subscriberBudgetKbps = subscriberBudgetKbps;
+        this.presenterMaxKbps = presenterMaxKbps;
+        this.nodeEndpointCapacity = nodeEndpointCapacity;
+        this.capOutputBitrate = capOutputBitrate;
+        this.lastN = lastN;
+    }
+
+    @Override
+    public void participantJoined(Room room, UserSession participant) {
+        govern(room);
+    }
+
+    @Override
+    public void publisherReady(Room room, UserSession participant) {
+        govern(room);
+    }
+
+    @Override
+    public void participantLeft(Room room, UserSession participant) {
+        govern(room);
+    }
+
+    void govern(Room room) {
+        if (!enabled) {
+            return;
+        }
+        final double scale = loadScale(nodeLoad(kms.nodeOf(room)));
+        // Only endpoints with negotiated media send anything; idle ones would shrink everyone's share
+        int publishers = 0;
+        for (final UserSession participant : room.getParticipants()) {
+            if (participant.isPublishing()) {
+                publishers++;
+            }
+        }
+        for (final UserSession participant : room.getParticipants()) {
+            final BandwidthLimits limits = limitsFor(room.getMode(), participant, publishers, scale);
+            participant.applyBandwidth(limits);
+        }
+        log.debug("ROOM {}: bandwidth governed for {} publishers, load scale {}", room.getName(), publishers, scale);
+    }
+
+    BandwidthLimits limitsFor(RoomMode mode, UserSession participant, int publishers, double scale) {
+        // Video streams this participant receives
+        final int others = participant.isPublishing() ? publishers - 1 : publishers;
+        final int streams = switch (mode) {
+            case MESH -> Math.max(1, lastN > 0 ? Math.min(others, lastN) : others);
+            case COMPOSITE, BROADCAST -> 1;
+        };
+        final int perStream = clamp(subscriberBudgetKbps / streams * scale);
+
+        final int publishMax;
+        if (mode == RoomMode.BROADCAST && Room.PRESENTER_ROLE.equals(participant.getRole())) {
+            publishMax = clamp(presenterMaxKbps * scale);
+        } else if (mode == RoomMode.COMPOSITE) {
+            // Each publisher only fills one tile of the mix
+            publishMax = clamp(subscriberBudgetKbps / Math.max(1, publishers) * scale);
+        } else {
+            publishMax = perStream;
+        }
+        return new BandwidthLimits(minKbps, publishMax, minKbps, perStream, capOutputBitrate ? perStream : 0);
+    }
+
+    /**
+     * @return how busy the node is, 0 idle to 1 at capacity, from whichever of CPU and endpoints is higher
+     */
+    double nodeLoad(KmsNode node) {
+        if (node == null) {
+            return 0;
+        }
+        double load = nodeEndpointCapacity > 0 ? (double) node.getEndpointCount() / nodeEndpointCapacity : 0;
+        final float cpu = node.getUsedCpu();
+        if (!Float.isNaN(cpu)) {
+            load = Math.max(load, cpu / 100.0);
+        }
+        return load;
+    }
+
+    static double loadScale(double load) {
+        if (load <= LOAD_WATERMARK) {
+            return 1.0;
+        }
+        final double over = Math.min(1.0, (load - LOAD_WATERMARK) / (1.0 - LOAD_WATERMARK));
+        return 1.0 - over * (1.0 - MIN_LOAD_SCALE);
+    }
+
+    private int clamp(double kbps) {
+        return (int) Math.max(minKbps, Math.min(maxKbps, kbps));
+    }
+}
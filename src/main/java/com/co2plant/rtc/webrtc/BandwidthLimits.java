@@ -0,0 +1,31 @@
+package com.co2plant.rtc.webrtc;
+
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+
+/**
+ * Video bandwidth bounds for one participant, in kbps.
+ *
+ * @param publishMinKbps   floor of what the client is asked to send on its outgoing endpoint
+ * @param publishMaxKbps   ceiling of what the client is asked to send on its outgoing endpoint
+ * @param subscribeMinKbps floor of what KMS sends on each of the participant's subscriptions
+ * @param subscribeMaxKbps ceiling of what KMS sends on each of the participant's subscriptions
+ * @param maxOutputKbps    encoder ceiling for subscriptions when KMS has to transcode; 0 leaves it alone
+ */
+public record BandwidthLimits(int publishMinKbps, int publishMaxKbps, int subscribeMinKbps, int subscribeMaxKbps,
+                              int maxOutputKbps) {
+
+    // The outgoing endpoint receives from the client: its "recv" bandwidth is what the client uploads
+    void applyToPublisher(WebRtcEndpoint outgoing, Logger log) {
+        outgoing.setMinVideoRecvBandwidth(publishMinKbps, KurentoFutures.logging(log, "Min video recv bandwidth"));
+        outgoing.setMaxVideoRecvBandwidth(publishMaxKbps, KurentoFutures.logging(log, "Max video recv bandwidth"));
+    }
+
+    void applyToSubscription(WebRtcEndpoint incoming, Logger log) {
+        incoming.setMinVideoSendBandwidth(subscribeMinKbps, KurentoFutures.logging(log, "Min video send bandwidth"));
+        incoming.setMaxVideoSendBandwidth(subscribeMaxKbps, KurentoFutures.logging(log, "Max video send bandwidth"));
+        if (maxOutputKbps > 0) {
+            incoming.setMaxOutputBitrate(maxOutputKbps * 1000, KurentoFutures.logging(log, "Max output bitrate"));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.signaling.SignalDecoder;
+import com.co2plant.rtc.signaling.SignalFormat;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary counterpart of {@link SignalHandler} for clients that negotiated the CBOR subprotocol.
+ * Frames are decoded into the same messages and handled by the same {@link SignalHandler}.
+ */
+@Component
+public class BinarySignalHandler extends BinaryWebSocketHandler {
+
+    private final SignalHandler signalHandler;
+    private final SignalDecoder decoder = SignalFormat.CBOR.decoder();
+
+    public BinarySignalHandler(SignalHandler signalHandler) {
+        this.signalHandler = signalHandler;
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        final ByteBuffer payload = message.getPayload();
+        final byte[] bytes;
+        final int offset;
+        final int length = payload.remaining();
+        if (payload.hasArray()) {
+            bytes = payload.array();
+            offset = payload.arrayOffset() + payload.position();
+        } else {
+            bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            offset = 0;
+        }
+        signalHandler.receive(session, () -> decoder.decode(bytes, offset, length),
+                () -> SignalFormat.CBOR.toJson(bytes, offset, length));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        signalHandler.afterConnectionClosed(session, status);
+    }
+}
@@ -0,0 +1,227 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.kurento.client.IceCandidate;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Holds client ICE candidates that arrive before the endpoint they belong to is ready, per peer
+ * connection (the user's own name for the outgoing endpoint, the sender's name for subscriptions).
+ * <p>
+ * A peer starts out buffering. {@link #open} replays its candidates in arrival order and switches it
+ * to pass-through: from then on {@link #offer} returns false and the caller hands candidates to the
+ * endpoint directly. Because replay and the switch happen under the peer's lock, a candidate can never
+ * overtake the buffered ones, and a peer purged or reset between lookup and lock is looked up again
+ * rather than written to after it left the map.
+ * <p>
+ * The buffer is bounded in peers and candidates per peer, entries expire after a TTL, and the
+ * retained size is tracked so abandoned negotiations show up instead of silently growing the heap.
+ */
+public class CandidateBuffer {
+
+    // Rough per-entry overhead: entry record, IceCandidate, deque slot, timestamps
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static final LongAdder totalBufferedBytes = new LongAdder();
+
+    private final int maxPeers;
+    private final int maxPerPeer;
+    private final long ttlNanos;
+
+    private final ConcurrentMap<String, Peer> peers = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public CandidateBuffer(int maxPeers, int maxPerPeer, Duration ttl) {
+        this.maxPeers = maxPeers;
+        this.maxPerPeer = maxPerPeer;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * A buffer bounded by the {@code rtc.signaling.candidate-buffer.*} properties.
+     */
+    public CandidateBuffer(SignalingProperties properties) {
+        this(properties.getCandidateBufferMaxPeers(), properties.getCandidateBufferMaxPerPeer(),
+                properties.getCandidateBufferTtl());
+    }
+
+    /**
+     * Buffers {@code candidate} for {@code peer} unless that peer is already open.
+     *
+     * @return true if the candidate was consumed (buffered or rejected by a bound), false if the peer is
+     * open and the caller must deliver it to the endpoint itself
+     */
+    public boolean offer(String peer, IceCandidate candidate) {
+        final long now = System.nanoTime();
+        while (true) {
+            Peer buffer = peers.get(peer);
+            if (buffer == null) {
+                purgeExpired(now);
+                if (peers.size() >= maxPeers) {
+                    rejected.increment();
+                    return true;
+                }
+                buffer = peers.computeIfAbsent(peer, k -> new Peer());
+            }
+            synchronized (buffer) {
+                if (buffer.removed) {
+                    // Purged or reset since it was looked up; a candidate added here would never be replayed
+                    continue;
+                }
+                if (buffer.open) {
+                    return false;
+                }
+                buffer.expire(now);
+                if (buffer.entries.size() >= maxPerPeer) {
+                    rejected.increment();
+                    return true;
+                }
+                final int bytes = sizeOf(candidate);
+                buffer.entries.addLast(new Entry(candidate, now, bytes));
+                account(bytes);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replays the peer's buffered candidates, oldest first, into {@code sink} and lets every later
+     * candidate through.
+     *
+     * @return how many candidates were replayed
+     */
+    public int open(String peer, Consumer<IceCandidate> sink) {
+        while (true) {
+            final Peer buffer = peers.computeIfAbsent(peer, k -> new Peer());
+            synchronized (buffer) {
+                if (buffer.removed) {
+                    continue;
+                }
+                buffer.expire(System.nanoTime());
+                int replayed = 0;
+                Entry entry;
+                while ((entry = buffer.entries.pollFirst()) != null) {
+                    account(-entry.bytes());
+                    sink.accept(entry.candidate());
+                    replayed++;
+                }
+                buffer.open = true;
+                return replayed;
+            }
+        }
+    }
+
+    /**
+     * Forgets the peer, e.g. when its subscription is cancelled; it buffers again if reused.
+     */
+    public void reset(String peer) {
+        final Peer buffer = peers.remove(peer);
+        if (buffer != null) {
+            synchronized (buffer) {
+                buffer.removed = true;
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Drops expired candidates and peers that were never opened and have nothing left.
+     */
+    public void purgeExpired() {
+        purgeExpired(System.nanoTime());
+    }
+
+    private void purgeExpired(long now) {
+        for (Iterator<Peer> it = peers.values().iterator(); it.hasNext(); ) {
+            final Peer buffer = it.next();
+            synchronized (buffer) {
+                buffer.expire(now);
+                if (!buffer.open && buffer.entries.isEmpty()) {
+                    buffer.removed = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Iterator<Peer> it = peers.values().iterator(); it.hasNext(); ) {
+            final Peer buffer = it.next();
+            synchronized (buffer) {
+                buffer.removed = true;
+                buffer.clear();
+                it.remove();
+            }
+        }
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Bytes retained by every candidate buffer in this process.
+     */
+    public static long getTotalBufferedBytes() {
+        return totalBufferedBytes.sum();
+    }
+
+    private void account(long bytes) {
+        bufferedBytes.addAndGet(bytes);
+        totalBufferedBytes.add(bytes);
+    }
+
+    private static int sizeOf(IceCandidate candidate) {
+        int chars = length(candidate.getCandidate()) + length(candidate.getSdpMid());
+        return ENTRY_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static int length(String s) {
+        return s != null ? s.length() : 0;
+    }
+
+    private record Entry(IceCandidate candidate, long addedAt, int bytes) {
+    }
+
+    // Guarded by its own monitor
+    private final class Peer {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private boolean open;
+        // Set, under the monitor, once the peer is taken out of the map; callers that looked it up earlier retry
+        private boolean removed;
+
+        void expire(long now) {
+            Entry head;
+            while ((head = entries.peekFirst()) != null && now - head.addedAt() > ttlNanos) {
+                entries.pollFirst();
+                account(-head.bytes());
+                expired.increment();
+            }
+        }
+
+        void clear() {
+            Entry entry;
+            while ((entry = entries.pollFirst()) != null) {
+                account(-entry.bytes());
+            }
+        }
+    }
+}
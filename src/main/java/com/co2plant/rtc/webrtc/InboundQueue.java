@@ -0,0 +1,121 @@
+package com.co2plant.rtc.webrtc;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded serial executor for the signaling messages of one WebSocket session.
+ * <p>
+ * The container's I/O thread only decodes and enqueues; a dedicated virtual thread runs the handlers
+ * one after the other, so a session's messages keep their order while a slow KMS round trip blocks
+ * nobody but that session. Counterpart of {@link OutboundQueue} on the receiving side.
+ */
+class InboundQueue {
+
+    private final Logger log = LoggerFactory.getLogger(InboundQueue.class);
+
+    private final String sessionId;
+    private final int capacity;
+    private final Timer delay;
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Thread worker;
+    private boolean closed; // guarded by lock
+
+    /**
+     * @param delay records how long each message waited before its handler started
+     */
+    InboundQueue(String sessionId, int capacity, Timer delay) {
+        this.sessionId = sessionId;
+        this.capacity = Math.max(1, capacity);
+        this.delay = delay;
+        this.worker = Thread.ofVirtual()
+                .name("ws-in-" + sessionId)
+                .start(this::run);
+    }
+
+    /**
+     * @return false if the queue is full or closed; the task will not run
+     */
+    boolean offer(Runnable task) {
+        lock.lock();
+        try {
+            if (closed || tasks.size() >= capacity) {
+                return false;
+            }
+            tasks.addLast(new Task(task, System.nanoTime()));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues {@code last} regardless of capacity behind everything already accepted, and rejects
+     * anything offered afterwards. The worker exits once it has run.
+     */
+    void closeWith(Runnable last) {
+        lock.lock();
+        try {
+            if (!closed) {
+                tasks.addLast(new Task(last, System.nanoTime()));
+                closed = true;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getDepth() {
+        lock.lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isWorkerAlive() {
+        return worker.isAlive();
+    }
+
+    private void run() {
+        while (true) {
+            final Task task;
+            lock.lock();
+            try {
+                while (tasks.isEmpty() && !closed) {
+                    notEmpty.await();
+                }
+                if (tasks.isEmpty()) {
+                    return;
+                }
+                task = tasks.pollFirst();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            delay.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                task.action().run();
+            } catch (RuntimeException e) {
+                // Handlers report their own failures; this only keeps the worker alive
+                log.error("SESSION {}: inbound task failed", sessionId, e);
+            }
+        }
+    }
+
+    private record Task(Runnable action, long enqueuedAt) {
+    }
+}
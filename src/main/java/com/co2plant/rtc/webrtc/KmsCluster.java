@@ -0,0 +1,168 @@
+package com.co2plant.rtc.webrtc;
+
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pool of Kurento Media Servers. New room pipelines are placed on the least-loaded node.
+ */
+public class KmsCluster implements Closeable {
+
+    public enum PlacementStrategy {
+        /** Fewest WebRtcEndpoints across the node's rooms */
+        ENDPOINTS,
+        /** Fewest pipelines (rooms) */
+        PIPELINES,
+        /** Lowest sampled CPU usage; nodes without a sample come last, and tie on endpoints */
+        CPU
+    }
+
+    private static final int CPU_SAMPLE_INTERVAL_MS = 500;
+
+    private final Logger log = LoggerFactory.getLogger(KmsCluster.class);
+
+    private final List<KmsNode> nodes;
+    private final PlacementStrategy strategy;
+
+    public KmsCluster(List<KmsNode> nodes, PlacementStrategy strategy) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one KMS url is required");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.strategy = strategy != null ? strategy : PlacementStrategy.ENDPOINTS;
+        log.info("KMS cluster of {} node(s), placement by {}", nodes.size(), this.strategy);
+    }
+
+    /**
+     * Creates the pipeline for {@code room} on the least-loaded node that accepts it, taking a warm one
+     * from the node's pool when available. Nodes that fail are skipped; the last failure is rethrown
+     * if none succeeds.
+     */
+    public Placement createPipeline(String roomName) {
+        RuntimeException lastFailure = null;
+        for (KmsNode node : nodesByLoad()) {
+            PipelinePool.WarmPipeline warm = node.getPool() != null ? node.getPool().take() : null;
+            if (warm != null) {
+                log.debug("Room {} placed on warm pipeline of KMS {}", roomName, node.getUrl());
+                return new Placement(node, warm.pipeline(), warm.endpoints());
+            }
+            try {
+                MediaPipeline pipeline = KurentoFutures.timed("createMediaPipeline",
+                        () -> node.getClient().createMediaPipeline());
+                log.debug("Room {} placed on KMS {}", roomName, node.getUrl());
+                return new Placement(node, pipeline, List.of());
+            } catch (RuntimeException e) {
+                log.warn("KMS {}: could not create pipeline for room {}: {}", node.getUrl(), roomName, e.getMessage());
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    List<KmsNode> getNodes() {
+        return nodes;
+    }
+
+    List<KmsNode> nodesByLoad() {
+        List<KmsNode> ordered = new ArrayList<>(nodes);
+        ordered.sort(loadComparator());
+        return ordered;
+    }
+
+    private Comparator<KmsNode> loadComparator() {
+        Comparator<KmsNode> byEndpoints = Comparator.comparingInt(KmsNode::getEndpointCount);
+        return switch (strategy) {
+            case ENDPOINTS -> byEndpoints.thenComparingInt(KmsNode::getPipelineCount);
+            case PIPELINES -> Comparator.comparingInt(KmsNode::getPipelineCount).thenComparing(byEndpoints);
+            // A node whose sampling never worked or broke must not look idle
+            case CPU -> Comparator.comparingDouble((KmsNode node) ->
+                            Float.isNaN(node.getUsedCpu()) ? Double.MAX_VALUE : node.getUsedCpu())
+                    .thenComparing(byEndpoints);
+        };
+    }
+
+    public void register(KmsNode node, Room room) {
+        node.addRoom(room);
+    }
+
+    /**
+     * @return the node hosting the room's pipeline, or null if it is not registered
+     */
+    public KmsNode nodeOf(Room room) {
+        for (KmsNode node : nodes) {
+            if (node.hasRoom(room)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the node the room was placed on, or null if it was not registered
+     */
+    public KmsNode release(Room room) {
+        for (KmsNode node : nodes) {
+            if (node.removeRoom(room)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Offers the (empty) room's pipeline back to the warm pool of the node it lives on.
+     *
+     * @return false if the node has no pool or the pool is full; the caller then closes the room
+     */
+    public boolean recycle(KmsNode node, Room room) {
+        return node != null && node.getPool() != null && node.getPool().recycle(room);
+    }
+
+    public List<KmsNode.NodeStats> getStats() {
+        return nodes.stream().map(KmsNode::getStats).toList();
+    }
+
+    @Scheduled(fixedDelayString = "${kurento.placement.sample-interval:10000}")
+    public void sampleServerStats() {
+        if (strategy != PlacementStrategy.CPU) {
+            return;
+        }
+        for (KmsNode node : nodes) {
+            node.sample(CPU_SAMPLE_INTERVAL_MS);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${kurento.pool.sweep-interval:5000}")
+    public void maintainPools() {
+        for (KmsNode node : nodes) {
+            if (node.getPool() != null) {
+                node.getPool().maintain();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (KmsNode node : nodes) {
+            if (node.getPool() != null) {
+                node.getPool().close();
+            }
+            node.getClient().destroy();
+        }
+    }
+
+    /**
+     * Where a room's pipeline was created. {@code warmEndpoints} are idle endpoints pre-built on that
+     * pipeline by the pool, possibly empty.
+     */
+    public record Placement(KmsNode node, MediaPipeline pipeline, List<WebRtcEndpoint> warmEndpoints) {
+    }
+}
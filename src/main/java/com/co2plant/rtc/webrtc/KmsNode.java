@@ -0,0 +1,107 @@
+package com.co2plant.rtc.webrtc;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.client.ServerManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One Kurento Media Server in the cluster and the rooms whose pipelines live on it.
+ */
+public class KmsNode {
+
+    private final Logger log = LoggerFactory.getLogger(KmsNode.class);
+
+    private final String url;
+    private final KurentoClient client;
+    private final PipelinePool pool; // null when pre-warming is disabled
+    private final Set<Room> rooms = ConcurrentHashMap.newKeySet();
+
+    // Last ServerManager sample; NaN/-1 until the first one
+    private volatile float usedCpu = Float.NaN;
+    private volatile long usedMemory = -1;
+
+    public KmsNode(String url, KurentoClient client) {
+        this(url, client, null);
+    }
+
+    public KmsNode(String url, KurentoClient client, PipelinePool pool) {
+        this.url = url;
+        this.client = client;
+        this.pool = pool;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public KurentoClient getClient() {
+        return client;
+    }
+
+    PipelinePool getPool() {
+        return pool;
+    }
+
+    void addRoom(Room room) {
+        rooms.add(room);
+    }
+
+    boolean removeRoom(Room room) {
+        return rooms.remove(room);
+    }
+
+    boolean hasRoom(Room room) {
+        return rooms.contains(room);
+    }
+
+    public int getPipelineCount() {
+        return rooms.size();
+    }
+
+    public int getEndpointCount() {
+        int endpoints = 0;
+        for (Room room : rooms) {
+            endpoints += room.getEndpointCount();
+        }
+        return endpoints;
+    }
+
+    public float getUsedCpu() {
+        return usedCpu;
+    }
+
+    public long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /**
+     * Refreshes CPU and memory usage from the server. Blocks for {@code cpuIntervalMs}.
+     */
+    void sample(int cpuIntervalMs) {
+        try {
+            ServerManager serverManager = client.getServerManager();
+            usedCpu = serverManager.getUsedCpu(cpuIntervalMs);
+            usedMemory = serverManager.getUsedMemory();
+        } catch (Exception e) {
+            // A stale reading would keep attracting rooms; unknown ranks the node last instead
+            usedCpu = Float.NaN;
+            log.warn("KMS {}: could not sample server stats: {}", url, e.getMessage());
+        }
+    }
+
+    public NodeStats getStats() {
+        return new NodeStats(url, getPipelineCount(), getEndpointCount(), pool != null ? pool.getIdleCount() : 0,
+                usedCpu, usedMemory);
+    }
+
+    /**
+     * Placement view of a node. {@code usedCpu} is a percentage, {@code usedMemory} is in KiB.
+     */
+    public record NodeStats(String url, int pipelines, int endpoints, int warmPipelines, float usedCpu,
+                            long usedMemory) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.co2plant.rtc.webrtc;
+
+import org.kurento.client.Continuation;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Adapts kurento-client's {@link Continuation} style async calls to {@link CompletableFuture}s so
+ * independent KMS round trips can be issued together and composed. The overloads taking an
+ * {@code operation} also record the round trip in the {@code rtc.kurento.rpc} timer.
+ */
+final class KurentoFutures {
+
+    private KurentoFutures() {
+    }
+
+    static <T> CompletableFuture<T> call(Consumer<Continuation<T>> invocation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            invocation.accept(new Continuation<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    future.complete(result);
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    future.completeExceptionally(cause);
+                }
+            });
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    static <T> CompletableFuture<T> call(String operation, Consumer<Continuation<T>> invocation) {
+        final long start = System.nanoTime();
+        final CompletableFuture<T> future = call(invocation);
+        future.whenComplete((result, cause) -> RtcMeters.recordRpc(operation, start, cause == null));
+        return future;
+    }
+
+    /**
+     * Times a blocking call.
+     */
+    static <T> T timed(String operation, Supplier<T> invocation) {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final T result = invocation.get();
+            success = true;
+            return result;
+        } finally {
+            RtcMeters.recordRpc(operation, start, success);
+        }
+    }
+
+    static void timed(String operation, Runnable invocation) {
+        timed(operation, () -> {
+            invocation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Times an async call completing through {@code delegate}.
+     */
+    static <T> Continuation<T> timed(String operation, Continuation<T> delegate) {
+        final long start = System.nanoTime();
+        return new Continuation<T>() {
+            @Override
+            public void onSuccess(T result) throws Exception {
+                RtcMeters.recordRpc(operation, start, true);
+                delegate.onSuccess(result);
+            }
+
+            @Override
+            public void onError(Throwable cause) throws Exception {
+                RtcMeters.recordRpc(operation, start, false);
+                delegate.onError(cause);
+            }
+        };
+    }
+
+    /**
+     * Continuation for fire-and-forget calls where a failure is only worth a log line.
+     */
+    static <T> Continuation<T> logging(Logger log, String what) {
+        return new Continuation<T>() {
+            @Override
+            public void onSuccess(T result) {
+                log.trace("{} succeeded", what);
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+                log.warn("{} failed: {}", what, cause.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,382 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.signaling.SignalFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded outbound frame queue for one WebSocket session.
+ * <p>
+ * Callers (Kurento event threads, room broadcasts, the signaling handler) only enqueue; a dedicated
+ * virtual thread drains the queue and does the actual socket writes, so a slow client only ever
+ * backs up its own queue.
+ */
+public class OutboundQueue implements Closeable {
+
+    public enum OverflowPolicy {
+        /** Merge queued ICE candidates per endpoint into single "iceCandidates" frames, then drop if still full */
+        COALESCE_ICE,
+        /** Drop the new frame */
+        DROP,
+        /** Close the slow session; the normal leave path cleans it up */
+        DISCONNECT
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    // Only enqueues batched candidates when a window closes, so one thread serves every session
+    private static final ScheduledExecutorService iceBatchTimer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("ice-batch").factory());
+
+    private final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+    private final WebSocketSession session;
+    private final SignalFormat format;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    // Trickle ICE batching, enabled per session once the client has negotiated it
+    private volatile long iceBatchWindowNanos;
+    private final Map<String, ArrayNode> pendingIce = new HashMap<>(); // guarded by lock
+
+    // Per-queue counters; latencies and totals across sessions go to RtcMeters
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder iceCandidates = new LongAdder();
+
+    public OutboundQueue(WebSocketSession session, int capacity, OverflowPolicy policy) {
+        this.session = session;
+        this.format = SignalFormat.of(session);
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy != null ? policy : OverflowPolicy.COALESCE_ICE;
+        this.drainer = Thread.ofVirtual()
+                .name("ws-out-" + session.getId())
+                .start(this::drain);
+    }
+
+    /**
+     * Queues a control frame (SDP answers, membership updates...), encoded in the session's format.
+     *
+     * @return false if the frame was rejected by the overflow policy
+     */
+    public boolean offer(ObjectNode message) {
+        return offer(format.encode(message));
+    }
+
+    /**
+     * Queues a control frame given as JSON text, re-encoded if the session speaks another format.
+     */
+    public boolean offer(String payload) {
+        return offer(format.fromJson(payload));
+    }
+
+    /**
+     * Queues an already encoded frame, which must be in this session's {@link #getFormat() format}.
+     * WebSocket messages are immutable, so one instance can be shared by every recipient of a broadcast.
+     */
+    public boolean offer(WebSocketMessage<?> message) {
+        return enqueue(new Frame(message, null, null, System.nanoTime()));
+    }
+
+    /**
+     * Queues a trickle ICE candidate for the connection identified by {@code name}. Unlike control
+     * frames these may be merged with other queued candidates for the same connection on overflow.
+     */
+    public boolean offerIceCandidate(String name, ObjectNode candidate) {
+        iceCandidates.increment();
+        if (iceBatchWindowNanos > 0) {
+            return batchIceCandidate(name, candidate);
+        }
+        ObjectNode message = mapper.createObjectNode();
+        message.put("id", "iceCandidate");
+        message.put("name", name);
+        message.set("candidate", candidate);
+        return enqueue(new Frame(format.encode(message), name, candidate, System.nanoTime()));
+    }
+
+    /**
+     * From now on, candidates for the same connection are collected for {@code window} and sent as one
+     * "iceCandidates" frame. A zero window keeps one frame per candidate.
+     */
+    public void enableIceBatching(Duration window) {
+        this.iceBatchWindowNanos = window.toNanos();
+    }
+
+    public boolean isIceBatching() {
+        return iceBatchWindowNanos > 0;
+    }
+
+    private boolean batchIceCandidate(String name, ObjectNode candidate) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            ArrayNode pending = pendingIce.get(name);
+            if (pending == null) {
+                pending = mapper.createArrayNode();
+                pendingIce.put(name, pending);
+                // First candidate of a window opens it
+                iceBatchTimer.schedule(() -> flushIceBatch(name), iceBatchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+            pending.add(candidate);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushIceBatch(String name) {
+        ArrayNode candidates;
+        lock.lock();
+        try {
+            candidates = pendingIce.remove(name);
+        } finally {
+            lock.unlock();
+        }
+        if (candidates == null || candidates.isEmpty()) {
+            return;
+        }
+        ObjectNode message = mapper.createObjectNode();
+        message.put("id", "iceCandidates");
+        message.put("name", name);
+        message.set("candidates", candidates);
+        enqueue(new Frame(format.encode(message), name, null, System.nanoTime(), candidates));
+    }
+
+    private boolean enqueue(Frame frame) {
+        boolean disconnect = false;
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (frames.size() >= capacity) {
+                switch (policy) {
+                    case COALESCE_ICE -> coalesceIceCandidates();
+                    case DISCONNECT -> disconnect = true;
+                    case DROP -> { }
+                }
+            }
+            if (!disconnect && frames.size() < capacity) {
+                frames.addLast(frame);
+                maxDepth.accumulateAndGet(frames.size(), Math::max);
+                notEmpty.signal();
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        dropped.increment();
+        RtcMeters.OUTBOUND_DROPPED.increment();
+        if (disconnect) {
+            disconnectSlowConsumer();
+        } else {
+            log.debug("SESSION {}: outbound queue full ({}), dropping frame", session.getId(), capacity);
+        }
+        return false;
+    }
+
+    // Must hold lock
+    private void coalesceIceCandidates() {
+        Map<String, ArrayNode> candidatesByName = new LinkedHashMap<>();
+        Map<String, Long> firstEnqueuedAt = new LinkedHashMap<>();
+        ArrayDeque<Frame> rebuilt = new ArrayDeque<>(frames.size());
+        int merged = 0;
+
+        for (Iterator<Frame> it = frames.iterator(); it.hasNext(); ) {
+            Frame f = it.next();
+            if (f.iceName() == null) {
+                rebuilt.addLast(f);
+                continue;
+            }
+            ArrayNode candidates = candidatesByName.get(f.iceName());
+            if (candidates == null) {
+                candidates = mapper.createArrayNode();
+                candidatesByName.put(f.iceName(), candidates);
+                firstEnqueuedAt.put(f.iceName(), f.enqueuedAt());
+                // Placeholder keeps the merged frame at the position of the first candidate
+                rebuilt.addLast(new Frame(null, f.iceName(), null, f.enqueuedAt()));
+            } else {
+                merged++;
+            }
+            if (f.candidate() != null) {
+                candidates.add(f.candidate());
+            } else {
+                candidates.addAll(f.candidates());
+            }
+        }
+
+        if (merged == 0) {
+            return;
+        }
+
+        frames.clear();
+        for (Frame f : rebuilt) {
+            if (f.iceName() != null && f.message() == null) {
+                ArrayNode candidates = candidatesByName.get(f.iceName());
+                ObjectNode message = mapper.createObjectNode();
+                message.put("id", "iceCandidates");
+                message.put("name", f.iceName());
+                message.set("candidates", candidates);
+                frames.addLast(new Frame(format.encode(message), f.iceName(), null,
+                        firstEnqueuedAt.get(f.iceName()), candidates));
+            } else {
+                frames.addLast(f);
+            }
+        }
+        coalesced.add(merged);
+        RtcMeters.OUTBOUND_COALESCED.increment(merged);
+        log.debug("SESSION {}: coalesced {} queued ICE frames", session.getId(), merged);
+    }
+
+    private void disconnectSlowConsumer() {
+        if (closed) {
+            return;
+        }
+        log.warn("SESSION {}: outbound queue full ({}), disconnecting slow consumer", session.getId(), capacity);
+        close();
+        // Closing can block on the socket; keep it off the caller's thread
+        Thread.ofVirtual().start(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("SESSION {}: error closing slow consumer", session.getId(), e);
+            }
+        });
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            lock.lock();
+            try {
+                while (frames.isEmpty() && !closed) {
+                    notEmpty.await();
+                }
+                if (frames.isEmpty()) {
+                    return;
+                }
+                frame = frames.pollFirst();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!session.isOpen()) {
+                dropped.increment();
+                RtcMeters.OUTBOUND_DROPPED.increment();
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                session.sendMessage(frame.message());
+                sent.increment();
+            } catch (IOException | IllegalStateException e) {
+                failed.increment();
+                RtcMeters.SEND_FAILURES.increment();
+                log.debug("SESSION {}: could not send frame: {}", session.getId(), e.getMessage());
+            }
+            RtcMeters.OUTBOUND_SEND.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RtcMeters.OUTBOUND_QUEUED.record(start - frame.enqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public SignalFormat getFormat() {
+        return format;
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return frames.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true while new frames would be dropped, coalesced or disconnect the session
+     */
+    public boolean isFull() {
+        return getDepth() >= capacity;
+    }
+
+    public Stats getStats() {
+        return new Stats(
+                getDepth(),
+                maxDepth.get(),
+                sent.sum(),
+                dropped.sum(),
+                coalesced.sum(),
+                failed.sum(),
+                iceCandidates.sum());
+    }
+
+    /**
+     * Stops accepting frames. Frames already queued are still flushed while the socket stays open.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        log.debug("SESSION {}: outbound queue closed, {}", session.getId(), getStats());
+    }
+
+    boolean isDrainerAlive() {
+        return drainer.isAlive();
+    }
+
+    /**
+     * Point-in-time view of the queue counters. Send and queueing latencies are only recorded as the
+     * {@code rtc.signaling.outbound.send} and {@code rtc.signaling.outbound.queued} timers.
+     */
+    public record Stats(int depth, long maxDepth, long sent, long dropped, long coalesced, long failed,
+                        long iceCandidates) {
+    }
+
+    private record Frame(WebSocketMessage<?> message, String iceName, ObjectNode candidate, long enqueuedAt,
+                         ArrayNode candidates) {
+        Frame(WebSocketMessage<?> message, String iceName, ObjectNode candidate, long enqueuedAt) {
+            this(message, iceName, candidate, enqueuedAt, null);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.co2plant.rtc.webrtc;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warm pool of pre-created {@link MediaPipeline}s on one media server, optionally each with a few
+ * idle {@link WebRtcEndpoint}s already built, so creating a room does not wait on KMS.
+ * <p>
+ * {@link #take()} is a non-blocking poll; the pool refills itself on a background virtual thread and
+ * entries older than the TTL are released rather than handed out.
+ */
+public class PipelinePool {
+
+    private final Logger log = LoggerFactory.getLogger(PipelinePool.class);
+
+    private final String url;
+    private final KurentoClient client;
+    private final int size;
+    private final int endpointsPerPipeline;
+    private final long ttlNanos;
+
+    private final ConcurrentLinkedDeque<WarmPipeline> idle = new ConcurrentLinkedDeque<>();
+    // Counts idle entries plus ones being created, so concurrent refills don't overshoot
+    private final AtomicInteger provisioned = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile boolean closed;
+
+    public PipelinePool(String url, KurentoClient client, int size, int endpointsPerPipeline, Duration ttl) {
+        this.url = url;
+        this.client = client;
+        this.size = size;
+        this.endpointsPerPipeline = endpointsPerPipeline;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @return a warm pipeline, or null if the pool is currently empty
+     */
+    public WarmPipeline take() {
+        WarmPipeline warm;
+        while ((warm = idle.pollFirst()) != null) {
+            provisioned.decrementAndGet();
+            if (!isExpired(warm, System.nanoTime())) {
+                break;
+            }
+            release(warm);
+        }
+        refillAsync();
+        return warm;
+    }
+
+    /**
+     * Takes back the pipeline of an empty room if the pool has room for it, stripped of the room's hub.
+     */
+    boolean recycle(Room room) {
+        if (closed) {
+            return false;
+        }
+        while (true) {
+            final int current = provisioned.get();
+            if (current >= size) {
+                return false;
+            }
+            if (provisioned.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        // The next room on this pipeline may not be in the same mode, or want a hub at all
+        room.releaseHub();
+        idle.addLast(new WarmPipeline(room.getPipeline(), room.drainWarmEndpoints(), System.nanoTime()));
+        return true;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Releases expired entries and tops the pool back up.
+     */
+    public void maintain() {
+        long now = System.nanoTime();
+        for (Iterator<WarmPipeline> it = idle.iterator(); it.hasNext(); ) {
+            WarmPipeline warm = it.next();
+            if (isExpired(warm, now) && idle.remove(warm)) {
+                provisioned.decrementAndGet();
+                log.debug("KMS {}: evicting idle pipeline after TTL", url);
+                release(warm);
+            }
+        }
+        refillAsync();
+    }
+
+    private boolean isExpired(WarmPipeline warm, long now) {
+        return now - warm.createdAt() > ttlNanos;
+    }
+
+    private void refillAsync() {
+        if (closed || provisioned.get() >= size || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("kms-pool-refill").start(() -> {
+            try {
+                while (!closed) {
+                    if (provisioned.incrementAndGet() > size) {
+                        provisioned.decrementAndGet();
+                        break;
+                    }
+                    try {
+                        idle.addLast(create());
+                    } catch (RuntimeException e) {
+                        provisioned.decrementAndGet();
+                        log.warn("KMS {}: could not pre-warm pipeline: {}", url, e.getMessage());
+                        return;
+                    }
+                }
+                if (closed) {
+                    close();
+                }
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    private WarmPipeline create() {
+        MediaPipeline pipeline = KurentoFutures.timed("createMediaPipeline", () -> client.createMediaPipeline());
+        List<WebRtcEndpoint> endpoints = new ArrayList<>(endpointsPerPipeline);
+        for (int i = 0; i < endpointsPerPipeline; i++) {
+            endpoints.add(KurentoFutures.timed("build", () -> new WebRtcEndpoint.Builder(pipeline).build()));
+        }
+        return new WarmPipeline(pipeline, endpoints, System.nanoTime());
+    }
+
+    private void release(WarmPipeline warm) {
+        // Releasing the pipeline releases the idle endpoints it contains
+        warm.pipeline().release(KurentoFutures.timed("release",
+                KurentoFutures.logging(log, "Release of pooled pipeline on " + url)));
+    }
+
+    public void close() {
+        closed = true;
+        WarmPipeline warm;
+        while ((warm = idle.pollFirst()) != null) {
+            release(warm);
+        }
+    }
+
+    public record WarmPipeline(MediaPipeline pipeline, List<WebRtcEndpoint> endpoints, long createdAt) {
+    }
+}
@@ -1,12 +1,20 @@
 package com.co2plant.rtc.webrtc;
 
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.signaling.SignalFormat;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.kurento.client.Composite;
 import org.kurento.client.Continuation;
+import org.kurento.client.DispatcherOneToMany;
+import org.kurento.client.Hub;
+import org.kurento.client.HubPort;
 import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import javax.annotation.PreDestroy;
@@ -14,22 +22,86 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * A conference room: its participants, its media pipeline and, outside MESH mode, its hub.
+ * <p>
+ * Membership and the state derived from it are changed only by commands run in the room's
+ * {@link RoomMailbox}, one at a time, whatever thread the request came in on. The public mutators
+ * below submit to it and wait; reads go straight to the concurrent collections and see the state as of
+ * the last finished command. Rooms do not share a mailbox, so a join storm in one room does not hold
+ * up any other.
+ */
 public class Room implements Closeable {
+    /** Name under which the mixed stream of a {@link RoomMode#COMPOSITE} room is offered to clients */
+    public static final String MIXED_STREAM = "$mixed";
+    /** Name under which the presenter of a {@link RoomMode#BROADCAST} room is offered to clients */
+    public static final String PRESENTER_STREAM = "$presenter";
+    /** The only role that publishes in a {@link RoomMode#BROADCAST} room */
+    public static final String PRESENTER_ROLE = "manager";
+
+    // Shared by every room; broadcast chunks are short-lived and mostly wait on queue locks
+    private static final ExecutorService broadcastExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
     private final Logger log = LoggerFactory.getLogger(Room.class);
 
     private final String name;
     private final MediaPipeline pipeline;
+    private final SignalingProperties properties;
+    private final RoomMailbox mailbox;
+    // Written in the mailbox only, read from anywhere
     private final ConcurrentMap<String, UserSession> participants = new ConcurrentHashMap<>();
+    // Idle endpoints pre-built by the pipeline pool, handed out to joiners before building new ones
+    private final ConcurrentLinkedQueue<WebRtcEndpoint> warmEndpoints;
+    private final List<RoomListener> listeners;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public Room(String name, MediaPipeline pipeline) {
+    private volatile RoomMode mode;
+    private Hub hub; // mailbox only, created on first use outside MESH mode
+    private String presenter; // mailbox only; BROADCAST: participant whose port is the dispatcher's source
+    private volatile List<String> activeSpeakers = List.of(); // Last-N, most active first
+
+    // Participants holding the room; RETIRED once the manager has decided to tear it down
+    private static final int RETIRED = -1;
+    private final AtomicInteger references = new AtomicInteger();
+    private volatile long idleSince = System.nanoTime();
+
+    public Room(String name, MediaPipeline pipeline, SignalingProperties properties) {
+        this(name, pipeline, List.of(), properties);
+    }
+
+    public Room(String name, MediaPipeline pipeline, List<WebRtcEndpoint> warmEndpoints,
+                SignalingProperties properties) {
+        this(name, pipeline, warmEndpoints, List.of(), properties);
+    }
+
+    public Room(String name, MediaPipeline pipeline, List<WebRtcEndpoint> warmEndpoints,
+                List<RoomListener> listeners, SignalingProperties properties) {
+        this(name, pipeline, warmEndpoints, listeners, properties, properties.getDefaultRoomMode());
+    }
+
+    public Room(String name, MediaPipeline pipeline, List<WebRtcEndpoint> warmEndpoints,
+                List<RoomListener> listeners, SignalingProperties properties, RoomMode mode) {
         this.name = name;
+        this.mode = mode != null ? mode : RoomMode.MESH;
         this.pipeline = pipeline;
-        log.info("ROOM {} has been created", name);
+        this.warmEndpoints = new ConcurrentLinkedQueue<>(warmEndpoints);
+        this.listeners = List.copyOf(listeners);
+        this.properties = properties;
+        this.mailbox = new RoomMailbox(name, this::endOfTick);
+        log.info("ROOM {} has been created in {} mode", name, this.mode);
     }
 
     public String getName() {
@@ -40,22 +112,274 @@ public class Room implements Closeable {
         return pipeline;
     }
 
+    public RoomMode getMode() {
+        return mode;
+    }
+
     public UserSession join(String userName, String role, WebSocketSession session) throws IOException {
-        log.info("ROOM {}: adding participant {}, role {}", name, userName, role);
-        final UserSession participant = new UserSession(userName, role, this.name, session, this.pipeline);
-        joinRoom(participant);
-        participants.put(participant.getName(), participant);
-        sendParticipantNames(participant);
+        return join(userName, role, session, false);
+    }
+
+    /**
+     * @param iceBatching whether the client asked for batched "iceCandidates" frames
+     */
+    public UserSession join(String userName, String role, WebSocketSession session, boolean iceBatching)
+            throws IOException {
+        final UserSession participant = newParticipant(userName, role, session, iceBatching);
+        join(participant);
         return participant;
     }
 
+    /**
+     * Builds a participant, with its outbound queue and endpoint, without adding it to the room yet.
+     */
+    UserSession newParticipant(String userName, String role, WebSocketSession session, boolean iceBatching) {
+        log.info("ROOM {}: adding participant {}, role {}", name, userName, role);
+        final OutboundQueue outbound = new OutboundQueue(session, properties.getOutboundCapacity(),
+                properties.getOverflowPolicy());
+        if (iceBatching && properties.getIceBatchWindow() != null && !properties.getIceBatchWindow().isZero()) {
+            outbound.enableIceBatching(properties.getIceBatchWindow());
+        }
+        final CandidateBuffer candidateBuffer = new CandidateBuffer(properties);
+        // Viewers of a broadcast are receive-only and get no publishing endpoint at all
+        final boolean publisher = mode != RoomMode.BROADCAST || PRESENTER_ROLE.equals(role);
+        // Built on the caller's thread so the mailbox does not wait on KMS for it
+        return new UserSession(userName, role, this.name, session, outbound, this.pipeline,
+                publisher ? takeOutgoingEndpoint() : null, candidateBuffer);
+    }
+
+    /**
+     * Takes a reference on the room.
+     *
+     * @return false if the room has already been retired and must not be used
+     */
+    boolean acquire() {
+        while (true) {
+            final int current = references.get();
+            if (current == RETIRED) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        while (true) {
+            final int current = references.get();
+            if (current <= 0) {
+                return;
+            }
+            if (references.compareAndSet(current, current - 1)) {
+                if (current == 1) {
+                    idleSince = System.nanoTime();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Atomically retires the room if nobody has held it for at least {@code lingerNanos}.
+     */
+    boolean retireIfIdle(long lingerNanos, long now) {
+        return references.get() == 0
+                && now - idleSince >= lingerNanos
+                && references.compareAndSet(0, RETIRED);
+    }
+
+    void retire() {
+        references.set(RETIRED);
+    }
+
+    int getReferenceCount() {
+        return references.get();
+    }
+
+    /**
+     * Hands over the idle pre-built endpoints, e.g. to put the pipeline back into the warm pool.
+     */
+    List<WebRtcEndpoint> drainWarmEndpoints() {
+        final List<WebRtcEndpoint> drained = new ArrayList<>();
+        WebRtcEndpoint endpoint;
+        while ((endpoint = warmEndpoints.poll()) != null) {
+            drained.add(endpoint);
+        }
+        return drained;
+    }
+
+    WebRtcEndpoint takeOutgoingEndpoint() {
+        final WebRtcEndpoint warm = warmEndpoints.poll();
+        return warm != null ? warm : KurentoFutures.timed("build", () -> new WebRtcEndpoint.Builder(pipeline).build());
+    }
+
+    void join(UserSession participant) throws IOException {
+        mailbox.call(() -> {
+            final Hub activeHub = hubIfActive();
+            if (activeHub != null) {
+                participant.joinHub(activeHub);
+            } else {
+                // Others learn about the newcomer only in MESH mode; otherwise the hub stream already covers it
+                joinRoom(participant);
+            }
+            participants.put(participant.getName(), participant);
+            sendParticipantNames(participant);
+            fire(listener -> listener.participantJoined(this, participant));
+            return null;
+        });
+    }
+
+    /**
+     * Runs in the mailbox after every tick: membership-wide decisions are taken once per burst of
+     * joins rather than once per joiner.
+     */
+    private void endOfTick() {
+        final int threshold = properties.getCompositeThreshold();
+        if (mode == RoomMode.MESH && threshold > 0 && participants.size() > threshold) {
+            log.info("ROOM {}: {} participants, above {}, switching to composite", name, participants.size(),
+                    threshold);
+            meshToComposite();
+        }
+    }
+
+    private Hub hubIfActive() {
+        if (mode == RoomMode.MESH) {
+            return null;
+        }
+        if (hub == null) {
+            hub = createHub(mode);
+        }
+        return hub;
+    }
+
+    Hub createHub(RoomMode mode) {
+        return KurentoFutures.timed("build", () -> mode == RoomMode.BROADCAST
+                ? new DispatcherOneToMany.Builder(pipeline).build()
+                : new Composite.Builder(pipeline).build());
+    }
+
+    /**
+     * @return the stream clients subscribe to outside MESH mode, or null in MESH mode
+     */
+    public String getHubStream() {
+        return switch (mode) {
+            case MESH -> null;
+            case COMPOSITE -> MIXED_STREAM;
+            case BROADCAST -> PRESENTER_STREAM;
+        };
+    }
+
+    /**
+     * Called once a participant's own media is negotiated. In BROADCAST mode a presenter that starts
+     * publishing takes over the dispatcher's source, so every viewer now receives it. Listeners hear
+     * about it in every mode.
+     */
+    public void publisherReady(UserSession participant) {
+        if (!participant.canPublish()) {
+            return;
+        }
+        // Called back from KMS; queued rather than waited for
+        mailbox.submit(() -> {
+            if (participants.get(participant.getName()) != participant) {
+                return null;
+            }
+            if (mode == RoomMode.BROADCAST) {
+                presentIfStillHere(participant);
+            }
+            fire(listener -> listener.publisherReady(this, participant));
+            return null;
+        });
+    }
+
+    private void presentIfStillHere(UserSession participant) {
+        if (participants.get(participant.getName()) != participant) {
+            return;
+        }
+        final Hub dispatcher = hubIfActive();
+        final CompletableFuture<HubPort> port = participant.getHubPort();
+        if (dispatcher instanceof DispatcherOneToMany oneToMany && port != null) {
+            presenter = participant.getName();
+            log.info("ROOM {}: {} is now presenting", name, participant.getName());
+            port.thenAccept(p -> oneToMany.setSource(p, KurentoFutures.logging(log, "Presenter switch in " + name)));
+        }
+    }
+
+    private void presenterLeft(String leaving) {
+        if (mode != RoomMode.BROADCAST || !leaving.equals(presenter)) {
+            return;
+        }
+        presenter = null;
+        for (final UserSession participant : participants.values()) {
+            if (participant.isPublishing() && participant.canPublish()) {
+                presentIfStillHere(participant);
+                return;
+            }
+        }
+        if (hubIfActive() instanceof DispatcherOneToMany oneToMany) {
+            oneToMany.removeSource(KurentoFutures.logging(log, "Presenter removal in " + name));
+        }
+    }
+
+    /**
+     * Moves the room from MESH to COMPOSITE: a mixer is created, every participant gets a port on it,
+     * mesh subscriptions are torn down and clients are told to subscribe to {@link #MIXED_STREAM}.
+     * The switch is one way; the room stays COMPOSITE until it closes.
+     */
+    void switchToComposite() {
+        try {
+            mailbox.call(() -> {
+                meshToComposite();
+                return null;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // meshToComposite does no I/O of its own
+        }
+    }
+
+    private void meshToComposite() {
+        if (mode != RoomMode.MESH) {
+            return;
+        }
+        mode = RoomMode.COMPOSITE;
+        final Hub mixer = hubIfActive();
+        for (final UserSession participant : participants.values()) {
+            participant.joinHub(mixer);
+            for (final String other : participants.keySet()) {
+                if (!other.equals(participant.getName())) {
+                    participant.cancelVideoFrom(other);
+                }
+            }
+        }
+
+        final ObjectNode modeMsg = mapper.createObjectNode();
+        modeMsg.put("id", "roomMode");
+        modeMsg.put("mode", RoomMode.COMPOSITE.name());
+        modeMsg.put("stream", MIXED_STREAM);
+        broadcast(modeMsg, null);
+    }
+
     public void leave(UserSession user) throws IOException {
-        log.debug("PARTICIPANT {}: Leaving room {}", user.getName(), this.name);
-        this.removeParticipant(user.getName());
-        user.close();
+        mailbox.call(() -> {
+            log.debug("PARTICIPANT {}: Leaving room {}", user.getName(), this.name);
+            this.removeParticipant(user.getName());
+            user.close();
+            fire(listener -> listener.participantLeft(this, user));
+            return null;
+        });
+    }
+
+    private void fire(Consumer<RoomListener> event) {
+        for (final RoomListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("ROOM {}: listener {} failed", this.name, listener.getClass().getSimpleName(), e);
+            }
+        }
     }
 
-    private Collection<UserSession> getParticipants() {
+    Collection<UserSession> getParticipants() {
         return participants.values();
     }
     
@@ -63,48 +387,164 @@ public class Room implements Closeable {
         return participants.keySet();
     }
 
+    /**
+     * Unlike {@code getParticipantNames().isEmpty()}, waits for the membership changes already queued.
+     */
+    public boolean isEmpty() {
+        try {
+            return mailbox.call(participants::isEmpty);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int getPendingCommands() {
+        return mailbox.getPending();
+    }
+
+    RoomMailbox.Stats getMailboxStats() {
+        return mailbox.getStats();
+    }
+
+    /**
+     * Last-N forwarding: video is forwarded to each subscriber only from {@code speakers}; every other
+     * subscription keeps its audio but has its video paused until the sender is among them again.
+     * Clients get an {@code activeSpeakers} message whenever the list changes.
+     *
+     * @param speakers the currently most active publishers, most active first
+     * @return completes once applied in the room's mailbox
+     */
+    CompletableFuture<Void> applyActiveSpeakers(List<String> speakers) {
+        return mailbox.submit(() -> {
+            forwardFrom(speakers);
+            return null;
+        });
+    }
+
+    private void forwardFrom(List<String> speakers) {
+        // Always walked: subscriptions made since the last round start out forwarding
+        final Set<String> active = new HashSet<>(speakers);
+        for (final UserSession subscriber : participants.values()) {
+            for (final UserSession sender : participants.values()) {
+                if (sender != subscriber) {
+                    subscriber.forwardVideoFrom(sender, active.contains(sender.getName()));
+                }
+            }
+        }
+        if (speakers.equals(activeSpeakers)) {
+            return;
+        }
+        activeSpeakers = List.copyOf(speakers);
+
+        final ObjectNode speakersMsg = mapper.createObjectNode();
+        speakersMsg.put("id", "activeSpeakers");
+        speakersMsg.set("speakers", mapper.valueToTree(activeSpeakers));
+        broadcast(speakersMsg, null);
+    }
+
+    public List<String> getActiveSpeakers() {
+        return activeSpeakers;
+    }
+
+    public void purgeExpiredCandidates() {
+        for (final UserSession participant : participants.values()) {
+            participant.purgeExpiredCandidates();
+        }
+    }
+
+    public int getEndpointCount() {
+        int endpoints = 0;
+        for (final UserSession participant : participants.values()) {
+            endpoints += participant.getEndpointCount();
+        }
+        return endpoints;
+    }
+
     private void joinRoom(UserSession newParticipant) throws IOException {
         final ObjectNode newParticipantMsg = mapper.createObjectNode();
         newParticipantMsg.put("id", "newParticipantArrived");
         newParticipantMsg.put("name", newParticipant.getName());
         newParticipantMsg.put("role", newParticipant.getRole());
 
-        final List<String> participantsList = new ArrayList<>(participants.values().size());
         log.debug("ROOM {}: notifying other participants of new participant {}", name, newParticipant.getName());
 
-        for (final UserSession participant : participants.values()) {
-            try {
-                participant.sendMessage(newParticipantMsg);
-            } catch (final IOException e) {
-                log.debug("ROOM {}: participant {} could not be notified", name, participant.getName(), e);
-            }
-            participantsList.add(participant.getName());
+        final BroadcastResult result = broadcast(newParticipantMsg, newParticipant.getName());
+        if (!result.failed().isEmpty()) {
+            log.debug("ROOM {}: participants {} could not be notified", name, result.failed());
         }
     }
 
     private void removeParticipant(String name) throws IOException {
         participants.remove(name);
+        presenterLeft(name);
 
         log.debug("ROOM {}: notifying all users that {} is leaving the room", this.name, name);
 
-        final List<String> unnotifiedParticipants = new ArrayList<>();
+        for (final UserSession participant : participants.values()) {
+            participant.cancelVideoFrom(name);
+        }
+
         final ObjectNode participantLeftJson = mapper.createObjectNode();
         participantLeftJson.put("id", "participantLeft");
         participantLeftJson.put("name", name);
 
+        final BroadcastResult result = broadcast(participantLeftJson, null);
+        if (!result.failed().isEmpty()) {
+            log.debug("ROOM {}: The users {} could not be notified that {} left the room", this.name,
+                    result.failed(), name);
+        }
+    }
+
+    /**
+     * Sends {@code message} to every participant except {@code excludedName} (may be null).
+     * <p>
+     * The message is serialized once per wire format in use into immutable frames shared by all
+     * recipients. Large rooms are split into chunks that are enqueued concurrently on virtual threads.
+     * Only enqueues, so it may be called from any thread; from the mailbox it reaches exactly the
+     * membership the running command sees.
+     */
+    public BroadcastResult broadcast(ObjectNode message, String excludedName) {
+        final EnumMap<SignalFormat, WebSocketMessage<?>> frame = new EnumMap<>(SignalFormat.class);
+        final List<UserSession> recipients = new ArrayList<>(participants.size());
         for (final UserSession participant : participants.values()) {
-            try {
-                participant.cancelVideoFrom(name);
-                participant.sendMessage(participantLeftJson);
-            } catch (final IOException e) {
-                unnotifiedParticipants.add(participant.getName());
+            if (!participant.getName().equals(excludedName)) {
+                recipients.add(participant);
+                frame.computeIfAbsent(participant.getFormat(), format -> format.encode(message));
             }
         }
 
-        if (!unnotifiedParticipants.isEmpty()) {
-            log.debug("ROOM {}: The users {} could not be notified that {} left the room", this.name,
-                    unnotifiedParticipants, name);
+        final int chunkSize = Math.max(1, properties.getBroadcastParallelThreshold());
+        if (recipients.size() <= chunkSize) {
+            return deliver(frame, recipients);
+        }
+
+        final List<CompletableFuture<BroadcastResult>> chunks = new ArrayList<>();
+        for (int from = 0; from < recipients.size(); from += chunkSize) {
+            final List<UserSession> chunk = recipients.subList(from, Math.min(from + chunkSize, recipients.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> deliver(frame, chunk), broadcastExecutor));
+        }
+
+        int delivered = 0;
+        final List<String> failed = new ArrayList<>();
+        for (final CompletableFuture<BroadcastResult> chunk : chunks) {
+            final BroadcastResult partial = chunk.join();
+            delivered += partial.delivered();
+            failed.addAll(partial.failed());
+        }
+        return new BroadcastResult(delivered, failed);
+    }
+
+    private BroadcastResult deliver(EnumMap<SignalFormat, WebSocketMessage<?>> frame, List<UserSession> recipients) {
+        int delivered = 0;
+        List<String> failed = new ArrayList<>();
+        for (final UserSession participant : recipients) {
+            if (participant.sendMessage(frame.get(participant.getFormat()))) {
+                delivered++;
+            } else {
+                failed.add(participant.getName());
+            }
         }
+        return new BroadcastResult(delivered, failed);
     }
 
     public void sendParticipantNames(UserSession user) throws IOException {
@@ -113,16 +553,28 @@ public class Room implements Closeable {
         
         // Construct array of objects {name, role} instead of just strings
         List<ObjectNode> participantList = new ArrayList<>();
-        for (UserSession p : getParticipants()) {
-             if (!p.getName().equals(user.getName())) { // Exclude self from "existing" list
-                 ObjectNode pNode = mapper.createObjectNode();
-                 pNode.put("name", p.getName());
-                 pNode.put("role", p.getRole());
-                 participantList.add(pNode);
-             }
+        if (mode != RoomMode.MESH) {
+            // A single stream to subscribe to: everyone mixed, or the presenter
+            ObjectNode stream = mapper.createObjectNode();
+            stream.put("name", getHubStream());
+            stream.put("role", mode == RoomMode.COMPOSITE ? "mixed" : "presenter");
+            participantList.add(stream);
+        } else {
+            for (UserSession p : getParticipants()) {
+                 if (!p.getName().equals(user.getName())) { // Exclude self from "existing" list
+                     ObjectNode pNode = mapper.createObjectNode();
+                     pNode.put("name", p.getName());
+                     pNode.put("role", p.getRole());
+                     participantList.add(pNode);
+                 }
+            }
         }
         
         existingParticipantsMsg.set("data", mapper.valueToTree(participantList));
+        existingParticipantsMsg.put("mode", mode.name());
+        existingParticipantsMsg.put("publish", user.canPublish());
+        // Tells the client whether it may batch its own candidates into "onIceCandidates"
+        existingParticipantsMsg.put("iceBatching", user.getOutbound().isIceBatching());
         log.debug("PARTICIPANT {}: sending a list of {} participants", user.getName(),
                 participantList.size());
         user.sendMessage(existingParticipantsMsg);
@@ -130,15 +582,15 @@ public class Room implements Closeable {
 
     @Override
     public void close() {
-        for (final UserSession user : participants.values()) {
-            try {
-                user.close();
-            } catch (IOException e) {
-                log.debug("ROOM {}: Could not close participant {}", this.name, user.getName(), e);
-            }
+        try {
+            mailbox.call(() -> {
+                closeParticipants();
+                return null;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // per-participant failures are logged and skipped
         }
-        participants.clear();
-        pipeline.release(new Continuation<Void>() {
+        pipeline.release(KurentoFutures.timed("release", new Continuation<Void>() {
             @Override
             public void onSuccess(Void result) throws Exception {
                 log.trace("ROOM {}: Released Pipeline", Room.this.name);
@@ -148,11 +600,49 @@ public class Room implements Closeable {
             public void onError(Throwable cause) throws Exception {
                 log.warn("ROOM {}: Could not release Pipeline", Room.this.name);
             }
-        });
+        }));
         log.debug("Room {} closed", this.name);
     }
 
+    /**
+     * Releases the hub, and the ports of anyone still attached to it, so the pipeline can be handed to
+     * another room. Only for a room that has been retired.
+     */
+    void releaseHub() {
+        try {
+            mailbox.call(() -> {
+                closeParticipants();
+                if (hub != null) {
+                    hub.release(KurentoFutures.timed("release",
+                            KurentoFutures.logging(log, "Release of hub of " + name)));
+                    hub = null;
+                    presenter = null;
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // per-participant failures are logged and skipped
+        }
+    }
+
+    private void closeParticipants() {
+        for (final UserSession user : participants.values()) {
+            try {
+                user.close();
+            } catch (IOException e) {
+                log.debug("ROOM {}: Could not close participant {}", this.name, user.getName(), e);
+            }
+        }
+        participants.clear();
+    }
+
     public UserSession getParticipant(String name) {
         return participants.get(name);
     }
+
+    /**
+     * Outcome of a {@link #broadcast}: how many recipients accepted the frame and which did not.
+     */
+    public record BroadcastResult(int delivered, List<String> failed) {
+    }
 }
@@ -0,0 +1,26 @@
+package com.co2plant.rtc.webrtc;
+
+/**
+ * Callbacks for room lifecycle and membership changes. Spring beans implementing this are picked up by
+ * {@link RoomManager}. Implementations are called on the signaling path and must not block.
+ */
+public interface RoomListener {
+
+    default void roomCreated(Room room) {
+    }
+
+    default void participantJoined(Room room, UserSession participant) {
+    }
+
+    default void participantLeft(Room room, UserSession participant) {
+    }
+
+    /**
+     * The participant's outgoing media is negotiated, so others can now receive it.
+     */
+    default void publisherReady(Room room, UserSession participant) {
+    }
+
+    default void roomClosed(Room room) {
+    }
+}
@@ -0,0 +1,194 @@
+package com.co2plant.rtc.webrtc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single-threaded mailbox that owns the membership and broadcast state of one {@link Room}.
+ * <p>
+ * Commands may be submitted from any thread and run one at a time, in submission order, on a virtual
+ * thread that is started when the first one arrives and exits once the mailbox is empty, so a quiet
+ * room holds no thread. Everything queued when the thread comes around is taken as one tick: the
+ * commands run back to back, then the room's end-of-tick work, and only then are their results
+ * published. A command that submits another from the mailbox thread runs it inline.
+ */
+class RoomMailbox {
+
+    /**
+     * A room command. It runs on the mailbox thread and may do blocking KMS calls.
+     */
+    @FunctionalInterface
+    interface Command<T> {
+        T run() throws IOException;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(RoomMailbox.class);
+
+    private final String roomName;
+    private final Runnable endOfTick;
+    private final ArrayDeque<Task<?>> tasks = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean running; // guarded by lock
+    private volatile Thread owner;
+
+    // Metrics
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder commands = new LongAdder();
+    private final AtomicLong maxBatch = new AtomicLong();
+
+    /**
+     * @param endOfTick runs on the mailbox thread after each tick's commands, e.g. to act once on the
+     *                  membership a burst of joins has left behind
+     */
+    RoomMailbox(String roomName, Runnable endOfTick) {
+        this.roomName = roomName;
+        this.endOfTick = endOfTick;
+    }
+
+    /**
+     * Queues {@code command}, or runs it at once when called from the mailbox thread.
+     */
+    <T> CompletableFuture<T> submit(Command<T> command) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        if (inMailbox()) {
+            complete(new Task<>(command, result), run(command));
+            return result;
+        }
+        lock.lock();
+        try {
+            tasks.addLast(new Task<>(command, result));
+            if (!running) {
+                running = true;
+                Thread.ofVirtual().name("room-" + roomName).start(this::drain);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Runs {@code command} in the mailbox and waits for it. Its exception, if any, is rethrown as is.
+     */
+    <T> T call(Command<T> command) throws IOException {
+        if (inMailbox()) {
+            return command.run();
+        }
+        try {
+            return submit(command).join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    boolean inMailbox() {
+        return Thread.currentThread() == owner;
+    }
+
+    int getPending() {
+        lock.lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Stats getStats() {
+        return new Stats(ticks.sum(), commands.sum(), maxBatch.get());
+    }
+
+    private void drain() {
+        owner = Thread.currentThread();
+        while (true) {
+            final List<Task<?>> batch;
+            lock.lock();
+            try {
+                if (tasks.isEmpty()) {
+                    // Cleared under the lock, before a successor thread can be started
+                    owner = null;
+                    running = false;
+                    return;
+                }
+                batch = new ArrayList<>(tasks);
+                tasks.clear();
+            } finally {
+                lock.unlock();
+            }
+            tick(batch);
+        }
+    }
+
+    private void tick(List<Task<?>> batch) {
+        final List<Object> outcomes = new ArrayList<>(batch.size());
+        for (final Task<?> task : batch) {
+            outcomes.add(run(task.command()));
+        }
+        try {
+            endOfTick.run();
+        } catch (RuntimeException e) {
+            log.warn("ROOM {}: end of tick failed", roomName, e);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), outcomes.get(i));
+        }
+        ticks.increment();
+        commands.add(batch.size());
+        maxBatch.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    // The command's result, or the Throwable it failed with
+    private Object run(Command<?> command) {
+        try {
+            return command.run();
+        } catch (IOException | RuntimeException e) {
+            return new Failure(e);
+        } catch (Error e) {
+            log.error("ROOM {}: command failed", roomName, e);
+            return new Failure(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void complete(Task<T> task, Object outcome) {
+        if (outcome instanceof Failure failure) {
+            task.result().completeExceptionally(failure.cause());
+        } else {
+            task.result().complete((T) outcome);
+        }
+    }
+
+    private record Task<T>(Command<T> command, CompletableFuture<T> result) {
+    }
+
+    private record Failure(Throwable cause) {
+    }
+
+    /**
+     * @param ticks    batches run so far
+     * @param commands commands run so far, excluding those run inline
+     * @param maxBatch most commands taken in a single tick
+     */
+    record Stats(long ticks, long commands, long maxBatch) {
+    }
+}
@@ -1,45 +1,187 @@
 package com.co2plant.rtc.webrtc;
 
-import org.kurento.client.KurentoClient;
-import org.kurento.client.MediaPipeline;
+import com.co2plant.rtc.config.SignalingProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Owns the room registry and the room lifecycle.
+ * <p>
+ * Rooms are reference counted: every participant holds one reference from {@link #acquireRoom} until
+ * {@link #releaseRoom}. A room whose count drops to zero is not torn down inline; it lingers for
+ * {@code rtc.room.linger} so a quick rejoin reuses the same pipeline, and is then reaped by the
+ * scheduled sweeper.
+ * <p>
+ * The registry maps each name to a future of its room. The caller that puts the future in creates the
+ * pipeline afterwards, outside any map lock, so a slow KMS only holds up joiners of that same room.
+ */
 @Component
 public class RoomManager {
 
     private final Logger log = LoggerFactory.getLogger(RoomManager.class);
 
-    private final KurentoClient kurento;
-    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final KmsCluster kms;
+    private final SignalingProperties properties;
+    private final List<RoomListener> listeners;
+    private final ConcurrentMap<String, CompletableFuture<Room>> rooms = new ConcurrentHashMap<>();
+
+    public RoomManager(KmsCluster kms, SignalingProperties properties) {
+        this(kms, properties, List.of());
+    }
 
     @Autowired
-    public RoomManager(KurentoClient kurento) {
-        this.kurento = kurento;
+    public RoomManager(KmsCluster kms, SignalingProperties properties, ObjectProvider<RoomListener> listeners) {
+        this(kms, properties, listeners.orderedStream().toList());
+    }
+
+    RoomManager(KmsCluster kms, SignalingProperties properties, List<RoomListener> listeners) {
+        this.kms = kms;
+        this.properties = properties;
+        this.listeners = listeners;
     }
 
-    public Room getRoom(String roomName) {
-        log.debug("Searching for room {}", roomName);
-        Room room = rooms.get(roomName);
+    public Room acquireRoom(String roomName) {
+        return acquireRoom(roomName, null);
+    }
+
+    /**
+     * Returns the room with that name, creating it if needed, with one reference taken for the caller.
+     * Concurrent callers for the same name always get the same room and only one pipeline is created.
+     *
+     * @param mode mode of the room if this call creates it, null for the configured default
+     */
+    public Room acquireRoom(String roomName, RoomMode mode) {
+        while (true) {
+            CompletableFuture<Room> entry = rooms.get(roomName);
+            if (entry == null) {
+                final CompletableFuture<Room> creating = new CompletableFuture<>();
+                entry = rooms.putIfAbsent(roomName, creating);
+                if (entry == null) {
+                    // This caller creates the room; everyone else for the name waits on the future
+                    entry = creating;
+                    try {
+                        creating.complete(createRoom(roomName, mode));
+                    } catch (RuntimeException | Error e) {
+                        // Removed first, so waiters woken by the failure find the name free and try again
+                        rooms.remove(roomName, creating);
+                        creating.completeExceptionally(e);
+                        throw e;
+                    }
+                }
+            }
+            final Room room;
+            try {
+                room = entry.join();
+            } catch (CompletionException e) {
+                continue; // Its creator failed and has already reported it
+            }
+            if (room.acquire()) {
+                log.debug("Room {} acquired, {} reference(s)", roomName, room.getReferenceCount());
+                return room;
+            }
+            // Lost the race against the sweeper; drop the retired instance and try again
+            rooms.remove(roomName, entry);
+        }
+    }
 
-        if (room == null) {
-            log.debug("Room {} not existent. Creating it!", roomName);
-            MediaPipeline pipeline = kurento.createMediaPipeline();
-            room = new Room(roomName, pipeline);
-            rooms.put(roomName, room);
+    private Room createRoom(String roomName, RoomMode mode) {
+        log.debug("Room {} not existent. Creating it!", roomName);
+        KmsCluster.Placement placement = kms.createPipeline(roomName);
+        Room room = new Room(roomName, placement.pipeline(), placement.warmEndpoints(), listeners, properties,
+                mode != null ? mode : properties.getDefaultRoomMode());
+        kms.register(placement.node(), room);
+        // The pipeline and placement exist by now; a failing listener must not strand them
+        for (final RoomListener listener : listeners) {
+            try {
+                listener.roomCreated(room);
+            } catch (RuntimeException e) {
+                log.warn("Room {}: listener {} failed", roomName, listener.getClass().getSimpleName(), e);
+            }
         }
-        log.debug("Room {} found!", roomName);
         return room;
     }
 
+    /**
+     * @return the live room with that name, or null. Does not take a reference.
+     */
+    public Room findRoom(String roomName) {
+        return ready(rooms.get(roomName));
+    }
+
+    /**
+     * @return the room, or null while it is still being created or if creating it failed
+     */
+    private static Room ready(CompletableFuture<Room> entry) {
+        return entry != null && entry.isDone() && !entry.isCompletedExceptionally() ? entry.join() : null;
+    }
+
+    public void releaseRoom(Room room) {
+        room.release();
+        log.debug("Room {} released, {} reference(s)", room.getName(), room.getReferenceCount());
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.room.sweep-interval:5000}")
+    public void reapIdleRooms() {
+        final long lingerNanos = properties.getRoomLinger().toNanos();
+        final long now = System.nanoTime();
+        for (final CompletableFuture<Room> entry : rooms.values()) {
+            final Room room = ready(entry);
+            if (room == null) {
+                continue;
+            }
+            // Candidates for subscriptions that never happened
+            room.purgeExpiredCandidates();
+            if (room.retireIfIdle(lingerNanos, now)) {
+                rooms.remove(room.getName(), entry);
+                dispose(room);
+                log.info("Room {} idle for {}, removed", room.getName(), properties.getRoomLinger());
+            }
+        }
+    }
+
+    /**
+     * Closes a room immediately regardless of references.
+     */
     public void removeRoom(Room room) {
-        this.rooms.remove(room.getName());
-        room.close();
+        room.retire();
+        this.rooms.computeIfPresent(room.getName(), (name, entry) -> ready(entry) == room ? null : entry);
+        dispose(room);
         log.info("Room {} removed and closed", room.getName());
     }
+
+    private void dispose(Room room) {
+        for (final RoomListener listener : listeners) {
+            try {
+                listener.roomClosed(room);
+            } catch (RuntimeException e) {
+                log.warn("Room {}: listener {} failed", room.getName(), listener.getClass().getSimpleName(), e);
+            }
+        }
+        final KmsNode node = kms.release(room);
+        if (room.isEmpty() && kms.recycle(node, room)) {
+            log.debug("Room {}: pipeline returned to the warm pool", room.getName());
+            return;
+        }
+        room.close();
+    }
+
+    Collection<Room> getRooms() {
+        return rooms.values().stream().map(RoomManager::ready).filter(Objects::nonNull).toList();
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
 }
@@ -0,0 +1,19 @@
+package com.co2plant.rtc.webrtc;
+
+/**
+ * How media is routed between the participants of a {@link Room}.
+ */
+public enum RoomMode {
+    /** Every participant subscribes to every publisher: N publishers cost N² endpoints on KMS */
+    MESH,
+    /**
+     * Every publisher feeds a {@code Composite} mixer and every participant receives the single mixed
+     * stream: one send and one receive endpoint per participant, at the cost of decoding and encoding on KMS
+     */
+    COMPOSITE,
+    /**
+     * Webinar: only managers publish and one of them at a time is forwarded to everyone through a
+     * {@code DispatcherOneToMany}; viewers are receive-only and hold a single endpoint each
+     */
+    BROADCAST
+}
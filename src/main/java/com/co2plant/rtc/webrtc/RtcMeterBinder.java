@@ -0,0 +1,107 @@
+package com.co2plant.rtc.webrtc;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges for the room registry, the participants' outbound queues and the media servers. They are
+ * computed on scrape, not on the signaling path. The outbound send and queueing timers are recorded by
+ * {@link OutboundQueue} itself through {@link RtcMeters}.
+ */
+@Component
+public class RtcMeterBinder implements MeterBinder {
+
+    private final RoomManager roomManager;
+    private final KmsCluster kms;
+
+    public RtcMeterBinder(RoomManager roomManager, KmsCluster kms) {
+        this.roomManager = roomManager;
+        this.kms = kms;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rtc.rooms", roomManager, RoomManager::getRoomCount)
+                .description("Live rooms, including lingering empty ones")
+                .register(registry);
+        Gauge.builder("rtc.participants", roomManager, RtcMeterBinder::participants)
+                .description("Participants across all rooms")
+                .register(registry);
+        Gauge.builder("rtc.rooms.pending", roomManager, RtcMeterBinder::pendingCommands)
+                .description("Room commands waiting in the rooms' mailboxes")
+                .register(registry);
+        Gauge.builder("rtc.signaling.outbound.depth", roomManager, RtcMeterBinder::outboundDepth)
+                .description("Frames waiting in the participants' outbound queues")
+                .register(registry);
+        Gauge.builder("rtc.signaling.outbound.depth.max", roomManager, RtcMeterBinder::deepestOutbound)
+                .description("Frames waiting in the fullest outbound queue")
+                .register(registry);
+        Gauge.builder("rtc.signaling.outbound.full", roomManager, RtcMeterBinder::fullOutbounds)
+                .description("Outbound queues at capacity, whose new frames are dropped or coalesced")
+                .register(registry);
+        Gauge.builder("rtc.candidates.buffered", CandidateBuffer::getTotalBufferedBytes)
+                .description("Client ICE candidates waiting for their endpoint")
+                .baseUnit("bytes")
+                .register(registry);
+        for (final KmsNode node : kms.getNodes()) {
+            Gauge.builder("rtc.kms.endpoints", node, KmsNode::getEndpointCount)
+                    .description("WebRtcEndpoints in the rooms placed on the media server")
+                    .tag("node", node.getUrl())
+                    .register(registry);
+            Gauge.builder("rtc.kms.pipelines", node, KmsNode::getPipelineCount)
+                    .description("Room pipelines placed on the media server")
+                    .tag("node", node.getUrl())
+                    .register(registry);
+        }
+    }
+
+    private static int participants(RoomManager roomManager) {
+        int participants = 0;
+        for (final Room room : roomManager.getRooms()) {
+            participants += room.getParticipantNames().size();
+        }
+        return participants;
+    }
+
+    private static int outboundDepth(RoomManager roomManager) {
+        int depth = 0;
+        for (final Room room : roomManager.getRooms()) {
+            for (final UserSession participant : room.getParticipants()) {
+                depth += participant.getOutbound().getDepth();
+            }
+        }
+        return depth;
+    }
+
+    private static int deepestOutbound(RoomManager roomManager) {
+        int deepest = 0;
+        for (final Room room : roomManager.getRooms()) {
+            for (final UserSession participant : room.getParticipants()) {
+                deepest = Math.max(deepest, participant.getOutbound().getDepth());
+            }
+        }
+        return deepest;
+    }
+
+    private static int fullOutbounds(RoomManager roomManager) {
+        int full = 0;
+        for (final Room room : roomManager.getRooms()) {
+            for (final UserSession participant : room.getParticipants()) {
+                if (participant.getOutbound().isFull()) {
+                    full++;
+                }
+            }
+        }
+        return full;
+    }
+
+    private static int pendingCommands(RoomManager roomManager) {
+        int pending = 0;
+        for (final Room room : roomManager.getRooms()) {
+            pending += room.getPendingCommands();
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,72 @@
+package com.co2plant.rtc.webrtc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters recorded from the media classes, which are not Spring beans.
+ * <p>
+ * They live in Micrometer's global registry, to which Spring Boot adds its own registries, so they
+ * show up on {@code /actuator/prometheus}. Meters are looked up once and cached, leaving a map read and
+ * an atomic update on the hot path.
+ */
+final class RtcMeters {
+
+    private static final ConcurrentMap<String, Timer> RPC_SUCCESS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Timer> RPC_ERROR = new ConcurrentHashMap<>();
+
+    static final Counter SEND_FAILURES = Counter.builder("rtc.signaling.outbound.failures")
+            .description("Frames that could not be written to a WebSocket")
+            .register(Metrics.globalRegistry);
+
+    static final Counter OUTBOUND_DROPPED = Counter.builder("rtc.signaling.outbound.dropped")
+            .description("Frames an outbound queue refused or discarded because it was full or its socket closed")
+            .register(Metrics.globalRegistry);
+
+    static final Counter OUTBOUND_COALESCED = Counter.builder("rtc.signaling.outbound.coalesced")
+            .description("Queued ICE frames merged into others because an outbound queue was full")
+            .register(Metrics.globalRegistry);
+
+    static final Timer OUTBOUND_SEND = Timer.builder("rtc.signaling.outbound.send")
+            .description("Time to write one frame to a WebSocket")
+            .publishPercentileHistogram()
+            .maximumExpectedValue(Duration.ofSeconds(5))
+            .register(Metrics.globalRegistry);
+
+    static final Timer OUTBOUND_QUEUED = Timer.builder("rtc.signaling.outbound.queued")
+            .description("Time a frame waited in its session's outbound queue before being written")
+            .publishPercentileHistogram()
+            .maximumExpectedValue(Duration.ofSeconds(5))
+            .register(Metrics.globalRegistry);
+
+    private RtcMeters() {
+    }
+
+    /**
+     * Records one Kurento round trip that started at {@code startNanos}.
+     */
+    static void recordRpc(String operation, long startNanos, boolean success) {
+        final ConcurrentMap<String, Timer> timers = success ? RPC_SUCCESS : RPC_ERROR;
+        Timer timer = timers.get(operation);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(operation, op -> rpcTimer(op, success ? "success" : "error"));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer rpcTimer(String operation, String outcome) {
+        return Timer.builder("rtc.kurento.rpc")
+                .description("Kurento JSON-RPC round trips")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(Metrics.globalRegistry);
+    }
+}
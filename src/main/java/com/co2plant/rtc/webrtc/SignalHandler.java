@@ -1,12 +1,21 @@
 package com.co2plant.rtc.webrtc;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.co2plant.rtc.cluster.ClusterRelay;
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.signaling.SignalDecoder;
+import com.co2plant.rtc.signaling.SignalFormat;
+import com.co2plant.rtc.signaling.SignalMessage;
+import com.co2plant.rtc.signaling.SignalingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.util.concurrent.ConcurrentHashMap;
 import org.kurento.client.IceCandidate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -15,121 +24,388 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Component
 public class SignalHandler extends TextWebSocketHandler {
 
     private final Logger log = LoggerFactory.getLogger(SignalHandler.class);
     private final ObjectMapper mapper = new ObjectMapper();
-    
+    private final SignalDecoder decoder = SignalFormat.JSON.decoder();
+    private final Map<String, MessageHandler> handlers = dispatchTable();
+
     private final RoomManager roomManager;
     private final UserRegistry registry = new UserRegistry(); // Simple registry to map SessionID -> UserSession
+    private final ClusterRelay cluster; // null unless rtc.cluster.enabled
+    private final AdmissionControl admission;
+
+    // Messages of each session run in order on that session's own virtual thread
+    private final Map<String, InboundQueue> inbound = new ConcurrentHashMap<>();
+    private final int inboundCapacity;
+
+    // Handling time per message id, plus one for frames rejected before dispatch
+    private final Map<String, Timer> messageTimers;
+    private final Timer rejectedTimer;
+    private final Timer inboundDelay;
+    private final Counter inboundRejected;
 
     @Autowired
-    public SignalHandler(RoomManager roomManager) {
+    public SignalHandler(RoomManager roomManager, ObjectProvider<ClusterRelay> cluster, MeterRegistry meters,
+                         SignalingProperties properties, AdmissionControl admission) {
         this.roomManager = roomManager;
+        this.cluster = cluster.getIfAvailable();
+        this.admission = admission;
+        this.inboundCapacity = properties.getInboundCapacity();
+        this.inboundDelay = Timer.builder("rtc.signaling.inbound.delay")
+                .description("Time a message waited behind earlier ones from the same session")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(meters);
+        this.inboundRejected = Counter.builder("rtc.signaling.inbound.rejected")
+                .description("Messages refused as busy because their session's queue was full")
+                .register(meters);
+        final Map<String, Timer> timers = new HashMap<>();
+        for (final String id : handlers.keySet()) {
+            timers.put(id, messageTimer(meters, id));
+        }
+        this.messageTimers = Map.copyOf(timers);
+        this.rejectedTimer = messageTimer(meters, "rejected");
+        if (this.cluster != null) {
+            this.cluster.bind(this);
+        }
     }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        final String payload = message.getPayload();
+        receive(session, () -> decoder.decode(payload), () -> payload);
+    }
+
+    private static Timer messageTimer(MeterRegistry meters, String type) {
+        return Timer.builder("rtc.signaling.message")
+                .description("Time from frame arrival until its handler returns, queueing included; "
+                        + "KMS negotiation continues async")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(meters);
+    }
+
+    /**
+     * Common entry point for every wire format.
+     *
+     * @param decode       decodes the frame; may throw {@link SignalingException}
+     * @param relayPayload the frame as JSON text, only computed if it has to be relayed to another node
+     */
+    void receive(WebSocketSession session, Supplier<SignalMessage> decode, Supplier<String> relayPayload) {
+        final long arrived = System.nanoTime();
+        // Decoding stays on the I/O thread: the container may reuse the frame's buffer once we return
+        final SignalMessage signal;
+        try {
+            signal = decode.get();
+        } catch (SignalingException e) {
+            log.debug("Rejected message: {}", e.getMessage());
+            replyError(session, e);
+            rejectedTimer.record(System.nanoTime() - arrived, TimeUnit.NANOSECONDS);
+            return;
+        }
+        final String relay = cluster != null ? relayPayload.get() : null;
+
+        final InboundQueue queue = inbound.computeIfAbsent(session.getId(),
+                id -> new InboundQueue(id, inboundCapacity, inboundDelay));
+        if (!queue.offer(() -> handle(session, signal, relay, arrived))) {
+            inboundRejected.increment();
+            replyError(session, new SignalingException(SignalingException.BUSY, signal.id(),
+                    "Too many messages in flight, " + signal.id() + " was not handled"), signal);
+        }
+    }
+
+    /**
+     * Handles a decoded message on the calling thread.
+     *
+     * @param relay   the frame as JSON text if this node is clustered, else null
+     * @param arrived {@link System#nanoTime()} when the frame came in
+     */
+    void handle(WebSocketSession session, SignalMessage signal, String relay, long arrived) {
+        try {
+            dispatch(session, signal, relay);
+        } finally {
+            messageTimers.get(signal.id()).record(System.nanoTime() - arrived, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void dispatch(WebSocketSession session, SignalMessage signal, String relayPayload) {
+        log.debug("Message received: {}", signal.id());
+
         try {
-            JsonNode jsonMessage = mapper.readTree(message.getPayload());
-            String messageId = jsonMessage.get("id").asText();
-
-            log.debug("Message received: {}", messageId);
-
-            switch (messageId) {
-                case "joinRoom":
-                    joinRoom(jsonMessage, session);
-                    break;
-                case "receiveVideoFrom":
-                    String senderName = jsonMessage.get("sender").asText();
-                    String sdpOffer = jsonMessage.get("sdpOffer").asText();
-                    receiveVideoFrom(session, senderName, sdpOffer);
-                    break;
-                case "leaveRoom":
-                    leaveRoom(session);
-                    break;
-                case "onIceCandidate":
-                    JsonNode candidate = jsonMessage.get("candidate");
-                    onIceCandidate(session, candidate);
-                    break;
-                default:
-                    // Loopback "start" message from previous test might still arrive if cached, ignore or handle error
-                    break;
+            // Rooms owned by another node are handled there; this node only relays the client's frames
+            if (cluster != null) {
+                if (signal instanceof SignalMessage.JoinRoom join) {
+                    if (cluster.routeIfRemote(session, join.room(), relayPayload)) {
+                        return;
+                    }
+                } else if (cluster.isRouted(session) && cluster.forwardIfRouted(session, relayPayload)) {
+                    return;
+                }
             }
-        } catch (Throwable t) {
-            log.error("Exception handling message", t);
+            // The decoder only yields ids that have a handler
+            handlers.get(signal.id()).handle(session, signal);
+        } catch (Exception e) {
+            replyError(session, failure(signal, e), signal);
         }
     }
 
-    private void joinRoom(JsonNode params, WebSocketSession session) throws IOException {
-        String roomName = params.get("room").asText();
-        String name = params.get("name").asText();
-        // Default to "user" if role is missing
-        String role = params.has("role") ? params.get("role").asText() : "user";
+    private SignalingException failure(SignalMessage signal, Exception e) {
+        if (e instanceof SignalingException refused) {
+            return refused;
+        }
+        log.error("Exception handling message {}", signal.id(), e);
+        return new SignalingException(SignalingException.INTERNAL, signal.id(), "Could not handle " + signal.id(), e);
+    }
+
+    private Map<String, MessageHandler> dispatchTable() {
+        return Map.of(
+                SignalMessage.JoinRoom.ID, (s, m) -> joinRoom((SignalMessage.JoinRoom) m, s),
+                SignalMessage.ReceiveVideoFrom.ID, (s, m) -> receiveVideoFrom(s, (SignalMessage.ReceiveVideoFrom) m),
+                SignalMessage.LeaveRoom.ID, (s, m) -> leaveRoom(s),
+                SignalMessage.OnIceCandidate.ID, (s, m) -> {
+                    final SignalMessage.OnIceCandidate ice = (SignalMessage.OnIceCandidate) m;
+                    onIceCandidate(s, ice, ice.candidate(), ice.name());
+                },
+                SignalMessage.OnIceCandidates.ID, (s, m) -> {
+                    final SignalMessage.OnIceCandidates ice = (SignalMessage.OnIceCandidates) m;
+                    for (SignalMessage.Candidate candidate : ice.candidates()) {
+                        onIceCandidate(s, ice, candidate, ice.name());
+                    }
+                });
+    }
+
+    private void replyError(WebSocketSession session, SignalingException error) {
+        replyError(session, error, null);
+    }
+
+    /**
+     * Tells the client why its message was not handled:
+     * {@code {"id":"error","code":...,"message":...,"requestId":...}}, plus {@code "retryAfter"} in
+     * milliseconds when a busy server can tell, and for a {@code receiveVideoFrom} the {@code "name"} of
+     * the sender it asked for, so the client knows which of its subscriptions to send again.
+     *
+     * @param signal the message that failed, or null if it could not be decoded
+     */
+    private void replyError(WebSocketSession session, SignalingException error, SignalMessage signal) {
+        final ObjectNode reply = mapper.createObjectNode();
+        reply.put("id", "error");
+        reply.put("code", error.getCode());
+        reply.put("message", error.getMessage());
+        if (error.getRequestId() != null) {
+            reply.put("requestId", error.getRequestId());
+        }
+        if (error.getRetryAfter() != null) {
+            reply.put("retryAfter", error.getRetryAfter().toMillis());
+        }
+        if (signal instanceof SignalMessage.ReceiveVideoFrom request) {
+            reply.put("name", request.sender());
+        }
+        // Once a queue writes to the socket, nothing else may: not even replies from the I/O thread
+        final UserSession user = registry.getBySession(session);
+        if (user != null) {
+            user.sendMessage(reply);
+            return;
+        }
+        final OutboundQueue routed = cluster != null ? cluster.getOutbound(session) : null;
+        if (routed != null) {
+            routed.offer(reply);
+            return;
+        }
+        try {
+            synchronized (session) {
+                session.sendMessage(SignalFormat.of(session).encode(reply));
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Could not send error reply to session {}", session.getId(), e);
+        }
+    }
+
+    private void joinRoom(SignalMessage.JoinRoom join, WebSocketSession session) throws IOException {
+        final String roomName = join.room();
+        final String name = join.name();
+        final String role = join.role();
+
+        if (registry.getBySession(session) != null) {
+            throw new SignalingException(SignalingException.INVALID_STATE, join.id(), "Already in a room");
+        }
 
         log.info("PARTICIPANT {}: trying to join room {} as {}", name, roomName, role);
+        // Before anything is built: a refused join leaves no trace on KMS
+        admission.admit(session.getId(), roomName, join.id());
+
+        Room room = roomManager.acquireRoom(roomName, roomMode(join));
+        UserSession user = null;
+        try {
+            user = room.newParticipant(name, role, session, join.iceBatching());
+            // Registered before the join queues anything, so replies from the I/O thread queue behind it
+            registry.register(user);
+            room.join(user);
+        } catch (IOException | RuntimeException e) {
+            roomManager.releaseRoom(room);
+            if (user == null) {
+                throw e;
+            }
+            // The queue may still be flushing what the join sent: reply through it, then let it go
+            replyError(session, failure(join, e), join);
+            registry.removeBySession(session);
+            // Not in the room, so closing the room would not release its endpoint either
+            try {
+                user.close();
+            } catch (IOException | RuntimeException closing) {
+                log.warn("PARTICIPANT {}: could not release after a failed join", name, closing);
+            }
+        }
+    }
 
-        Room room = roomManager.getRoom(roomName);
-        UserSession user = room.join(name, role, session);
-        registry.register(user);
+    private static RoomMode roomMode(SignalMessage.JoinRoom join) {
+        if (join.mode() == null) {
+            return null;
+        }
+        try {
+            return RoomMode.valueOf(join.mode().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new SignalingException(SignalingException.MALFORMED, join.id(),
+                    "Unknown room mode '" + join.mode() + "'");
+        }
     }
 
     private void leaveRoom(WebSocketSession session) throws IOException {
-        UserSession user = registry.getBySession(session);
+        // Removing first makes leave idempotent: an explicit leaveRoom followed by the socket close
+        // only releases the room once
+        UserSession user = registry.removeBySession(session);
         if (user != null) {
-            Room room = roomManager.getRoom(user.getRoomName());
-            room.leave(user);
-            if (room.getParticipantNames().isEmpty()) {
-                roomManager.removeRoom(room);
+            Room room = roomManager.findRoom(user.getRoomName());
+            if (room != null) {
+                room.leave(user);
+                // An empty room lingers and is reaped by RoomManager's sweeper
+                roomManager.releaseRoom(room);
             }
-            registry.removeBySession(session);
         }
     }
 
-    private void receiveVideoFrom(WebSocketSession session, String senderName, String sdpOffer) throws IOException {
+    private void receiveVideoFrom(WebSocketSession session, SignalMessage.ReceiveVideoFrom request) {
+        final String senderName = request.sender();
+        final String sdpOffer = request.sdpOffer();
         UserSession user = registry.getBySession(session);
-        
+        if (user == null) {
+            throw new SignalingException(SignalingException.INVALID_STATE, request.id(), "Not in a room");
+        }
+
+        admission.admit(session.getId(), user.getRoomName(), request.id());
+        Room room = roomManager.findRoom(user.getRoomName());
+        // Negotiation continues on Kurento callbacks; this thread is free as soon as the first RPC is sent
         if (user.getName().equals(senderName)) {
             // User is sending their own video (Publishing)
-            user.receiveFromClient(sdpOffer);
+            if (!user.canPublish()) {
+                throw new SignalingException(SignalingException.INVALID_STATE, request.id(),
+                        "Viewers of a broadcast cannot publish");
+            }
+            user.receiveFromClient(sdpOffer)
+                    .thenRun(() -> {
+                        if (room != null) {
+                            room.publisherReady(user);
+                        }
+                    })
+                    .whenComplete((v, t) -> negotiationFailed(user, request, senderName, t));
         } else {
             // User wants to view someone else's video (Subscribing)
-            UserSession sender = roomManager.getRoom(user.getRoomName()).getParticipant(senderName);
-            if (sender != null) {
-                user.receiveVideoFrom(sender, sdpOffer);
+            if (room != null && room.getMode() != RoomMode.MESH) {
+                // Only the hub stream (mix or presenter) can be subscribed to
+                final String stream = room.getHubStream();
+                if (!stream.equals(senderName)) {
+                    throw new SignalingException(SignalingException.INVALID_STATE, request.id(),
+                            "Room is in " + room.getMode() + " mode, subscribe to " + stream);
+                }
+                user.receiveHubVideo(stream, sdpOffer)
+                        .whenComplete((v, t) -> negotiationFailed(user, request, senderName, t));
+                return;
+            }
+            UserSession sender = room != null ? room.getParticipant(senderName) : null;
+            if (sender == null) {
+                throw new SignalingException(SignalingException.INVALID_STATE, request.id(),
+                        "No participant '" + senderName + "' in the room");
             }
+            user.receiveVideoFrom(sender, sdpOffer)
+                    .whenComplete((v, t) -> negotiationFailed(user, request, senderName, t));
         }
     }
 
-    private void onIceCandidate(WebSocketSession session, JsonNode jsonCandidate) {
+    /**
+     * Completion of a KMS call that outlived its handler: a failure is reported to the client with the
+     * message that started it, like one thrown by the handler itself.
+     *
+     * @param peer the connection concerned, named as in the message
+     */
+    private void negotiationFailed(UserSession user, SignalMessage signal, String peer, Throwable t) {
+        if (t == null) {
+            return;
+        }
+        final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        log.error("USER {}: {} with {} failed", user.getName(), signal.id(), peer, cause);
+        // Nobody left to tell once the user has gone
+        if (registry.getBySession(user.getSession()) == user) {
+            replyError(user.getSession(), new SignalingException(SignalingException.INTERNAL, signal.id(),
+                    "Could not negotiate with " + peer, cause), signal);
+        }
+    }
+
+    private void onIceCandidate(WebSocketSession session, SignalMessage signal, SignalMessage.Candidate candidate,
+                                String name) {
         UserSession user = registry.getBySession(session);
         if (user != null) {
-            JsonNode candidateParam = jsonCandidate.get("candidate");
-            JsonNode sdpMidParam = jsonCandidate.get("sdpMid");
-            JsonNode sdpMLineIndexParam = jsonCandidate.get("sdpMLineIndex");
-            
             // "name" param in the message tells us WHICH connection this candidate belongs to
             // If name == user.getName(), it's for the OUTGOING connection
             // If name != user.getName(), it's for the INCOMING connection from 'name'
-            String endpointName = jsonCandidate.has("name") ? jsonCandidate.get("name").asText() : user.getName();
+            // The client sends it next to the candidate; older clients nested it inside
+            String endpointName = name != null ? name
+                    : candidate.name() != null ? candidate.name() : user.getName();
 
-            // Handle potential nulls
-            String sdpMid = sdpMidParam != null ? sdpMidParam.asText() : null;
-            int sdpMLineIndex = sdpMLineIndexParam != null ? sdpMLineIndexParam.asInt() : 0;
-            String candidateStr = candidateParam != null ? candidateParam.asText() : "";
-
-            IceCandidate cand = new IceCandidate(candidateStr, sdpMid, sdpMLineIndex);
-            user.addCandidate(cand, endpointName);
+            IceCandidate cand = new IceCandidate(candidate.candidate(), candidate.sdpMid(), candidate.sdpMLineIndex());
+            user.addCandidate(cand, endpointName)
+                    .whenComplete((v, t) -> negotiationFailed(user, signal, endpointName, t));
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        leaveRoom(session);
+        final InboundQueue queue = inbound.remove(session.getId());
+        if (queue != null) {
+            // Leave only after whatever the client sent before closing
+            queue.closeWith(() -> connectionClosed(session));
+        } else {
+            connectionClosed(session);
+        }
+    }
+
+    private void connectionClosed(WebSocketSession session) {
+        admission.sessionClosed(session.getId());
+        if (cluster != null && cluster.sessionClosed(session)) {
+            return;
+        }
+        try {
+            leaveRoom(session);
+        } catch (IOException | RuntimeException e) {
+            log.warn("SESSION {}: error leaving the room on close", session.getId(), e);
+        }
     }
     
+    @FunctionalInterface
+    private interface MessageHandler {
+        void handle(WebSocketSession session, SignalMessage message) throws IOException;
+    }
+
     // Simple inner class for Registry (could be separate file)
     static class UserRegistry {
         private final ConcurrentHashMap<String, UserSession> usersBySessionId = new ConcurrentHashMap<>();
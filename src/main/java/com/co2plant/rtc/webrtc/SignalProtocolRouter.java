@@ -0,0 +1,62 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.signaling.SignalFormat;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+/**
+ * The handler registered on {@code /signal}. It advertises the signaling subprotocols for the
+ * {@code Sec-WebSocket-Protocol} handshake and hands each connection to the text or the binary handler
+ * according to the one that was accepted.
+ */
+@Component
+public class SignalProtocolRouter implements WebSocketHandler, SubProtocolCapable {
+
+    private final SignalHandler textHandler;
+    private final BinarySignalHandler binaryHandler;
+
+    public SignalProtocolRouter(SignalHandler textHandler, BinarySignalHandler binaryHandler) {
+        this.textHandler = textHandler;
+        this.binaryHandler = binaryHandler;
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SignalFormat.subprotocols();
+    }
+
+    private WebSocketHandler handlerFor(WebSocketSession session) {
+        return SignalFormat.of(session) == SignalFormat.CBOR ? binaryHandler : textHandler;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        handlerFor(session).afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        handlerFor(session).handleMessage(session, message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        handlerFor(session).handleTransportError(session, exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        handlerFor(session).afterConnectionClosed(session, closeStatus);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+}
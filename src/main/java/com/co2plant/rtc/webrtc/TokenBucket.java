@@ -0,0 +1,84 @@
+package com.co2plant.rtc.webrtc;
+
+/**
+ * Token bucket used by {@link AdmissionControl}. Not thread-safe; the owner serializes access.
+ * <p>
+ * Tokens may be reserved ahead of time, taking the balance below zero, so that callers who agreed to
+ * wait are lined up one refill interval apart instead of all retrying at once.
+ */
+final class TokenBucket {
+
+    /**
+     * @param ratePerSecond tokens added per second; 0 or less means the scope is not limited
+     * @param burst         tokens a quiet bucket accumulates, i.e. how many requests pass at once
+     */
+    record Limit(double ratePerSecond, int burst) {
+
+        boolean unlimited() {
+            return ratePerSecond <= 0;
+        }
+    }
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private Limit limit;
+    private double tokens;
+    private long updatedAt;
+
+    TokenBucket(Limit limit, long now) {
+        this.limit = limit;
+        this.tokens = Math.max(1, limit.burst());
+        this.updatedAt = now;
+    }
+
+    /**
+     * Applies a new limit; tokens already accumulated above the new burst are dropped.
+     */
+    void setLimit(Limit limit, long now) {
+        refill(now);
+        this.limit = limit;
+        this.tokens = Math.min(tokens, Math.max(1, limit.burst()));
+    }
+
+    /**
+     * @return nanoseconds until a token is available, 0 if one is available now
+     */
+    long waitNanos(long now) {
+        if (limit.unlimited()) {
+            return 0;
+        }
+        refill(now);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / limit.ratePerSecond() * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Takes a token, reserving a future one if none is available now.
+     */
+    void take(long now) {
+        if (limit.unlimited()) {
+            return;
+        }
+        refill(now);
+        tokens -= 1;
+    }
+
+    double available(long now) {
+        refill(now);
+        return tokens;
+    }
+
+    boolean isFull(long now) {
+        return limit.unlimited() || available(now) >= Math.max(1, limit.burst());
+    }
+
+    private void refill(long now) {
+        final long elapsed = now - updatedAt;
+        if (elapsed > 0) {
+            updatedAt = now;
+            if (!limit.unlimited()) {
+                tokens = Math.min(Math.max(1, limit.burst()),
+                        tokens + elapsed / NANOS_PER_SECOND * limit.ratePerSecond());
+            }
+        }
+    }
+}
@@ -2,18 +2,22 @@ package com.co2plant.rtc.webrtc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.util.ArrayList;
-import java.util.List;
 import org.kurento.client.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.TextMessage;
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.signaling.SignalFormat;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 public class UserSession implements Closeable {
 
@@ -23,41 +27,71 @@ public class UserSession implements Closeable {
     private final String name;
     private final String role; // "user" or "manager"
     private final WebSocketSession session;
+    private final OutboundQueue outbound;
     private final MediaPipeline pipeline;
     private final String roomName;
 
-    // "outgoingMedia" is the user's OWN video (sending to Kurento)
+    // "outgoingMedia" is the user's OWN video (sending to Kurento); null for receive-only viewers
     private final WebRtcEndpoint outgoingMedia;
     
     // "incomingMedia" is the video FROM others (receiving from Kurento)
     // Key: remote user's name
     private final ConcurrentMap<String, WebRtcEndpoint> incomingMedia = new ConcurrentHashMap<>();
     
-    // Buffer for candidates that arrive before the endpoint is created
-    private final ConcurrentMap<String, List<IceCandidate>> candidateBuffer = new ConcurrentHashMap<>();
+    // Candidates that arrive before their endpoint is ready, both outgoing and incoming
+    private final CandidateBuffer candidateBuffer;
 
-    public UserSession(String name, String role, String roomName, WebSocketSession session, MediaPipeline pipeline) {
+    // Port on the room's hub (mixer or dispatcher) outside MESH mode: own media goes in, the room's stream comes out
+    private volatile CompletableFuture<HubPort> hubPort;
+    private volatile boolean publishing;
+
+    // Last-N: senders whose video to this user is currently held back; their audio keeps flowing
+    private final Set<String> pausedVideo = ConcurrentHashMap.newKeySet();
+    // Smoothed bytes/s received on outgoingMedia: audio is a cheap stand-in for voice activity, video (how
+    // much the shared screen or camera picture changes) covers publishers that send no audio
+    private final ActivityRate audioActivity = new ActivityRate();
+    private final ActivityRate videoActivity = new ActivityRate();
+
+    // Bandwidth currently applied to this user's endpoints, set by the BandwidthGovernor; null if none
+    private volatile BandwidthLimits bandwidth;
+
+    private volatile boolean closed;
+
+    public UserSession(String name, String role, String roomName, WebSocketSession session, OutboundQueue outbound,
+                       MediaPipeline pipeline, SignalingProperties properties) {
+        this(name, role, roomName, session, outbound, pipeline,
+                KurentoFutures.timed("build", () -> new WebRtcEndpoint.Builder(pipeline).build()),
+                new CandidateBuffer(properties));
+    }
+
+    UserSession(String name, String role, String roomName, WebSocketSession session, OutboundQueue outbound,
+                MediaPipeline pipeline, WebRtcEndpoint outgoingMedia, CandidateBuffer candidateBuffer) {
+        this.candidateBuffer = candidateBuffer;
         this.pipeline = pipeline;
         this.name = name;
         this.role = role;
         this.session = session;
+        this.outbound = outbound;
         this.roomName = roomName;
-        this.outgoingMedia = new WebRtcEndpoint.Builder(pipeline).build();
+        this.outgoingMedia = outgoingMedia;
         
         // Add ICE listener for the OUTGOING endpoint (user's own video)
-        this.outgoingMedia.addIceCandidateFoundListener(event -> {
-            ObjectNode response = mapper.createObjectNode();
-            response.put("id", "iceCandidate");
-            response.put("name", name); // "name" corresponds to the user who generated this candidate
-            addCandidateData(response, event.getCandidate());
-            try {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(response.toString()));
-                }
-            } catch (IOException e) {
-                log.debug(e.getMessage());
-            }
-        });
+        // "name" corresponds to the user who generated this candidate
+        if (this.outgoingMedia != null) {
+            this.outgoingMedia.addIceCandidateFoundListener(
+                    event -> outbound.offerIceCandidate(name, candidateData(event.getCandidate())));
+        }
+    }
+
+    /**
+     * @return false for receive-only viewers, which have no outgoing endpoint
+     */
+    public boolean canPublish() {
+        return outgoingMedia != null;
+    }
+
+    public boolean isPublishing() {
+        return publishing;
     }
 
     public WebRtcEndpoint getOutgoingWebRtcPeer() {
@@ -80,135 +114,375 @@ public class UserSession implements Closeable {
         return roomName;
     }
 
+    /**
+     * WebRtcEndpoints this user holds on KMS: the outgoing one plus one per subscription.
+     */
+    public int getEndpointCount() {
+        return (outgoingMedia != null ? 1 : 0) + incomingMedia.size();
+    }
+
     /**
      * Called when the client sends their OWN video (Publishing).
      * We need to process the SDP Offer on the 'outgoingMedia' endpoint.
+     * <p>
+     * Runs asynchronously; the returned future completes once candidate gathering has started.
      */
-    public void receiveFromClient(String sdpOffer) throws IOException {
+    public CompletableFuture<Void> receiveFromClient(String sdpOffer) {
         log.info("USER {}: Negotiating outgoing connection", this.name);
-        
-        String sdpAnswer = outgoingMedia.processOffer(sdpOffer);
-        
-        ObjectNode response = mapper.createObjectNode();
-        response.put("id", "receiveVideoAnswer");
-        response.put("name", this.name);
-        response.put("sdpAnswer", sdpAnswer);
-        
-        sendMessage(response);
-        outgoingMedia.gatherCandidates();
+        if (outgoingMedia == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException(name + " is receive-only"));
+        }
+
+        final CompletableFuture<String> answer = KurentoFutures.call("processOffer",
+                c -> outgoingMedia.processOffer(sdpOffer, c));
+        return answer.thenCompose(sdpAnswer -> {
+            ObjectNode response = mapper.createObjectNode();
+            response.put("id", "receiveVideoAnswer");
+            response.put("name", this.name);
+            response.put("sdpAnswer", sdpAnswer);
+            sendMessage(response);
+            // Remote description is set; candidates the client trickled meanwhile can go in now
+            openCandidates(this.name, outgoingMedia);
+            publishing = true;
+            feedHub();
+
+            final CompletableFuture<Void> gathering = KurentoFutures.call(outgoingMedia::gatherCandidates);
+            return gathering;
+        });
     }
 
     /**
      * Called when THIS user wants to receive video FROM 'sender'.
+     * <p>
+     * Every KMS call is asynchronous. Once the endpoint exists, the ICE listener registration, the
+     * connection from the sender and the offer processing are issued together, and the answer is
+     * sent as soon as KMS returns it. Candidate gathering waits for both the listener and the answer.
+     */
+    public CompletableFuture<Void> receiveVideoFrom(UserSession sender, String sdpOffer) {
+        return subscribe(sender.getName(),
+                incoming -> KurentoFutures.call(c -> sender.getOutgoingWebRtcPeer().connect(incoming, c)),
+                sdpOffer);
+    }
+
+    /**
+     * Subscribes to the room's hub stream (the mix of a {@link Composite}, or the presenter forwarded by a
+     * {@link DispatcherOneToMany}), coming out of this user's port. Only valid once {@link #joinHub} has
+     * been called.
+     *
+     * @param stream name the client knows the hub stream by
      */
-    public void receiveVideoFrom(UserSession sender, String sdpOffer) throws IOException {
-        log.info("USER {}: connecting with {} in room {}", this.name, sender.getName(), this.roomName);
+    public CompletableFuture<Void> receiveHubVideo(String stream, String sdpOffer) {
+        final CompletableFuture<HubPort> port = this.hubPort;
+        if (port == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Not attached to a hub"));
+        }
+        return subscribe(stream,
+                incoming -> port.thenCompose(p -> KurentoFutures.<Void>call(c -> p.connect(incoming, c))),
+                sdpOffer);
+    }
+
+    private CompletableFuture<Void> subscribe(String senderName,
+                                              Function<WebRtcEndpoint, CompletableFuture<Void>> connectSource,
+                                              String sdpOffer) {
+        log.info("USER {}: connecting with {} in room {}", this.name, senderName, this.roomName);
 
-        log.trace("USER {}: SdpOffer for {} is {}", this.name, sender.getName(), sdpOffer);
+        log.trace("USER {}: SdpOffer for {} is {}", this.name, senderName, sdpOffer);
 
         // 1. Create a NEW endpoint for receiving the sender's video
-        final WebRtcEndpoint incoming = new WebRtcEndpoint.Builder(pipeline).build();
-        this.incomingMedia.put(sender.getName(), incoming);
+        final CompletableFuture<WebRtcEndpoint> built =
+                KurentoFutures.call("build", c -> new WebRtcEndpoint.Builder(pipeline).buildAsync(c));
 
-        log.trace("USER {}: Created incoming endpoint for {}", this.name, sender.getName());
+        return built.thenCompose(incoming -> {
+            if (closed) {
+                incoming.release(KurentoFutures.timed("release", KurentoFutures.logging(log, "Release of late incoming EP")));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            final WebRtcEndpoint previous = this.incomingMedia.put(senderName, incoming);
+            // A fresh connection forwards everything until the next Last-N round says otherwise
+            pausedVideo.remove(senderName);
+            final BandwidthLimits limits = this.bandwidth;
+            if (limits != null) {
+                limits.applyToSubscription(incoming, log);
+            }
+            if (previous != null) {
+                // Renegotiation: the client replaced its peer connection
+                previous.release(KurentoFutures.timed("release",
+                        KurentoFutures.logging(log, "Release of replaced incoming EP")));
+            }
+            log.trace("USER {}: Created incoming endpoint for {}", this.name, senderName);
 
-        // 2. Connect the SENDER's outgoing endpoint -> THIS incoming endpoint
-        sender.getOutgoingWebRtcPeer().connect(incoming);
+            // 2. Add ICE listener for THIS incoming endpoint
+            // When Kurento generates a candidate for THIS receiving link, send it to the client
+            // It's a candidate for the link with 'sender'
+            final CompletableFuture<ListenerSubscription> listening = KurentoFutures.call(
+                    c -> incoming.addIceCandidateFoundListener(
+                            event -> outbound.offerIceCandidate(senderName, candidateData(event.getCandidate())),
+                            c));
 
-        // 3. Add ICE listener for THIS incoming endpoint
-        // When Kurento generates a candidate for THIS receiving link, send it to the client
-        incoming.addIceCandidateFoundListener(event -> {
-            ObjectNode response = mapper.createObjectNode();
-            response.put("id", "iceCandidate");
-            response.put("name", sender.getName()); // It's a candidate for the link with 'sender'
-            addCandidateData(response, event.getCandidate());
-            try {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(response.toString()));
+            // 3. Connect the SENDER's outgoing endpoint (or the mixer) -> THIS incoming endpoint
+            final CompletableFuture<Void> connected = connectSource.apply(incoming);
+
+            // Candidates that arrived before the endpoint existed
+            openCandidates(senderName, incoming);
+
+            // 4. Process the SDP Offer and 5. send the answer back as soon as it is ready
+            final CompletableFuture<String> answer =
+                    KurentoFutures.call("processOffer", c -> incoming.processOffer(sdpOffer, c));
+            final CompletableFuture<Void> answered = answer.thenAccept(sdpAnswer -> {
+                ObjectNode response = mapper.createObjectNode();
+                response.put("id", "receiveVideoAnswer");
+                response.put("name", senderName);
+                response.put("sdpAnswer", sdpAnswer);
+
+                log.trace("USER {}: SdpAnswer for {} is {}", this.name, senderName, sdpAnswer);
+                sendMessage(response);
+            });
+
+            final CompletableFuture<Void> gathering = CompletableFuture.allOf(listening, answered)
+                    .thenCompose(v -> {
+                        final CompletableFuture<Void> gather = KurentoFutures.call(incoming::gatherCandidates);
+                        return gather;
+                    });
+            return CompletableFuture.allOf(connected, gathering);
+        });
+    }
+
+    /**
+     * Attaches this user to the room's hub: a {@link HubPort} is created on {@code hub} and the user's
+     * own media, once published, is fed into it.
+     */
+    CompletableFuture<HubPort> joinHub(Hub hub) {
+        final CompletableFuture<HubPort> port = KurentoFutures.call("build", c -> new HubPort.Builder(hub).buildAsync(c));
+        this.hubPort = port;
+        feedHub();
+        return port;
+    }
+
+    CompletableFuture<HubPort> getHubPort() {
+        return hubPort;
+    }
+
+    private void feedHub() {
+        final CompletableFuture<HubPort> port = this.hubPort;
+        if (port == null || !publishing) {
+            return;
+        }
+        port.thenAccept(p -> outgoingMedia.connect(p, KurentoFutures.logging(log, "Connect to hub of " + name)))
+                .exceptionally(t -> {
+                    log.warn("USER {}: could not create hub port: {}", this.name, t.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Samples the audio and video received from this user and folds them into {@link #getAudioActivity()}
+     * and {@link #getVideoActivity()}. Completes normally even if KMS could not be asked.
+     */
+    CompletableFuture<Void> sampleActivity() {
+        if (outgoingMedia == null || !publishing) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(
+                sampleBytesReceived(MediaType.AUDIO, audioActivity),
+                sampleBytesReceived(MediaType.VIDEO, videoActivity));
+    }
+
+    private CompletableFuture<Void> sampleBytesReceived(MediaType type, ActivityRate activity) {
+        final CompletableFuture<Map<String, Stats>> stats =
+                KurentoFutures.call(c -> outgoingMedia.getStats(type, c));
+        return stats.thenAccept(s -> {
+            long bytes = 0;
+            for (final Stats stat : s.values()) {
+                if (stat instanceof RTCInboundRTPStreamStats inbound) {
+                    bytes += inbound.getBytesReceived();
                 }
-            } catch (IOException e) {
-                log.debug(e.getMessage());
             }
+            activity.update(bytes, System.nanoTime());
+        }).exceptionally(t -> {
+            log.debug("USER {}: could not sample {} stats: {}", this.name, type, t.getMessage());
+            return null;
         });
-        
-        // Process buffered candidates
-        List<IceCandidate> buffered = candidateBuffer.remove(sender.getName());
-        if (buffered != null) {
-            log.info("USER {}: Replaying {} buffered candidates for {}", this.name, buffered.size(), sender.getName());
-            for (IceCandidate c : buffered) {
-                incoming.addIceCandidate(c);
-            }
+    }
+
+    void updateAudioActivity(long bytesReceived, long now) {
+        audioActivity.update(bytesReceived, now);
+    }
+
+    void updateVideoActivity(long bytesReceived, long now) {
+        videoActivity.update(bytesReceived, now);
+    }
+
+    /**
+     * @return smoothed audio bytes/s received from this user, 0 if they send no audio
+     */
+    public double getAudioActivity() {
+        return audioActivity.get();
+    }
+
+    /**
+     * @return smoothed video bytes/s received from this user
+     */
+    public double getVideoActivity() {
+        return videoActivity.get();
+    }
+
+    /**
+     * Applies {@code limits} to the outgoing endpoint and every subscription, and remembers them for
+     * subscriptions made later. Does nothing if they are already in force.
+     */
+    void applyBandwidth(BandwidthLimits limits) {
+        if (limits.equals(this.bandwidth)) {
+            return;
         }
+        this.bandwidth = limits;
+        if (outgoingMedia != null) {
+            limits.applyToPublisher(outgoingMedia, log);
+        }
+        for (final WebRtcEndpoint incoming : incomingMedia.values()) {
+            limits.applyToSubscription(incoming, log);
+        }
+    }
 
-        // 4. Process the SDP Offer
-        String sdpAnswer = incoming.processOffer(sdpOffer);
-        
-        // 5. Send Answer back to client
-        ObjectNode response = mapper.createObjectNode();
-        response.put("id", "receiveVideoAnswer");
-        response.put("name", sender.getName());
-        response.put("sdpAnswer", sdpAnswer);
-
-        log.trace("USER {}: SdpAnswer for {} is {}", this.name, sender.getName(), sdpAnswer);
-        sendMessage(response);
-        
-        incoming.gatherCandidates();
+    public BandwidthLimits getBandwidth() {
+        return bandwidth;
     }
-    
+
+    /**
+     * Pauses or resumes the video of this user's subscription to {@code sender}. Only issues a KMS call
+     * when the state actually changes.
+     */
+    void forwardVideoFrom(UserSession sender, boolean forward) {
+        final WebRtcEndpoint incoming = incomingMedia.get(sender.getName());
+        final WebRtcEndpoint source = sender.getOutgoingWebRtcPeer();
+        if (incoming == null || source == null) {
+            return;
+        }
+        if (forward && pausedVideo.remove(sender.getName())) {
+            source.connect(incoming, MediaType.VIDEO,
+                    KurentoFutures.logging(log, "Resume of video from " + sender.getName() + " to " + name));
+        } else if (!forward && pausedVideo.add(sender.getName())) {
+            source.disconnect(incoming, MediaType.VIDEO,
+                    KurentoFutures.logging(log, "Pause of video from " + sender.getName() + " to " + name));
+        }
+    }
+
+    boolean isVideoPaused(String senderName) {
+        return pausedVideo.contains(senderName);
+    }
+
     /**
      * Called when the client sends an ICE candidate.
      * We must determine if it belongs to the OUTGOING connection or one of the INCOMING connections.
+     * Until that endpoint is ready the candidate waits in the {@link CandidateBuffer}.
+     *
+     * @return completes once KMS has taken the candidate; already complete if it was buffered or dropped
      */
-    public void addCandidate(IceCandidate candidate, String name) {
-        if (this.name.compareTo(name) == 0) {
-            // It's for my own outgoing connection
-            outgoingMedia.addIceCandidate(candidate);
-        } else {
-            // It's for a receiving connection from 'name'
-            WebRtcEndpoint incoming = incomingMedia.get(name);
-            if (incoming != null) {
-                incoming.addIceCandidate(candidate);
-            } else {
-                log.info("USER {}: Buffering candidate for {}", this.name, name);
-                candidateBuffer.computeIfAbsent(name, k -> new ArrayList<>()).add(candidate);
-            }
+    public CompletableFuture<Void> addCandidate(IceCandidate candidate, String name) {
+        if (candidateBuffer.offer(name, candidate)) {
+            log.debug("USER {}: Buffering candidate for {}", this.name, name);
+            return CompletableFuture.completedFuture(null);
+        }
+        // "name" is mine for the OUTGOING connection, the sender's for a receiving one
+        final WebRtcEndpoint endpoint = this.name.equals(name) ? outgoingMedia : incomingMedia.get(name);
+        if (endpoint != null) {
+            // outgoingMedia is null for viewers, whose own name never opens in the buffer
+            return KurentoFutures.call(c -> endpoint.addIceCandidate(candidate, c));
         }
+        log.debug("USER {}: Dropping candidate for closed connection {}", this.name, name);
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void addCandidateData(ObjectNode response, IceCandidate candidate) {
+    private void openCandidates(String peer, WebRtcEndpoint endpoint) {
+        final int replayed = candidateBuffer.open(peer,
+                c -> endpoint.addIceCandidate(c, KurentoFutures.logging(log, "Replay of candidate for " + peer)));
+        if (replayed > 0) {
+            log.info("USER {}: Replayed {} buffered candidates for {}", this.name, replayed, peer);
+        }
+    }
+
+    public void purgeExpiredCandidates() {
+        candidateBuffer.purgeExpired();
+    }
+
+    public CandidateBuffer getCandidateBuffer() {
+        return candidateBuffer;
+    }
+
+    private ObjectNode candidateData(IceCandidate candidate) {
         ObjectNode candidateJson = mapper.createObjectNode();
         candidateJson.put("candidate", candidate.getCandidate());
         candidateJson.put("sdpMid", candidate.getSdpMid());
         candidateJson.put("sdpMLineIndex", candidate.getSdpMLineIndex());
-        response.set("candidate", candidateJson);
+        return candidateJson;
     }
 
-    public void sendMessage(ObjectNode message) throws IOException {
+    /**
+     * Queues a message for this user. Never blocks on the socket; the actual write happens on the
+     * session's outbound drainer.
+     *
+     * @return false if the message was rejected by the outbound overflow policy
+     */
+    public boolean sendMessage(ObjectNode message) {
         log.debug("USER {}: Sending message {}", name, message);
-        synchronized (session) {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(message.toString()));
-            }
-        }
+        return outbound.offer(message);
+    }
+
+    /**
+     * Queues a pre-encoded frame, typically one shared by all recipients of a room broadcast. It must be
+     * encoded in this user's {@link #getFormat() format}.
+     */
+    public boolean sendMessage(WebSocketMessage<?> frame) {
+        return outbound.offer(frame);
+    }
+
+    public SignalFormat getFormat() {
+        return outbound.getFormat();
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
     }
     
     public void cancelVideoFrom(String senderName) {
         log.debug("USER {}: canceling video subscription from {}", this.name, senderName);
+        candidateBuffer.reset(senderName);
+        pausedVideo.remove(senderName);
         WebRtcEndpoint incoming = incomingMedia.remove(senderName);
         if (incoming != null) {
-            incoming.release();
+            // Don't hold up the leave broadcast on a KMS round trip per participant
+            incoming.release(KurentoFutures.timed("release", new Continuation<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    log.trace("USER {}: Released incoming EP for {}", UserSession.this.name, senderName);
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    log.warn("USER {}: Could not release incoming EP for {}", UserSession.this.name, senderName);
+                }
+            }));
         }
     }
 
     @Override
     public void close() throws IOException {
         log.debug("PARTICIPANT {}: Releasing resources", this.name);
+        closed = true;
+        candidateBuffer.clear();
         for (final String remoteParticipantName : incomingMedia.keySet()) {
             log.trace("PARTICIPANT {}: Released incoming EP for {}", this.name, remoteParticipantName);
             final WebRtcEndpoint ep = this.incomingMedia.get(remoteParticipantName);
-            ep.release();
+            KurentoFutures.timed("release", () -> ep.release());
+        }
+        if (outgoingMedia != null) {
+            KurentoFutures.timed("release", () -> outgoingMedia.release());
         }
-        outgoingMedia.release();
         incomingMedia.clear();
+        final CompletableFuture<HubPort> port = this.hubPort;
+        if (port != null) {
+            port.thenAccept(p -> p.release(
+                    KurentoFutures.timed("release", KurentoFutures.logging(log, "Release of hub port of " + name))));
+        }
+        outbound.close();
     }
 }
@@ -2,6 +2,14 @@ var ws = new WebSocket('ws://' + location.host + '/signal');
 var participants = {}; // k: userName, v: participant (WebRtcPeer + videoEl)
 var name; // My Name
 var myRole; // "user" or "manager"
+var iceBatching = false; // Set when the server accepts batched "onIceCandidates"
+var ICE_BATCH_WINDOW_MS = 20;
+var BUSY_MAX_RETRIES = 5;
+var BUSY_DEFAULT_RETRY_MS = 1000;
+// Requests still waiting for their answer, resent if the server turns them away as busy:
+// the join until "existingParticipants", each subscription until its "receiveVideoAnswer"
+var pendingJoin = null;
+var pendingSubscriptions = {}; // k: sender, v: {message, retries}
 
 window.onbeforeunload = function () {
 	ws.close();
@@ -13,6 +21,7 @@ ws.onmessage = function (message) {
 
 	switch (parsedMessage.id) {
 		case 'existingParticipants':
+			pendingJoin = null;
 			onExistingParticipants(parsedMessage);
 			break;
 		case 'newParticipantArrived':
@@ -22,6 +31,7 @@ ws.onmessage = function (message) {
 			onParticipantLeft(parsedMessage);
 			break;
 		case 'receiveVideoAnswer':
+			delete pendingSubscriptions[parsedMessage.name];
 			receiveVideoResponse(parsedMessage);
 			break;
 		case 'iceCandidate':
@@ -34,6 +44,29 @@ ws.onmessage = function (message) {
 				}
 			});
 			break;
+		case 'iceCandidates':
+			// Several queued candidates for the same connection, merged by the server
+			parsedMessage.candidates.forEach(function (candidate) {
+				participants[parsedMessage.name].rtcPeer.addIceCandidate(candidate, function (error) {
+					if (error) {
+						console.error("Error adding candidate: " + error);
+					}
+				});
+			});
+			break;
+		case 'activeSpeakers':
+			onActiveSpeakers(parsedMessage);
+			break;
+		case 'roomMode':
+			onRoomMode(parsedMessage);
+			break;
+		case 'error':
+			// The server could not handle one of our messages
+			console.error('Signaling error (' + parsedMessage.code + '): ' + parsedMessage.message);
+			if (parsedMessage.code === 'busy') {
+				retryBusy(parsedMessage);
+			}
+			break;
 		default:
 			console.error('Unrecognized message', parsedMessage);
 	}
@@ -60,17 +93,14 @@ document.getElementById('joinBtn').addEventListener('click', function () {
 	document.getElementById('join-section').classList.add('d-none');
 	document.getElementById('room-section').classList.remove('d-none');
 
-	// If Manager, hide "local video" box entirely since they don't share
-	if (myRole === 'manager') {
-		document.getElementById('local-video-wrapper').style.display = 'none';
-	}
-
 	var message = {
 		id: 'joinRoom',
 		name: name,
 		room: room,
-		role: myRole
+		role: myRole,
+		iceBatching: true // Ask for batched candidates in both directions
 	}
+	pendingJoin = { message: message, retries: 0 };
 	sendMessage(message);
 });
 
@@ -84,14 +114,19 @@ document.getElementById('leaveBtn').addEventListener('click', function () {
 });
 
 function onExistingParticipants(msg) {
+	iceBatching = msg.iceBatching === true;
+
 	var constraints = {
 		audio: false,
 		video: true
 	};
 
+	// Users share their screen, managers watch; in a broadcast room it is the other way round
+	var publish = msg.mode === 'BROADCAST' ? msg.publish === true : myRole === 'user';
+
 	// 1. My Logic (Publishing)
-	if (myRole === 'user') {
-		// I am a User, I MUST share screen
+	if (publish) {
+		// I MUST share screen
 		var participant = new Participant(name);
 		participants[name] = participant;
 		var localVideo = document.getElementById('videoInput');
@@ -135,15 +170,40 @@ function onExistingParticipants(msg) {
 			alert("Your browser does not support getDisplayMedia!");
 		}
 	} else {
-		// I am a Manager, I do NOT share screen. Just subscribe to others.
+		// I do NOT share screen: hide the "local video" box and just subscribe to others.
+		document.getElementById('local-video-wrapper').style.display = 'none';
 		subscribeToOthers(msg.data);
 	}
 }
 
+function onActiveSpeakers(msg) {
+	// Only the listed speakers' video is forwarded; the others are dimmed and moved to the end of the grid
+	for (var key in participants) {
+		var box = document.getElementById(key);
+		if (key !== name && box) {
+			box.classList.toggle('inactive-speaker', msg.speakers.indexOf(key) < 0);
+		}
+	}
+}
+
+function onRoomMode(msg) {
+	// The room switched to a single mixed stream: drop the per-user views and watch the mix instead
+	console.log('Room switched to ' + msg.mode + ' mode');
+	for (var key in participants) {
+		if (key !== name) {
+			participants[key].dispose();
+			delete participants[key];
+			delete pendingSubscriptions[key];
+		}
+	}
+	receiveVideo(msg.stream);
+}
+
 function subscribeToOthers(participantsData) {
-	// participantsData is now an array of {name, role} objects
+	// participantsData is now an array of {name, role} objects; a "mixed" or "presenter" entry is the
+	// room's single hub stream
 	participantsData.forEach(function (userData) {
-		if (userData.role === 'user') {
+		if (userData.role === 'user' || userData.role === 'mixed' || userData.role === 'presenter') {
 			receiveVideo(userData.name);
 		} else {
 			console.log("Skipping Manager (no video): " + userData.name);
@@ -202,6 +262,28 @@ function onParticipantLeft(request) {
 		participant.dispose();
 		delete participants[request.name];
 	}
+	delete pendingSubscriptions[request.name];
+}
+
+function retryBusy(refused) {
+	// A refused subscription names its sender; the join is the only one of its kind
+	var request = refused.requestId === 'joinRoom' ? pendingJoin
+		: refused.requestId === 'receiveVideoFrom' ? pendingSubscriptions[refused.name]
+		: null;
+	if (!request || request.scheduled) return;
+	if (request.retries >= BUSY_MAX_RETRIES) {
+		console.error('Giving up on ' + request.message.id + ' after ' + request.retries + ' retries');
+		return;
+	}
+	request.retries++;
+	request.scheduled = true;
+	setTimeout(function () {
+		request.scheduled = false;
+		// Skip it if it was answered or dropped (participant left, room mode changed) meanwhile
+		if (request === pendingJoin || request === pendingSubscriptions[request.message.sender]) {
+			sendMessage(request.message);
+		}
+	}, refused.retryAfter > 0 ? refused.retryAfter : BUSY_DEFAULT_RETRY_MS);
 }
 
 function sendMessage(message) {
@@ -260,12 +342,23 @@ function Participant(name) {
 			sender: name,
 			sdpOffer: offerSdp
 		};
+		pendingSubscriptions[name] = { message: msg, retries: 0 };
 		sendMessage(msg);
 	}
 
 
+	var pendingCandidates = [];
+
 	this.onIceCandidate = function (candidate, wp) {
 		console.log("Sending ICE candidate for " + name + ": " + JSON.stringify(candidate));
+		if (iceBatching) {
+			// Collect the candidates of one window into a single frame
+			pendingCandidates.push(candidate);
+			if (pendingCandidates.length === 1) {
+				setTimeout(flushCandidates, ICE_BATCH_WINDOW_MS);
+			}
+			return;
+		}
 		var message = {
 			id: 'onIceCandidate',
 			candidate: candidate,
@@ -274,6 +367,17 @@ function Participant(name) {
 		sendMessage(message);
 	}
 
+	function flushCandidates() {
+		var candidates = pendingCandidates;
+		pendingCandidates = [];
+		if (candidates.length === 0) return;
+		sendMessage({
+			id: 'onIceCandidates',
+			candidates: candidates,
+			name: name
+		});
+	}
+
 	this.dispose = function () {
 		console.log('Disposing participant ' + this.name);
 		this.rtcPeer.dispose();
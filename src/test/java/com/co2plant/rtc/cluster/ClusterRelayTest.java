@@ -0,0 +1,222 @@
+package com.co2plant.rtc.cluster;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.webrtc.OutboundQueue;
+import com.co2plant.rtc.webrtc.Room;
+import com.co2plant.rtc.webrtc.SignalingFixtures;
+import com.co2plant.rtc.webrtc.UserSession;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterRelayTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    @SuppressWarnings("unchecked")
+    private final HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private ClusterRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(redis.<Object, Object>opsForHash()).thenReturn(hashes);
+        relay = new ClusterRelay(redis, mock(RedisMessageListenerContainer.class), properties(), "node-a", TTL,
+                writer);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        relay.stop();
+    }
+
+    @Test
+    void freeRoomIsClaimedAndATakenOneReportsItsOwner() {
+        when(values.setIfAbsent("rtc:room:free:owner", "node-a", TTL)).thenReturn(true);
+        when(values.setIfAbsent("rtc:room:taken:owner", "node-a", TTL)).thenReturn(false);
+        when(values.get("rtc:room:taken:owner")).thenReturn("node-b");
+
+        assertThat(relay.resolveOwner("free")).isEqualTo("node-a");
+        assertThat(relay.resolveOwner("taken")).isEqualTo("node-b");
+    }
+
+    @Test
+    void presenceIsWrittenOffTheRoomThreadAndInOrder() throws Exception {
+        CountDownLatch redisStalled = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            redisStalled.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(hashes).put(anyString(), any(), any());
+        Room room = room("room");
+
+        long start = System.nanoTime();
+        relay.participantJoined(room, participant("alice", mock(WebSocketSession.class)));
+        relay.participantJoined(room, participant("bob", new RelayedWebSocketSession(relay, "node-b", "s1")));
+        relay.participantLeft(room, participant("alice", mock(WebSocketSession.class)));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+        verify(hashes, never()).delete(anyString(), any());
+
+        redisStalled.countDown();
+        verify(hashes, timeout(1_000)).put("rtc:room:room:participants", "alice", "node-a");
+        verify(hashes, timeout(1_000)).put("rtc:room:room:participants", "bob", "node-b");
+        verify(hashes, timeout(1_000)).delete("rtc:room:room:participants", "alice");
+    }
+
+    @Test
+    void closedRoomReleasesOwnershipUnlessCreatedAgain() throws Exception {
+        Room closed = room("closed");
+        Room reopened = room("reopened");
+        relay.roomCreated(closed);
+        relay.roomCreated(reopened);
+
+        // Hold the writer so the second room is back before its release runs
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        writer.execute(() -> {
+            try {
+                writerBusy.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        relay.roomClosed(closed);
+        relay.roomClosed(reopened);
+        relay.roomCreated(reopened);
+        writerBusy.countDown();
+        relay.stop();
+
+        verify(redis).execute(any(RedisScript.class), eq(List.of("rtc:room:closed:owner")), eq("node-a"));
+        verify(redis, never()).execute(any(RedisScript.class), eq(List.of("rtc:room:reopened:owner")), any());
+        verify(redis).delete("rtc:room:closed:participants");
+    }
+
+    @Test
+    void redisFailureIsLoggedAndLaterWritesStillHappen() throws Exception {
+        doThrow(new IllegalStateException("connection refused"))
+                .when(hashes).put(eq("rtc:room:room:participants"), eq("alice"), any());
+        Room room = room("room");
+
+        relay.participantJoined(room, participant("alice", mock(WebSocketSession.class)));
+        relay.participantJoined(room, participant("bob", mock(WebSocketSession.class)));
+
+        verify(hashes, timeout(1_000)).put("rtc:room:room:participants", "bob", "node-a");
+    }
+
+    @Test
+    void joinForRemoteRoomIsRelayedAndRepliesComeBack() throws Exception {
+        when(values.setIfAbsent("rtc:room:room:owner", "node-a", TTL)).thenReturn(false);
+        when(values.get("rtc:room:room:owner")).thenReturn("node-b");
+        WebSocketSession client = mock(WebSocketSession.class);
+        when(client.getId()).thenReturn("s1");
+        when(client.isOpen()).thenReturn(true);
+
+        assertThat(relay.routeIfRemote(client, "room", "{\"id\":\"joinRoom\"}")).isTrue();
+        assertThat(relay.isRouted(client)).isTrue();
+        RelayEnvelope inbound = published("rtc:signal:node-b");
+        assertThat(inbound).isEqualTo(new RelayEnvelope(RelayEnvelope.Type.INBOUND, "node-a", "s1",
+                "{\"id\":\"joinRoom\"}"));
+
+        // The owner's reply arrives on our channel and goes out on the client's socket
+        deliver(new RelayEnvelope(RelayEnvelope.Type.OUTBOUND, "node-a", "s1", "{\"id\":\"existingParticipants\"}"));
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(client, timeout(1_000)).sendMessage(sent.capture());
+        assertThat(sent.getValue().getPayload()).isEqualTo("{\"id\":\"existingParticipants\"}");
+
+        // The owner closes the client
+        deliver(new RelayEnvelope(RelayEnvelope.Type.CLOSE, "node-a", "s1", "1000"));
+        verify(client).close(CloseStatus.NORMAL);
+        assertThat(relay.isRouted(client)).isFalse();
+    }
+
+    @Test
+    void relayedFramesReachTheLocalHandlerThroughAStandInSession() throws Exception {
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        relay.bind(handler);
+
+        deliver(new RelayEnvelope(RelayEnvelope.Type.INBOUND, "node-b", "s7", "{\"id\":\"joinRoom\"}"));
+        ArgumentCaptor<WebSocketSession> session = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).handleMessage(session.capture(), eq(new TextMessage("{\"id\":\"joinRoom\"}")));
+        RelayedWebSocketSession remote = (RelayedWebSocketSession) session.getValue();
+        assertThat(remote.getId()).isEqualTo("node-b/s7");
+        assertThat(remote.getOriginNode()).isEqualTo("node-b");
+
+        // Replies to the stand-in go back to the origin node
+        remote.sendMessage(new TextMessage("{\"id\":\"existingParticipants\"}"));
+        assertThat(published("rtc:signal:node-b")).isEqualTo(new RelayEnvelope(RelayEnvelope.Type.OUTBOUND,
+                "node-b", "s7", "{\"id\":\"existingParticipants\"}"));
+
+        // Later frames of the same client reuse the stand-in, and its close is passed on
+        deliver(new RelayEnvelope(RelayEnvelope.Type.INBOUND, "node-b", "s7", "{\"id\":\"leaveRoom\"}"));
+        verify(handler).handleMessage(remote, new TextMessage("{\"id\":\"leaveRoom\"}"));
+        deliver(new RelayEnvelope(RelayEnvelope.Type.CLOSED, "node-b", "s7", null));
+        verify(handler).afterConnectionClosed(remote, CloseStatus.NORMAL);
+        assertThat(remote.isOpen()).isFalse();
+    }
+
+    private void deliver(RelayEnvelope envelope) throws Exception {
+        relay.onMessage(new DefaultMessage("rtc:signal:node-a".getBytes(StandardCharsets.UTF_8),
+                mapper.writeValueAsBytes(envelope)), null);
+    }
+
+    private RelayEnvelope published(String channel) throws Exception {
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(redis, timeout(1_000).atLeastOnce()).convertAndSend(eq(channel), json.capture());
+        return mapper.readValue(json.getValue(), RelayEnvelope.class);
+    }
+
+    private static Room room(String name) {
+        Room room = mock(Room.class);
+        when(room.getName()).thenReturn(name);
+        return room;
+    }
+
+    private static UserSession participant(String name, WebSocketSession session) {
+        UserSession participant = mock(UserSession.class);
+        when(participant.getName()).thenReturn(name);
+        when(participant.getSession()).thenReturn(session);
+        return participant;
+    }
+
+    private static SignalingProperties properties() {
+        return SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 16)
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .build();
+    }
+}
@@ -0,0 +1,130 @@
+package com.co2plant.rtc.kms;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.co2plant.rtc.webrtc.OutboundQueue;
+import com.co2plant.rtc.webrtc.Room;
+import com.co2plant.rtc.webrtc.SignalingFixtures;
+import com.co2plant.rtc.webrtc.TestWebSocketSession;
+import com.co2plant.rtc.webrtc.UserSession;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.IceCandidate;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FakeKurentoServerTest {
+
+    private static final String OFFER = "v=0\r\no=- 1 1 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n"
+            + "a=group:BUNDLE 0\r\nm=video 9 UDP/TLS/RTP/SAVPF 96\r\na=mid:0\r\na=sendrecv\r\n";
+
+    private FakeKurentoServer kms;
+    private KurentoClient client;
+
+    @AfterEach
+    void stop() {
+        if (client != null) {
+            client.destroy();
+        }
+        if (kms != null) {
+            kms.close();
+        }
+    }
+
+    @Test
+    void negotiatesAndTricklesLikeAMediaServer() throws Exception {
+        kms = FakeKurentoServer.builder().candidatesPerGathering(3).start();
+        client = KurentoClient.create(kms.getUrl());
+
+        MediaPipeline pipeline = client.createMediaPipeline();
+        WebRtcEndpoint publisher = new WebRtcEndpoint.Builder(pipeline).build();
+        WebRtcEndpoint subscriber = new WebRtcEndpoint.Builder(pipeline).build();
+        publisher.connect(subscriber);
+        List<IceCandidate> found = new CopyOnWriteArrayList<>();
+        CountDownLatch gathered = new CountDownLatch(1);
+        subscriber.addIceCandidateFoundListener(event -> found.add(event.getCandidate()));
+        subscriber.addIceGatheringDoneListener(event -> gathered.countDown());
+
+        String answer = subscriber.processOffer(OFFER);
+        subscriber.gatherCandidates();
+
+        assertThat(gathered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(answer).contains("m=video 9 UDP/TLS/RTP/SAVPF 96").contains("a=mid:0");
+        assertThat(found).hasSize(3).allSatisfy(c -> assertThat(c.getCandidate()).contains("typ host"));
+        assertThat(kms.getSinks(publisher.getId())).containsExactly(subscriber.getId());
+
+        pipeline.release();
+        assertThat(kms.getObjectCount()).isZero();
+    }
+
+    @Test
+    void delaysRepliesPerOperation() {
+        kms = FakeKurentoServer.builder().latency("processOffer", Duration.ofMillis(200)).start();
+        client = KurentoClient.create(kms.getUrl());
+        WebRtcEndpoint endpoint = new WebRtcEndpoint.Builder(client.createMediaPipeline()).build();
+
+        long start = System.nanoTime();
+        endpoint.processOffer(OFFER);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+        assertThat(kms.getCallCount("processOffer")).isEqualTo(1);
+    }
+
+    @Test
+    void roomPublishesAndSubscribesAgainstTheFakeServer() throws Exception {
+        kms = FakeKurentoServer.builder().jitter(Duration.ofMillis(20), 7).start();
+        client = KurentoClient.create(kms.getUrl());
+        SignalingProperties properties = SignalingFixtures.properties()
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .build();
+        Room room = new Room("fake", client.createMediaPipeline(), properties);
+        BlockingQueue<JsonNode> aliceFrames = new LinkedBlockingQueue<>();
+        BlockingQueue<JsonNode> bobFrames = new LinkedBlockingQueue<>();
+
+        UserSession alice = room.join("alice", "user",
+                new TestWebSocketSession("alice", SignalingFixtures.json(aliceFrames)));
+        UserSession bob = room.join("bob", "user",
+                new TestWebSocketSession("bob", SignalingFixtures.json(bobFrames)));
+        alice.receiveFromClient(OFFER).get(5, TimeUnit.SECONDS);
+        bob.receiveVideoFrom(alice, OFFER).get(5, TimeUnit.SECONDS);
+
+        assertThat(await(aliceFrames, f -> f.path("id").asText().equals("receiveVideoAnswer"))
+                .path("name").asText()).isEqualTo("alice");
+        assertThat(await(bobFrames, f -> f.path("id").asText().equals("receiveVideoAnswer"))
+                .path("sdpAnswer").asText()).contains("a=mid:0");
+        assertThat(await(bobFrames, f -> f.path("id").asText().equals("iceCandidate"))
+                .path("name").asText()).isEqualTo("alice");
+        assertThat(kms.getCallCount("processOffer")).isEqualTo(2);
+        assertThat(kms.getSinks(alice.getOutgoingWebRtcPeer().getId())).hasSize(1);
+
+        room.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (kms.getObjectCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20); // the pipeline is released asynchronously
+        }
+        assertThat(kms.getObjectCount()).isZero();
+    }
+
+    private JsonNode await(BlockingQueue<JsonNode> frames, Predicate<JsonNode> match) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            JsonNode frame = frames.poll(100, TimeUnit.MILLISECONDS);
+            if (frame != null && match.test(frame)) {
+                return frame;
+            }
+        }
+        throw new AssertionError("No matching frame within 5s");
+    }
+}
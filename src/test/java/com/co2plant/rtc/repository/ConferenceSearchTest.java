@@ -0,0 +1,143 @@
+package com.co2plant.rtc.repository;
+
+import com.co2plant.rtc.domain.Conference;
+import com.co2plant.rtc.domain.ConferenceCategory;
+import com.co2plant.rtc.domain.User;
+import com.co2plant.rtc.service.ConferenceService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(ConferenceService.class)
+class ConferenceSearchTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 5, 9, 0);
+
+    @Autowired private UserRepository userRepository;
+    @Autowired private ConferenceRepository conferenceRepository;
+    @Autowired private ConferenceCategoryRepository categoryRepository;
+    @Autowired private ConferenceService conferenceService;
+    @Autowired private EntityManager entityManager;
+
+    private ConferenceCategory talks;
+    private ConferenceCategory standups;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        List<User> owners = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            owners.add(userRepository.save(User.builder()
+                    .userId("owner-" + i).password("secret").name("Owner " + i).build()));
+        }
+        talks = categoryRepository.save(new ConferenceCategory("Tech Talk"));
+        standups = categoryRepository.save(new ConferenceCategory("Standup"));
+
+        for (int i = 0; i < 25; i++) {
+            conferenceRepository.save(conference(owners.get(i % 5), talks, START.plusHours(i), true));
+        }
+        for (int i = 0; i < 5; i++) {
+            conferenceRepository.save(conference(owners.get(0), standups, START.plusHours(i), true));
+        }
+        // Never listed: inactive, or not scheduled
+        conferenceRepository.save(conference(owners.get(0), talks, START.plusHours(3), false));
+        conferenceRepository.save(conference(owners.get(0), talks, null, true));
+
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void pagesThroughACategoryWithOneQueryPerPage() {
+        List<Long> seen = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            ConferenceService.ConferencePage page = conferenceService.search(talks.getId(), null, null, null,
+                    cursor, 10);
+            pageSizes.add(page.items().size());
+            for (ConferenceSummary item : page.items()) {
+                seen.add(item.id());
+                // Owner and category come with the row
+                assertThat(item.categoryName()).isEqualTo("Tech Talk");
+                assertThat(item.ownerName()).startsWith("Owner ");
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(pageSizes).containsExactly(10, 10, 5);
+        assertThat(seen).hasSize(25).doesNotHaveDuplicates();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void filtersByOwnerAndTimeWindow() {
+        ConferenceService.ConferencePage page = conferenceService.search(null, "owner-0",
+                START, START.plusHours(10), null, 50);
+
+        // owner-0 has talks at hours 0, 5 and standups at hours 0..4
+        assertThat(page.items()).hasSize(7);
+        assertThat(page.items()).extracting(ConferenceSummary::callStartTime).isSorted();
+        assertThat(page.items()).allSatisfy(item -> assertThat(item.ownerUserId()).isEqualTo("owner-0"));
+        assertThat(page.nextCursor()).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void equalStartTimesAreOrderedById() {
+        ConferenceService.ConferencePage first = conferenceService.search(null, null, START, START.plusMinutes(1),
+                null, 1);
+        ConferenceService.ConferencePage second = conferenceService.search(null, null, START, START.plusMinutes(1),
+                first.nextCursor(), 1);
+
+        assertThat(first.items().get(0).callStartTime()).isEqualTo(second.items().get(0).callStartTime());
+        assertThat(first.items().get(0).id()).isLessThan(second.items().get(0).id());
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void loadingEntitiesInsteadTriggersAQueryPerAssociation() {
+        List<Conference> conferences = conferenceRepository.findAll();
+        for (Conference conference : conferences) {
+            conference.getOwner().getName();
+            conference.getConferenceCategory().getName();
+        }
+
+        // 1 for the list, then one per distinct owner and category: what the projection avoids
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1 + 5 + 2);
+    }
+
+    @Test
+    void rejectsAForgedCursor() {
+        assertThatThrownBy(() -> conferenceService.search(null, null, null, null, "not-a-cursor", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Conference conference(User owner, ConferenceCategory category, LocalDateTime start,
+                                         boolean active) {
+        return Conference.builder()
+                .owner(owner)
+                .conferenceCategory(category)
+                .title("Conference")
+                .callStartTime(start)
+                .callEndTime(start != null ? start.plusHours(1) : null)
+                .isActive(active)
+                .build();
+    }
+}
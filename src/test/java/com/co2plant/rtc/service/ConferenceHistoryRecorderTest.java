@@ -0,0 +1,144 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.ConferenceHistory.Action;
+import com.co2plant.rtc.webrtc.Room;
+import com.co2plant.rtc.webrtc.UserSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConferenceHistoryRecorderTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final List<List<ConferenceHistoryRecorder.Event>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void writesFullBatchesAtOnceAndTheRestOnShutdown() throws Exception {
+        ConferenceHistoryRecorder recorder = recorder(recordingWriter(), 100, 5, Duration.ofSeconds(30));
+
+        for (int i = 0; i < 12; i++) {
+            assertThat(recorder.record("1", "user" + i, Action.JOIN)).isTrue();
+        }
+        waitUntil(() -> batches.size() == 2);
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSize(5));
+
+        recorder.stop();
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(2)).extracting(ConferenceHistoryRecorder.Event::user).containsExactly("user10", "user11");
+        assertThat(recorder.record("1", "late", Action.EXIT)).isFalse();
+    }
+
+    @Test
+    void partialBatchIsWrittenWhenTheIntervalIsUp() throws Exception {
+        ConferenceHistoryRecorder recorder = recorder(recordingWriter(), 100, 100, Duration.ofMillis(50));
+
+        recorder.record("1", "alice", Action.JOIN);
+        recorder.record("1", "bob", Action.JOIN);
+
+        waitUntil(() -> batches.size() == 1);
+        assertThat(batches.get(0)).hasSize(2);
+        recorder.stop();
+    }
+
+    @Test
+    void fullQueueDropsInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ConferenceHistoryWriter writer = mock(ConferenceHistoryWriter.class);
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return ((List<?>) invocation.getArgument(0)).size();
+        });
+        ConferenceHistoryRecorder recorder = recorder(writer, 2, 1, Duration.ofSeconds(30));
+
+        recorder.record("1", "first", Action.JOIN); // taken by the writer, which then blocks
+        waitUntil(() -> recorder.getPendingCount() == 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            recorder.record("1", "user" + i, Action.JOIN);
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+        assertThat(meters.get("rtc.history.events").tag("outcome", "dropped").counter().count()).isEqualTo(8);
+
+        release.countDown();
+        recorder.stop();
+        assertThat(meters.get("rtc.history.written").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void failedBatchIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ConferenceHistoryWriter writer = mock(ConferenceHistoryWriter.class);
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("database down");
+            }
+            batches.add(new ArrayList<>(invocation.getArgument(0)));
+            return batches.get(batches.size() - 1).size();
+        });
+        ConferenceHistoryRecorder recorder = recorder(writer, 100, 100, Duration.ofMillis(20));
+
+        recorder.record("1", "alice", Action.JOIN);
+
+        waitUntil(() -> batches.size() == 1);
+        assertThat(batches.get(0)).extracting(ConferenceHistoryRecorder.Event::user).containsExactly("alice");
+        assertThat(meters.get("rtc.history.discarded").counter().count()).isZero();
+        recorder.stop();
+    }
+
+    @Test
+    void roomEventsBecomeCreateJoinAndExit() throws Exception {
+        ConferenceHistoryRecorder recorder = recorder(recordingWriter(), 100, 100, Duration.ofSeconds(30));
+        Room room = mock(Room.class);
+        when(room.getName()).thenReturn("42");
+        UserSession alice = participant("alice");
+        UserSession bob = participant("bob");
+
+        recorder.roomCreated(room);
+        recorder.participantJoined(room, alice);
+        recorder.participantJoined(room, bob);
+        recorder.participantLeft(room, bob);
+        when(room.getParticipantNames()).thenReturn(List.of("alice"));
+        recorder.roomClosed(room);
+        recorder.stop();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0))
+                .extracting(event -> event.user() + ":" + event.action())
+                .containsExactly("alice:CREATE", "alice:JOIN", "bob:JOIN", "bob:EXIT", "alice:EXIT");
+        assertThat(batches.get(0)).allSatisfy(event -> assertThat(event.room()).isEqualTo("42"));
+    }
+
+    private ConferenceHistoryRecorder recorder(ConferenceHistoryWriter writer, int capacity, int batchSize,
+                                               Duration flushInterval) {
+        return new ConferenceHistoryRecorder(writer, meters, true, capacity, batchSize, flushInterval, 3);
+    }
+
+    private ConferenceHistoryWriter recordingWriter() {
+        ConferenceHistoryWriter writer = mock(ConferenceHistoryWriter.class);
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            List<ConferenceHistoryRecorder.Event> batch = new ArrayList<>(invocation.getArgument(0));
+            batches.add(batch);
+            return batch.size();
+        });
+        return writer;
+    }
+
+    private static UserSession participant(String name) {
+        UserSession participant = mock(UserSession.class);
+        when(participant.getName()).thenReturn(name);
+        return participant;
+    }
+}
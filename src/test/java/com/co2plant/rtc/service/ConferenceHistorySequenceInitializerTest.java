@@ -0,0 +1,53 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.Conference;
+import com.co2plant.rtc.domain.ConferenceCategory;
+import com.co2plant.rtc.domain.ConferenceHistory;
+import com.co2plant.rtc.domain.User;
+import com.co2plant.rtc.repository.ConferenceCategoryRepository;
+import com.co2plant.rtc.repository.ConferenceHistoryRepository;
+import com.co2plant.rtc.repository.ConferenceRepository;
+import com.co2plant.rtc.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(ConferenceHistorySequenceInitializer.class)
+class ConferenceHistorySequenceInitializerTest {
+
+    @Autowired private UserRepository userRepository;
+    @Autowired private ConferenceRepository conferenceRepository;
+    @Autowired private ConferenceCategoryRepository categoryRepository;
+    @Autowired private ConferenceHistoryRepository historyRepository;
+    @Autowired private ConferenceHistorySequenceInitializer initializer;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private EntityManager entityManager;
+
+    @Test
+    void sequenceIsMovedPastRowsWrittenWithAutoIncrement() {
+        User user = userRepository.save(User.builder().userId("alice").password("secret").name("Alice").build());
+        ConferenceCategory category = categoryRepository.save(new ConferenceCategory("Tech Talk"));
+        Conference conference = conferenceRepository.save(Conference.builder()
+                .owner(user).conferenceCategory(category).title("Sync").isActive(true).build());
+        entityManager.flush();
+
+        // A row from before the switch to the sequence
+        jdbc.update("insert into conference_history (id, conference_id, user_id, action, inserted_time) "
+                + "values (1000, ?, ?, 1, ?)", conference.getId(), user.getId(), LocalDateTime.now());
+
+        assertThat(initializer.advance()).isTrue();
+        assertThat(initializer.advance()).isFalse();
+
+        ConferenceHistory history = historyRepository.saveAndFlush(ConferenceHistory.builder()
+                .conference(conference).user(user).action(ConferenceHistory.Action.JOIN).build());
+        assertThat(history.getId()).isGreaterThan(1000L);
+    }
+}
@@ -0,0 +1,178 @@
+package com.co2plant.rtc.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserProfileCacheTest {
+
+    private static final UserProfile ALICE = new UserProfile(1L, "alice", "Alice", "R&D", "Engineer", "alice@example.com");
+    private static final List<String> ALICE_KEYS = List.of("rtc:user:alice", "rtc:user-gen:alice");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, UserProfile> loader = userId -> {
+        loads.incrementAndGet();
+        if (!userId.equals("alice")) {
+            throw new IllegalArgumentException("User not found: " + userId);
+        }
+        return ALICE;
+    };
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    @Test
+    void nearCacheServesRepeatedLookupsUntilEvicted() {
+        UserProfileCache cache = cache(null);
+
+        assertThat(cache.get("alice", loader)).isEqualTo(ALICE);
+        assertThat(cache.get("alice", loader)).isEqualTo(ALICE);
+        assertThat(loads).hasValue(1);
+        assertThat(meters.get("cache.gets").tag("cache", "users").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1);
+
+        cache.evict("alice");
+        cache.get("alice", loader);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void unknownUsersAreNotCached() {
+        UserProfileCache cache = cache(null);
+
+        assertThatThrownBy(() -> cache.get("bob", loader)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache.get("bob", loader)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(loads).hasValue(2);
+        assertThat(cache.getNearSize()).isZero();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoadRunOnTheCallersThread() throws Exception {
+        UserProfileCache cache = cache(null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> loaderThreads = new CopyOnWriteArrayList<>();
+        Function<String, UserProfile> slowLoader = userId -> {
+            loaderThreads.add(Thread.currentThread());
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ALICE;
+        };
+
+        Thread first = Thread.ofVirtual().unstarted(() -> cache.get("alice", slowLoader));
+        first.start();
+        assertThat(loading.await(2, TimeUnit.SECONDS)).isTrue();
+        List<CompletableFuture<UserProfile>> waiters = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            waiters.add(CompletableFuture.supplyAsync(() -> cache.get("alice", slowLoader)));
+        }
+        // Other users are not held up by the load in progress
+        assertThat(cache.get("carol", userId -> ALICE)).isEqualTo(ALICE);
+
+        release.countDown();
+        first.join(2_000);
+        for (CompletableFuture<UserProfile> waiter : waiters) {
+            assertThat(waiter.get(2, TimeUnit.SECONDS)).isEqualTo(ALICE);
+        }
+        assertThat(loaderThreads).containsExactly(first);
+    }
+
+    @Test
+    void redisTierIsCheckedBeforeTheDatabaseAndFilledFromIt() throws Exception {
+        when(redis.opsForValue()).thenReturn(values);
+        when(redis.execute(eq(UserProfileCache.WRITE_IF_CURRENT), anyList(), any(Object[].class))).thenReturn(1L);
+        UserProfileCache cache = cache(redis);
+
+        // Miss in Redis: loaded from the database and shared
+        when(values.multiGet(ALICE_KEYS)).thenReturn(Arrays.asList(null, null));
+        cache.get("alice", loader);
+        assertThat(loads).hasValue(1);
+        verify(redis).execute(UserProfileCache.WRITE_IF_CURRENT, ALICE_KEYS, "", mapper.writeValueAsString(ALICE),
+                "1800000");
+
+        // Another node's near cache is cold but Redis has it
+        when(values.multiGet(ALICE_KEYS)).thenReturn(Arrays.asList(mapper.writeValueAsString(ALICE), null));
+        cache.evict("alice");
+        verify(redis).execute(eq(UserProfileCache.INVALIDATE), eq(ALICE_KEYS), anyString(), eq("1800000"));
+        assertThat(cache.get("alice", loader)).isEqualTo(ALICE);
+        assertThat(loads).hasValue(1);
+        assertThat(meters.get("rtc.cache.users.redis").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meters.get("rtc.cache.users.redis").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void writeBackIsFencedWithTheTokenReadBeforeLoading() throws Exception {
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.multiGet(ALICE_KEYS)).thenReturn(Arrays.asList(null, "token-1"));
+        // Another node evicted while the row was being read: the token moved on and the write is refused
+        when(redis.execute(eq(UserProfileCache.WRITE_IF_CURRENT), anyList(), any(Object[].class))).thenReturn(0L);
+        UserProfileCache cache = cache(redis);
+
+        assertThat(cache.get("alice", loader)).isEqualTo(ALICE);
+
+        verify(redis).execute(UserProfileCache.WRITE_IF_CURRENT, ALICE_KEYS, "token-1",
+                mapper.writeValueAsString(ALICE), "1800000");
+        assertThat(meters.get("rtc.cache.users.redis").tag("result", "error").counter().count()).isZero();
+    }
+
+    @Test
+    void redisFailureFallsBackToTheDatabaseAndIsSkippedForAWhile() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.multiGet(anyList())).thenThrow(new RedisConnectionFailureException("refused"));
+        UserProfileCache cache = cache(redis);
+
+        assertThat(cache.get("alice", loader)).isEqualTo(ALICE);
+        assertThat(loads).hasValue(1);
+        verify(redis, never()).execute(eq(UserProfileCache.WRITE_IF_CURRENT), anyList(), any(Object[].class));
+
+        cache.evict("alice");
+        cache.get("alice", loader);
+        verify(values, times(1)).multiGet(anyList());
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        cache.evict("alice");
+        cache.get("alice", loader);
+        verify(values, times(2)).multiGet(anyList());
+        assertThat(meters.get("rtc.cache.users.redis").tag("result", "error").counter().count()).isEqualTo(2);
+    }
+
+    private UserProfileCache cache(StringRedisTemplate redis) {
+        return new UserProfileCache(redis, meters, 100, Duration.ofMinutes(1), Duration.ofMinutes(30),
+                Duration.ofSeconds(30), now::get);
+    }
+}
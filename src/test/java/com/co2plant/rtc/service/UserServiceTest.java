@@ -0,0 +1,83 @@
+package com.co2plant.rtc.service;
+
+import com.co2plant.rtc.domain.User;
+import com.co2plant.rtc.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// Not wrapped in a test transaction: eviction only happens once the service's own transaction commits
+@DataJpaTest
+@Import(UserService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserServiceTest {
+
+    @Autowired private UserService userService;
+    @Autowired private UserRepository userRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @MockitoBean private UserProfileCache profileCache;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void updateChangesOnlyTheGivenFieldsAndEvictsAfterCommit() {
+        userService.register("alice", "secret", "Alice", "R&D", "Engineer", "alice@example.com");
+
+        UserProfile updated = userService.update("alice", null, "Sales", null, "alice@sales.example.com");
+
+        assertThat(updated).isEqualTo(new UserProfile(updated.id(), "alice", "Alice", "Sales", "Engineer",
+                "alice@sales.example.com"));
+        User stored = userRepository.findByUserId("alice").orElseThrow();
+        assertThat(stored.getName()).isEqualTo("Alice");
+        assertThat(stored.getPosition()).isEqualTo("Engineer");
+        assertThat(stored.getEmail()).isEqualTo("alice@sales.example.com");
+        // Once for the registration, once for the update
+        verify(profileCache, times(2)).evict("alice");
+    }
+
+    @Test
+    void rolledBackChangesDoNotEvict() {
+        userService.register("bob", "secret", "Bob", null, null, null);
+        verify(profileCache).evict("bob");
+
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        outer.executeWithoutResult(status -> {
+            userService.update("bob", "Robert", null, null, null);
+            status.setRollbackOnly();
+        });
+        assertThatThrownBy(() -> userService.update("nobody", "Nobody", null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(userRepository.findByUserId("bob").orElseThrow().getName()).isEqualTo("Bob");
+        verify(profileCache).evict("bob");
+        verify(profileCache, never()).evict("nobody");
+    }
+
+    @Test
+    void registrationEvictsOnlyOnceCommitted() {
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        outer.executeWithoutResult(status -> {
+            userService.register("carol", "secret", "Carol", null, null, null);
+            verify(profileCache, never()).evict(anyString());
+        });
+
+        verify(profileCache).evict("carol");
+    }
+}
@@ -0,0 +1,47 @@
+package com.co2plant.rtc.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SignalDecoderTest {
+
+    private final SignalDecoder decoder = new SignalDecoder();
+
+    @Test
+    void decodesFieldsInAnyOrderAndSkipsUnknownOnes() {
+        SignalMessage message = decoder.decode(
+                "{\"extra\":{\"nested\":[1,2,{\"id\":\"x\"}]},\"room\":\"r1\",\"name\":\"alice\",\"id\":\"joinRoom\"}");
+
+        assertThat(message).isEqualTo(new SignalMessage.JoinRoom("r1", "alice", "user", false, null));
+    }
+
+    @Test
+    void decodesCandidateBatches() {
+        SignalMessage message = decoder.decode("{\"id\":\"onIceCandidates\",\"name\":\"bob\",\"candidates\":["
+                + "{\"candidate\":\"candidate:1\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0},"
+                + "{\"candidate\":\"candidate:2\",\"sdpMid\":null,\"sdpMLineIndex\":1}]}");
+
+        assertThat(message).isEqualTo(new SignalMessage.OnIceCandidates("bob", java.util.List.of(
+                new SignalMessage.Candidate("candidate:1", "0", 0, null),
+                new SignalMessage.Candidate("candidate:2", null, 1, null))));
+    }
+
+    @Test
+    void reportsMalformedAndUnknownMessages() {
+        assertThatThrownBy(() -> decoder.decode("{\"id\":\"joinRoom\""))
+                .isInstanceOf(SignalingException.class)
+                .extracting("code").isEqualTo(SignalingException.MALFORMED);
+        assertThatThrownBy(() -> decoder.decode("{\"id\":\"receiveVideoFrom\",\"sender\":\"bob\"}"))
+                .isInstanceOf(SignalingException.class)
+                .hasMessageContaining("sdpOffer")
+                .extracting("requestId").isEqualTo("receiveVideoFrom");
+        assertThatThrownBy(() -> decoder.decode("{\"id\":\"start\"}"))
+                .isInstanceOf(SignalingException.class)
+                .extracting("code").isEqualTo(SignalingException.UNKNOWN);
+        assertThatThrownBy(() -> decoder.decode("[]"))
+                .isInstanceOf(SignalingException.class)
+                .extracting("code").isEqualTo(SignalingException.MALFORMED);
+    }
+}
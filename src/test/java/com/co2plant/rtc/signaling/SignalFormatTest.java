@@ -0,0 +1,93 @@
+package com.co2plant.rtc.signaling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SignalFormatTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void cborFramesDecodeToTheSameMessagesAsJson() {
+        for (ObjectNode message : sampleMessages()) {
+            byte[] cbor = bytes(SignalFormat.CBOR.encode(message));
+
+            SignalMessage fromCbor = SignalFormat.CBOR.decoder().decode(cbor, 0, cbor.length);
+            SignalMessage fromJson = SignalFormat.JSON.decoder().decode(message.toString());
+
+            assertThat(fromCbor).isEqualTo(fromJson);
+            assertThat(SignalFormat.CBOR.toJson(cbor, 0, cbor.length)).isEqualTo(message.toString());
+        }
+    }
+
+    @Test
+    void formatFollowsTheAcceptedSubprotocol() {
+        WebSocketSession binary = mock(WebSocketSession.class);
+        when(binary.getAcceptedProtocol()).thenReturn("rtc.cbor");
+        WebSocketSession plain = mock(WebSocketSession.class);
+
+        assertThat(SignalFormat.of(binary)).isEqualTo(SignalFormat.CBOR);
+        assertThat(SignalFormat.of(plain)).isEqualTo(SignalFormat.JSON);
+        assertThat(SignalFormat.CBOR.fromJson("{\"id\":\"ping\"}")).isInstanceOf(BinaryMessage.class);
+        assertThat(SignalFormat.JSON.fromJson("{\"id\":\"ping\"}")).isInstanceOf(TextMessage.class);
+    }
+
+    @Test
+    void cborFramesAreSmallerOnTheWire() {
+        // Encode and decode cost per format is measured by SignalDecodeBenchmark
+        for (ObjectNode message : sampleMessages()) {
+            assertThat(bytes(SignalFormat.CBOR.encode(message)).length)
+                    .isLessThan(bytes(SignalFormat.JSON.encode(message)).length);
+        }
+    }
+
+    private List<ObjectNode> sampleMessages() {
+        ObjectNode join = mapper.createObjectNode();
+        join.put("id", "joinRoom");
+        join.put("name", "alice");
+        join.put("room", "weekly");
+        join.put("role", "manager");
+        join.put("iceBatching", true);
+
+        ObjectNode offer = mapper.createObjectNode();
+        offer.put("id", "receiveVideoFrom");
+        offer.put("sender", "bob");
+        offer.put("sdpOffer", "v=0\r\no=- 4611731400430051336 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n"
+                + "a=rtpmap:96 VP8/90000\r\na=rtcp-fb:96 nack pli\r\n".repeat(40));
+
+        ObjectNode candidates = mapper.createObjectNode();
+        candidates.put("id", "onIceCandidates");
+        candidates.put("name", "bob");
+        ArrayNode batch = candidates.putArray("candidates");
+        for (int i = 0; i < 4; i++) {
+            ObjectNode candidate = batch.addObject();
+            candidate.put("candidate", "candidate:" + i + " 1 udp 2122260223 192.168.1." + i + " 5400" + i + " typ host");
+            candidate.put("sdpMid", "0");
+            candidate.put("sdpMLineIndex", 0);
+        }
+        return List.of(join, offer, candidates);
+    }
+
+    private static byte[] bytes(WebSocketMessage<?> frame) {
+        if (frame instanceof TextMessage text) {
+            return text.asBytes();
+        }
+        ByteBuffer buffer = ((BinaryMessage) frame).getPayload().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ActiveSpeakerDetectorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void ranksPublishersBySmoothedAudioRate() {
+        UserSession quiet = participant("quiet");
+        UserSession loud = participant("loud");
+        UserSession medium = participant("medium");
+        long second = 1_000_000_000L;
+        for (UserSession user : List.of(quiet, loud, medium)) {
+            user.updateAudioActivity(0, 0);
+        }
+        quiet.updateAudioActivity(200, second);
+        loud.updateAudioActivity(8_000, second);
+        medium.updateAudioActivity(3_000, second);
+
+        assertThat(ActiveSpeakerDetector.rank(List.of(quiet, loud, medium), 2)).containsExactly("loud", "medium");
+    }
+
+    @Test
+    void publishersWithoutAudioAreRankedByVideoBehindAnyoneTalking() {
+        UserSession still = participant("static");
+        UserSession scrolling = participant("scrolling");
+        UserSession talking = participant("talking");
+        UserSession muted = participant("muted");
+        for (UserSession user : List.of(still, scrolling, talking, muted)) {
+            user.updateAudioActivity(0, 0);
+            user.updateVideoActivity(0, 0);
+        }
+        still.updateVideoActivity(5_000, SECOND);
+        scrolling.updateVideoActivity(200_000, SECOND);
+        talking.updateAudioActivity(8_000, SECOND);
+        talking.updateVideoActivity(1_000, SECOND);
+        // DTX trickle counts as silence, so the bigger picture change wins
+        muted.updateAudioActivity(300, SECOND);
+        muted.updateVideoActivity(100_000, SECOND);
+
+        assertThat(ActiveSpeakerDetector.rank(List.of(still, scrolling, talking, muted), 3))
+                .containsExactly("talking", "scrolling", "muted");
+    }
+
+    @Test
+    void smoothingDampsASingleBurst() {
+        UserSession user = participant("alice");
+        long second = 1_000_000_000L;
+        user.updateAudioActivity(0, 0);
+        user.updateAudioActivity(10_000, second);
+        user.updateAudioActivity(10_000, 2 * second);
+
+        assertThat(user.getAudioActivity()).isEqualTo(2_500.0);
+    }
+
+    @Test
+    void roomAnnouncesSpeakersOnlyWhenTheyChange() throws Exception {
+        SignalingProperties properties = SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 16)
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .build();
+        Room room = new Room("room", mock(MediaPipeline.class), properties);
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        room.join(SignalingFixtures.participant(room, "viewer",
+                new TestWebSocketSession("viewer", SignalingFixtures.json(frames)), properties,
+                mock(WebRtcEndpoint.class)));
+
+        room.applyActiveSpeakers(List.of("alice", "bob")).join();
+        room.applyActiveSpeakers(List.of("alice", "bob")).join();
+        room.applyActiveSpeakers(List.of("bob", "alice")).join();
+
+        waitUntil(() -> speakerFrames(frames).size() == 2);
+        assertThat(speakerFrames(frames))
+                .extracting(frame -> frame.get("speakers").toString())
+                .containsExactly("[\"alice\",\"bob\"]", "[\"bob\",\"alice\"]");
+        assertThat(room.getActiveSpeakers()).containsExactly("bob", "alice");
+    }
+
+    private List<JsonNode> speakerFrames(List<JsonNode> frames) {
+        return frames.stream()
+                .filter(frame -> frame.path("id").asText().equals("activeSpeakers"))
+                .toList();
+    }
+
+    private UserSession participant(String name) {
+        return SignalingFixtures.participant(name, "user", mock(WebRtcEndpoint.class));
+    }
+}
@@ -0,0 +1,113 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.signaling.SignalingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void burstPassesThenRefusalCarriesRetryHint() {
+        AdmissionControl admission = admission(limit(1, 3), limit(0, 1), limit(0, 1), Duration.ZERO);
+
+        for (int i = 0; i < 3; i++) {
+            admission.admit("s" + i, "room", "joinRoom");
+        }
+        assertThatThrownBy(() -> admission.admit("s3", "room", "joinRoom"))
+                .isInstanceOfSatisfying(SignalingException.class, busy -> {
+                    assertThat(busy.getCode()).isEqualTo(SignalingException.BUSY);
+                    assertThat(busy.getRequestId()).isEqualTo("joinRoom");
+                    assertThat(busy.getRetryAfter()).isEqualTo(Duration.ofSeconds(1));
+                });
+        assertThat(meters.get("rtc.admission.rejected").tag("scope", "node").counter().count()).isEqualTo(1);
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        admission.admit("s3", "room", "joinRoom");
+    }
+
+    @Test
+    void roomsAndSessionsHaveTheirOwnBuckets() {
+        AdmissionControl admission = admission(limit(0, 1), limit(1, 2), limit(1, 1), Duration.ZERO);
+
+        admission.admit("alice", "a", "joinRoom");
+        assertThatThrownBy(() -> admission.admit("alice", "a", "receiveVideoFrom"))
+                .isInstanceOf(SignalingException.class);
+        assertThat(meters.get("rtc.admission.rejected").tag("scope", "session").counter().count()).isEqualTo(1);
+
+        admission.admit("bob", "a", "joinRoom");
+        assertThatThrownBy(() -> admission.admit("carol", "a", "joinRoom"))
+                .isInstanceOf(SignalingException.class);
+        assertThat(meters.get("rtc.admission.rejected").tag("scope", "room").counter().count()).isEqualTo(1);
+
+        // Another room is not affected
+        admission.admit("carol", "b", "joinRoom");
+    }
+
+    @Test
+    void shortWaitsAreQueuedInsteadOfRefused() {
+        // 1000/s: each extra request is lined up one millisecond after the previous one
+        AdmissionControl admission = admission(limit(1000, 1), limit(0, 1), limit(0, 1), Duration.ofMillis(50));
+
+        for (int i = 0; i < 10; i++) {
+            admission.admit("s" + i, "room", "joinRoom");
+        }
+
+        assertThat(meters.get("rtc.admission.admitted").counter().count()).isEqualTo(1);
+        assertThat(meters.get("rtc.admission.delayed").counter().count()).isEqualTo(9);
+        assertThat(meters.get("rtc.admission.wait").timer().max(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(8);
+        assertThat(admission.getWaiting()).isZero();
+    }
+
+    @Test
+    void limitsCanBeChangedAtRuntime() {
+        AdmissionControl admission = admission(limit(0, 1), limit(1, 1), limit(0, 1), Duration.ZERO);
+        admission.admit("alice", "a", "joinRoom");
+        assertThatThrownBy(() -> admission.admit("bob", "a", "joinRoom"))
+                .isInstanceOf(SignalingException.class);
+
+        admission.setLimit(AdmissionControl.Scope.ROOM, limit(0, 1));
+        admission.admit("bob", "a", "joinRoom");
+
+        assertThat(meters.get("rtc.admission.rate").tag("scope", "room").gauge().value()).isZero();
+        AdmissionEndpoint endpoint = new AdmissionEndpoint(admission);
+        endpoint.update("room", 5, 10);
+        assertThat(meters.get("rtc.admission.rate").tag("scope", "room").gauge().value()).isEqualTo(5);
+        assertThat(endpoint.limits()).containsEntry("room", Map.of("rate", 5.0, "burst", 10));
+    }
+
+    @Test
+    void refilledBucketsArePruned() {
+        AdmissionControl admission = admission(limit(0, 1), limit(10, 5), limit(10, 5), Duration.ZERO);
+        admission.admit("alice", "a", "joinRoom");
+        admission.pruneIdleBuckets();
+        assertThat(admission.getBucketCount()).isEqualTo(2);
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        admission.pruneIdleBuckets();
+        assertThat(admission.getBucketCount()).isZero();
+    }
+
+    private AdmissionControl admission(TokenBucket.Limit node, TokenBucket.Limit room, TokenBucket.Limit session,
+                                       Duration maxWait) {
+        return new AdmissionControl(meters, true, Map.of(
+                AdmissionControl.Scope.NODE, node,
+                AdmissionControl.Scope.ROOM, room,
+                AdmissionControl.Scope.SESSION, session), maxWait, 100, now::get);
+    }
+
+    private static TokenBucket.Limit limit(double rate, int burst) {
+        return new TokenBucket.Limit(rate, burst);
+    }
+}
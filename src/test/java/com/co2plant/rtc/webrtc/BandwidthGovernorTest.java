@@ -0,0 +1,129 @@
+package com.co2plant.rtc.webrtc;
+
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.util.List;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BandwidthGovernorTest {
+
+    private final BandwidthGovernor governor = new BandwidthGovernor(mock(KmsCluster.class), true,
+            100, 2500, 6000, 4000, 1000, false, 0);
+
+    @Test
+    void splitsTheSubscriberBudgetOverMeshStreams() {
+        UserSession user = publisher("alice");
+
+        assertThat(governor.limitsFor(RoomMode.MESH, user, 2, 1.0).subscribeMaxKbps()).isEqualTo(2500);
+        assertThat(governor.limitsFor(RoomMode.MESH, user, 5, 1.0).subscribeMaxKbps()).isEqualTo(1500);
+        assertThat(governor.limitsFor(RoomMode.MESH, user, 101, 1.0).subscribeMaxKbps()).isEqualTo(100);
+        assertThat(governor.limitsFor(RoomMode.MESH, user, 5, 1.0).publishMaxKbps()).isEqualTo(1500);
+    }
+
+    @Test
+    void lastNBoundsTheStreamCount() {
+        BandwidthGovernor lastN = new BandwidthGovernor(mock(KmsCluster.class), true,
+                100, 2500, 6000, 4000, 1000, false, 4);
+        UserSession user = publisher("alice");
+
+        assertThat(lastN.limitsFor(RoomMode.MESH, user, 50, 1.0).subscribeMaxKbps()).isEqualTo(1500);
+    }
+
+    @Test
+    void hubRoomsReceiveOneStreamAndPresentersGetTheirOwnCap() {
+        UserSession viewer = participant("viewer", "user", null);
+        UserSession presenter = participant("host", Room.PRESENTER_ROLE, mock(WebRtcEndpoint.class));
+
+        assertThat(governor.limitsFor(RoomMode.BROADCAST, viewer, 1, 1.0).subscribeMaxKbps()).isEqualTo(2500);
+        assertThat(governor.limitsFor(RoomMode.BROADCAST, presenter, 1, 1.0).publishMaxKbps()).isEqualTo(4000);
+        assertThat(governor.limitsFor(RoomMode.COMPOSITE, viewer, 12, 1.0).publishMaxKbps()).isEqualTo(500);
+    }
+
+    @Test
+    void onlyParticipantsSendingVideoCountAsMeshPublishers() throws Exception {
+        BandwidthGovernor governor = new BandwidthGovernor(mock(KmsCluster.class), true,
+                100, 10_000, 6000, 4000, 1000, false, 0);
+        Room room = new Room("room", mock(MediaPipeline.class), List.of(), List.of(governor),
+                SignalingFixtures.properties().build(), RoomMode.MESH) {
+            @Override
+            WebRtcEndpoint takeOutgoingEndpoint() {
+                return answering(mock(WebRtcEndpoint.class));
+            }
+        };
+        UserSession alice = room.join("alice", "user", new TestWebSocketSession("alice"));
+        UserSession bob = room.join("bob", "user", new TestWebSocketSession("bob"));
+        UserSession carol = room.join("carol", "user", new TestWebSocketSession("carol"));
+        room.join("dave", "user", new TestWebSocketSession("dave"));
+
+        for (UserSession sender : List.of(alice, bob)) {
+            sender.receiveFromClient("offer");
+            room.publisherReady(sender);
+        }
+
+        // Carol and Dave have endpoints but send nothing, so they do not take a share of anyone's budget
+        waitUntil(() -> carol.getBandwidth() != null && carol.getBandwidth().subscribeMaxKbps() == 3000);
+        assertThat(alice.getBandwidth().subscribeMaxKbps()).isEqualTo(6000);
+    }
+
+    @Test
+    void scalesDownAboveTheLoadWatermark() {
+        assertThat(BandwidthGovernor.loadScale(0.5)).isEqualTo(1.0);
+        assertThat(BandwidthGovernor.loadScale(0.875)).isEqualTo(0.75);
+        assertThat(BandwidthGovernor.loadScale(3.0)).isEqualTo(0.5);
+
+        KmsNode node = mock(KmsNode.class);
+        when(node.getEndpointCount()).thenReturn(500);
+        when(node.getUsedCpu()).thenReturn(90f);
+        assertThat(governor.nodeLoad(node)).isEqualTo(0.9);
+        assertThat(governor.nodeLoad(null)).isZero();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void appliesLimitsOnlyWhenTheyChange() {
+        WebRtcEndpoint outgoing = mock(WebRtcEndpoint.class);
+        UserSession user = participant("alice", "user", outgoing);
+        BandwidthLimits limits = new BandwidthLimits(100, 1500, 100, 1500, 0);
+
+        user.applyBandwidth(limits);
+        user.applyBandwidth(new BandwidthLimits(100, 1500, 100, 1500, 0));
+
+        verify(outgoing, times(1)).setMaxVideoRecvBandwidth(eq(1500), any(Continuation.class));
+        verify(outgoing, times(1)).setMinVideoRecvBandwidth(anyInt(), any(Continuation.class));
+        assertThat(user.getBandwidth()).isEqualTo(limits);
+    }
+
+    private UserSession publisher(String name) {
+        UserSession user = participant(name, "user", answering(mock(WebRtcEndpoint.class)));
+        user.receiveFromClient("offer");
+        assertThat(user.isPublishing()).isTrue();
+        return user;
+    }
+
+    @SuppressWarnings("unchecked")
+    private WebRtcEndpoint answering(WebRtcEndpoint outgoing) {
+        doAnswer(invocation -> {
+            invocation.<Continuation<String>>getArgument(1).onSuccess("answer");
+            return null;
+        }).when(outgoing).processOffer(anyString(), any(Continuation.class));
+        return outgoing;
+    }
+
+    private UserSession participant(String name, String role, WebRtcEndpoint outgoing) {
+        return SignalingFixtures.participant(name, role, outgoing);
+    }
+}
@@ -0,0 +1,130 @@
+package com.co2plant.rtc.webrtc;
+
+import org.junit.jupiter.api.Test;
+import org.kurento.client.IceCandidate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandidateBufferTest {
+
+    @Test
+    void replaysInArrivalOrderThenPassesThrough() {
+        CandidateBuffer buffer = new CandidateBuffer(4, 16, Duration.ofSeconds(30));
+        for (int i = 0; i < 5; i++) {
+            assertThat(buffer.offer("alice", candidate(i))).isTrue();
+        }
+        assertThat(buffer.getBufferedBytes()).isPositive();
+
+        List<String> replayed = new ArrayList<>();
+        assertThat(buffer.open("alice", c -> replayed.add(c.getCandidate()))).isEqualTo(5);
+
+        assertThat(replayed).containsExactly("candidate:0", "candidate:1", "candidate:2", "candidate:3",
+                "candidate:4");
+        assertThat(buffer.getBufferedBytes()).isZero();
+        assertThat(buffer.offer("alice", candidate(5))).isFalse();
+    }
+
+    @Test
+    void concurrentOffersNeverOvertakeReplay() throws Exception {
+        CandidateBuffer buffer = new CandidateBuffer(4, 10_000, Duration.ofSeconds(30));
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        producer.submit(() -> {
+            started.countDown();
+            for (int i = 0; i < 2_000; i++) {
+                IceCandidate c = candidate(i);
+                if (!buffer.offer("alice", c)) {
+                    delivered.add(c.getCandidate());
+                }
+            }
+        });
+        started.await();
+        buffer.open("alice", c -> delivered.add(c.getCandidate()));
+        producer.shutdown();
+        assertThat(producer.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(delivered).hasSize(2_000);
+        for (int i = 0; i < delivered.size(); i++) {
+            assertThat(delivered.get(i)).isEqualTo("candidate:" + i);
+        }
+    }
+
+    @Test
+    void candidatesOfferedWhilePurgingAreNotLost() throws Exception {
+        CandidateBuffer buffer = new CandidateBuffer(10_000, 16, Duration.ofSeconds(30));
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread purger = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                buffer.purgeExpired();
+            }
+        });
+        try {
+            // A fresh peer is empty, so the purger may remove it between lookup and lock in offer
+            for (int i = 0; i < 5_000; i++) {
+                String peer = "peer" + i;
+                assertThat(buffer.offer(peer, candidate(i))).isTrue();
+                assertThat(buffer.open(peer, c -> { })).as(peer).isEqualTo(1);
+            }
+        } finally {
+            running.set(false);
+            purger.join();
+        }
+    }
+
+    @Test
+    void rejectsBeyondBounds() {
+        CandidateBuffer buffer = new CandidateBuffer(1, 2, Duration.ofSeconds(30));
+        buffer.offer("alice", candidate(0));
+        buffer.offer("alice", candidate(1));
+        buffer.offer("alice", candidate(2));
+        buffer.offer("bob", candidate(0));
+
+        assertThat(buffer.getRejectedCount()).isEqualTo(2);
+        assertThat(buffer.open("alice", c -> { })).isEqualTo(2);
+        assertThat(buffer.open("bob", c -> { })).isZero();
+    }
+
+    @Test
+    void expiresStaleCandidates() throws Exception {
+        CandidateBuffer buffer = new CandidateBuffer(4, 16, Duration.ofMillis(20));
+        buffer.offer("alice", candidate(0));
+        buffer.offer("bob", candidate(0));
+        Thread.sleep(50);
+        buffer.offer("alice", candidate(1));
+
+        buffer.purgeExpired();
+
+        assertThat(buffer.getExpiredCount()).isEqualTo(2);
+        List<String> replayed = new ArrayList<>();
+        buffer.open("alice", c -> replayed.add(c.getCandidate()));
+        assertThat(replayed).containsExactly("candidate:1");
+        assertThat(buffer.getBufferedBytes()).isZero();
+    }
+
+    @Test
+    void resetPeerBuffersAgain() {
+        CandidateBuffer buffer = new CandidateBuffer(4, 16, Duration.ofSeconds(30));
+        buffer.open("alice", c -> { });
+        buffer.reset("alice");
+
+        assertThat(buffer.offer("alice", candidate(0))).isTrue();
+        buffer.clear();
+        assertThat(buffer.getBufferedBytes()).isZero();
+    }
+
+    private IceCandidate candidate(int i) {
+        return new IceCandidate("candidate:" + i, "0", 0);
+    }
+}
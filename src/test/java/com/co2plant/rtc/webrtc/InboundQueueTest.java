@@ -0,0 +1,96 @@
+package com.co2plant.rtc.webrtc;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InboundQueueTest {
+
+    private final Timer delay = new SimpleMeterRegistry().timer("delay");
+
+    @Test
+    void runsTasksInOrderOffTheCallingThread() throws Exception {
+        List<Integer> ran = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("s1", 100, delay);
+
+        for (int i = 0; i < 50; i++) {
+            final int n = i;
+            assertThat(queue.offer(() -> {
+                threads.add(Thread.currentThread());
+                ran.add(n);
+            })).isTrue();
+        }
+        queue.closeWith(() -> { });
+        waitUntil(() -> !queue.isWorkerAlive());
+
+        assertThat(ran).hasSize(50).isSorted();
+        assertThat(threads).allMatch(Thread::isVirtual).doesNotContain(Thread.currentThread());
+        assertThat(delay.count()).isEqualTo(51);
+    }
+
+    @Test
+    void rejectsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InboundQueue queue = new InboundQueue("s1", 2, delay);
+        queue.offer(() -> await(release)); // taken by the worker and blocked
+        waitUntil(() -> queue.getDepth() == 0);
+
+        assertThat(queue.offer(() -> { })).isTrue();
+        assertThat(queue.offer(() -> { })).isTrue();
+        assertThat(queue.offer(() -> { })).isFalse();
+
+        release.countDown();
+        waitUntil(() -> queue.getDepth() == 0);
+        assertThat(queue.offer(() -> { })).isTrue();
+        queue.closeWith(() -> { });
+        waitUntil(() -> !queue.isWorkerAlive());
+    }
+
+    @Test
+    void closeRunsLastEvenWhenFullAndRejectsLaterOffers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("s1", 1, delay);
+        queue.offer(() -> await(release));
+        waitUntil(() -> queue.getDepth() == 0);
+        queue.offer(() -> ran.add("message"));
+
+        queue.closeWith(() -> ran.add("leave"));
+        assertThat(queue.offer(() -> ran.add("late"))).isFalse();
+
+        release.countDown();
+        waitUntil(() -> !queue.isWorkerAlive());
+        assertThat(ran).containsExactly("message", "leave");
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWorker() throws Exception {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("s1", 10, delay);
+        queue.offer(() -> {
+            throw new IllegalStateException("boom");
+        });
+        queue.offer(() -> ran.add("next"));
+        queue.closeWith(() -> { });
+
+        waitUntil(() -> !queue.isWorkerAlive());
+        assertThat(ran).containsExactly("next");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.ServerManager;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class KmsClusterTest {
+
+    private final SignalingProperties properties = SignalingFixtures.properties()
+            .set(SignalingProperties::setOutboundCapacity, 16)
+            .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+            .build();
+
+    @Test
+    void newRoomsGoToLeastLoadedNode() throws Exception {
+        KmsNode first = node("ws://kms1");
+        KmsNode second = node("ws://kms2");
+        KmsCluster cluster = new KmsCluster(List.of(first, second), KmsCluster.PlacementStrategy.ENDPOINTS);
+        RoomManager roomManager = new RoomManager(cluster, properties);
+
+        Room busy = roomManager.acquireRoom("busy");
+        busy.join(participant("alice", busy));
+        busy.join(participant("bob", busy));
+
+        // Ties go to the first node, so "busy" landed there and now holds two endpoints
+        assertThat(first.getEndpointCount()).isEqualTo(2);
+
+        roomManager.acquireRoom("quiet");
+        assertThat(second.getPipelineCount()).isEqualTo(1);
+
+        roomManager.removeRoom(busy);
+        assertThat(first.getPipelineCount()).isZero();
+    }
+
+    @Test
+    void failingNodeIsSkipped() {
+        KmsNode broken = node("ws://broken");
+        when(broken.getClient().createMediaPipeline()).thenThrow(new IllegalStateException("down"));
+        KmsNode healthy = node("ws://healthy");
+        KmsCluster cluster = new KmsCluster(List.of(broken, healthy), KmsCluster.PlacementStrategy.PIPELINES);
+
+        KmsCluster.Placement placement = cluster.createPipeline("room");
+
+        assertThat(placement.node()).isSameAs(healthy);
+    }
+
+    @Test
+    void unsampledNodesRankAfterSampledOnes() {
+        KmsNode sampled = node("ws://sampled");
+        ServerManager serverManager = mock(ServerManager.class);
+        when(serverManager.getUsedCpu(anyInt())).thenReturn(90f);
+        when(sampled.getClient().getServerManager()).thenReturn(serverManager);
+        KmsNode broken = node("ws://broken");
+        when(broken.getClient().getServerManager()).thenThrow(new IllegalStateException("no stats"));
+        KmsCluster cluster = new KmsCluster(List.of(broken, sampled), KmsCluster.PlacementStrategy.CPU);
+
+        cluster.sampleServerStats();
+
+        assertThat(cluster.nodesByLoad()).containsExactly(sampled, broken);
+    }
+
+    @Test
+    void statsArePerNode() {
+        KmsCluster cluster = new KmsCluster(List.of(node("ws://kms1"), node("ws://kms2")), null);
+        assertThat(cluster.getStats()).extracting(KmsNode.NodeStats::url).containsExactly("ws://kms1", "ws://kms2");
+    }
+
+    private KmsNode node(String url) {
+        KurentoClient client = mock(KurentoClient.class);
+        when(client.createMediaPipeline()).thenAnswer(invocation -> mock(MediaPipeline.class));
+        return new KmsNode(url, client);
+    }
+
+    private UserSession participant(String name, Room room) {
+        return SignalingFixtures.participant(room, name, new TestWebSocketSession(name), properties,
+                mock(WebRtcEndpoint.class));
+    }
+}
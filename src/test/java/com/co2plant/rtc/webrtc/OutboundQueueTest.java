@@ -0,0 +1,128 @@
+package com.co2plant.rtc.webrtc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OutboundQueueTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void slowConsumerDoesNotBlockProducers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WebSocketSession session = blockingSession(release, written);
+
+        OutboundQueue queue = new OutboundQueue(session, 4, OutboundQueue.OverflowPolicy.DROP);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            queue.offer("{\"n\":" + i + "}");
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+        assertThat(queue.getStats().dropped()).isPositive();
+
+        release.countDown();
+        queue.close();
+        waitForDrain(queue);
+        assertThat(written).startsWith("{\"n\":0}");
+    }
+
+    @Test
+    void coalescesQueuedIceCandidatesOnOverflow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WebSocketSession session = blockingSession(release, written);
+
+        OutboundQueue queue = new OutboundQueue(session, 3, OutboundQueue.OverflowPolicy.COALESCE_ICE);
+        queue.offer("{\"id\":\"first\"}"); // picked up by the drainer and blocked
+        waitUntil(() -> queue.getDepth() == 0);
+        queue.offerIceCandidate("alice", candidate(1));
+        queue.offerIceCandidate("alice", candidate(2));
+        queue.offerIceCandidate("alice", candidate(3));
+        assertThat(queue.offer("{\"id\":\"answer\"}")).isTrue();
+
+        release.countDown();
+        queue.close();
+        waitForDrain(queue);
+
+        assertThat(written).hasSize(3);
+        assertThat(mapper.readTree(written.get(1)).get("id").asText()).isEqualTo("iceCandidates");
+        assertThat(mapper.readTree(written.get(1)).get("candidates")).hasSize(3);
+        assertThat(queue.getStats().coalesced()).isEqualTo(2);
+    }
+
+    @Test
+    void disconnectsSlowConsumer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WebSocketSession session = blockingSession(release, new CopyOnWriteArrayList<>());
+
+        OutboundQueue queue = new OutboundQueue(session, 1, OutboundQueue.OverflowPolicy.DISCONNECT);
+        queue.offer("a");
+        waitUntil(() -> queue.getDepth() == 0);
+        queue.offer("b");
+        assertThat(queue.offer("c")).isFalse();
+
+        verify(session, timeout(1_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    @Test
+    void batchesCandidatesPerConnectionWithinWindow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WebSocketSession session = blockingSession(release, written);
+        release.countDown();
+
+        OutboundQueue queue = new OutboundQueue(session, 16, OutboundQueue.OverflowPolicy.DROP);
+        queue.enableIceBatching(java.time.Duration.ofMillis(50));
+        for (int i = 0; i < 5; i++) {
+            queue.offerIceCandidate("alice", candidate(i));
+            queue.offerIceCandidate("bob", candidate(i));
+        }
+        waitUntil(() -> written.size() == 2);
+
+        for (String frame : written) {
+            assertThat(mapper.readTree(frame).get("candidates")).hasSize(5);
+        }
+        assertThat(queue.getStats().iceCandidates()).isEqualTo(10);
+        assertThat(queue.getStats().sent()).isEqualTo(2);
+    }
+
+    private WebSocketSession blockingSession(CountDownLatch release, List<String> written) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            release.await();
+            written.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private ObjectNode candidate(int i) {
+        ObjectNode candidate = mapper.createObjectNode();
+        candidate.put("candidate", "candidate:" + i);
+        candidate.put("sdpMid", "0");
+        candidate.put("sdpMLineIndex", 0);
+        return candidate;
+    }
+
+    private void waitForDrain(OutboundQueue queue) throws InterruptedException {
+        waitUntil(() -> !queue.isDrainerAlive());
+    }
+}
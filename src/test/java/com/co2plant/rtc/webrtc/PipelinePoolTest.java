@@ -0,0 +1,65 @@
+package com.co2plant.rtc.webrtc;
+
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+
+import java.time.Duration;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PipelinePoolTest {
+
+    @Test
+    void takesWarmPipelineAndRefillsInBackground() throws Exception {
+        KurentoClient client = client();
+        PipelinePool pool = new PipelinePool("ws://kms", client, 2, 0, Duration.ofMinutes(1));
+
+        assertThat(pool.take()).isNull(); // cold pool, kicks off the refill
+        waitUntil(() -> pool.getIdleCount() == 2);
+
+        PipelinePool.WarmPipeline warm = pool.take();
+        assertThat(warm).isNotNull();
+        waitUntil(() -> pool.getIdleCount() == 2);
+        verify(client, times(3)).createMediaPipeline();
+    }
+
+    @Test
+    void expiredEntriesAreReleasedInsteadOfHandedOut() throws Exception {
+        KurentoClient client = client();
+        MediaPipeline stale = mock(MediaPipeline.class);
+        when(client.createMediaPipeline()).thenReturn(stale).thenAnswer(invocation -> mock(MediaPipeline.class));
+        PipelinePool pool = new PipelinePool("ws://kms", client, 1, 0, Duration.ofMillis(20));
+        pool.maintain();
+        waitUntil(() -> pool.getIdleCount() == 1);
+        Thread.sleep(50);
+
+        assertThat(pool.take()).isNull();
+        verify(stale).release(any(Continuation.class));
+    }
+
+    @Test
+    void maintainEvictsAfterTtl() throws Exception {
+        KurentoClient client = client();
+        MediaPipeline first = mock(MediaPipeline.class);
+        when(client.createMediaPipeline()).thenReturn(first).thenAnswer(invocation -> mock(MediaPipeline.class));
+        PipelinePool pool = new PipelinePool("ws://kms", client, 1, 0, Duration.ofMillis(20));
+        pool.maintain();
+        waitUntil(() -> pool.getIdleCount() == 1);
+        Thread.sleep(50);
+
+        pool.maintain();
+
+        verify(first).release(any(Continuation.class));
+    }
+
+    private KurentoClient client() {
+        KurentoClient client = mock(KurentoClient.class);
+        when(client.createMediaPipeline()).thenAnswer(invocation -> mock(MediaPipeline.class));
+        return client;
+    }
+}
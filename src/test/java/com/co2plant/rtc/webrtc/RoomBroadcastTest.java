@@ -0,0 +1,70 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RoomBroadcastTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void broadcastSharesOneFrameAndReportsFailures() throws Exception {
+        SignalingProperties properties = properties(4);
+        Room room = new Room("room", mock(MediaPipeline.class), properties);
+        Set<WebSocketMessage<?>> frames = identitySet();
+
+        for (int i = 0; i < 10; i++) {
+            room.join(participant("user" + i, room, properties, frames));
+        }
+        // A closed queue rejects everything, standing in for a failed recipient
+        room.getParticipant("user3").getOutbound().close();
+        // userN got existingParticipants and one newParticipantArrived per later joiner
+        waitUntil(() -> IntStream.range(0, 10).allMatch(i -> sent(room, "user" + i) == 10 - i));
+        frames.clear();
+
+        ObjectNode message = mapper.createObjectNode();
+        message.put("id", "ping");
+        Room.BroadcastResult result = room.broadcast(message, "user0");
+
+        assertThat(result.delivered()).isEqualTo(8);
+        assertThat(result.failed()).containsExactly("user3");
+        waitUntil(() -> IntStream.range(1, 10).filter(i -> i != 3).allMatch(i -> sent(room, "user" + i) == 11 - i));
+        assertThat(frames).hasSize(1); // all recipients got the very same frame instance
+    }
+
+    private UserSession participant(String name, Room room, SignalingProperties properties,
+                                    Set<WebSocketMessage<?>> frames) {
+        return SignalingFixtures.participant(room, name, new TestWebSocketSession(name, frames::add), properties,
+                mock(WebRtcEndpoint.class));
+    }
+
+    private long sent(Room room, String user) {
+        return room.getParticipant(user).getOutbound().getStats().sent();
+    }
+
+    private Set<WebSocketMessage<?>> identitySet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private SignalingProperties properties(int parallelThreshold) {
+        return SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 4096)
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .set(SignalingProperties::setBroadcastParallelThreshold, parallelThreshold)
+                .build();
+    }
+}
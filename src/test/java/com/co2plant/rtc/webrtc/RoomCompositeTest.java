@@ -0,0 +1,133 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Composite;
+import org.kurento.client.Continuation;
+import org.kurento.client.Hub;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RoomCompositeTest {
+
+    private final Map<String, List<JsonNode>> received = new ConcurrentHashMap<>();
+
+    @Test
+    void meshRoomSwitchesToCompositeAboveThreshold() throws Exception {
+        SignalingProperties properties = properties(3);
+        Room room = room(properties, RoomMode.MESH);
+
+        for (int i = 0; i < 3; i++) {
+            room.join(participant("user" + i, room, properties));
+        }
+        assertThat(room.getMode()).isEqualTo(RoomMode.MESH);
+
+        room.join(participant("user3", room, properties));
+        assertThat(room.getMode()).isEqualTo(RoomMode.COMPOSITE);
+
+        waitUntil(() -> IntStream.range(0, 4).allMatch(i -> ids("user" + i).contains("roomMode")));
+        JsonNode modeMsg = messages("user0", "roomMode").get(0);
+        assertThat(modeMsg.get("stream").asText()).isEqualTo(Room.MIXED_STREAM);
+    }
+
+    @Test
+    void compositeRoomOffersOnlyTheMixedStream() throws Exception {
+        SignalingProperties properties = properties(0);
+        Room room = room(properties, RoomMode.COMPOSITE);
+
+        room.join(participant("alice", room, properties));
+        room.join(participant("bob", room, properties));
+        // Queued behind anything the joins sent, so once it is in everything before it is too
+        room.broadcast(ping(), null);
+
+        waitUntil(() -> ids("alice").contains("ping") && ids("bob").contains("ping"));
+        JsonNode existing = messages("bob", "existingParticipants").get(0);
+        assertThat(existing.get("mode").asText()).isEqualTo("COMPOSITE");
+        assertThat(existing.get("data")).hasSize(1);
+        assertThat(existing.get("data").get(0).get("name").asText()).isEqualTo(Room.MIXED_STREAM);
+        // Nobody is asked to subscribe to a newcomer
+        assertThat(ids("alice")).doesNotContain("newParticipantArrived");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void recycledPipelineKeepsNoHub() throws Exception {
+        SignalingProperties properties = properties(0);
+        Composite mixer = mock(Composite.class);
+        Room room = new Room("room", mock(MediaPipeline.class), List.of(), List.of(), properties,
+                RoomMode.COMPOSITE) {
+            @Override
+            Hub createHub(RoomMode mode) {
+                return mixer;
+            }
+        };
+        UserSession alice = participant("alice", room, properties);
+        room.join(alice);
+        room.leave(alice);
+        room.retire();
+
+        PipelinePool pool = new PipelinePool("ws://kms", mock(KurentoClient.class), 1, 0, Duration.ofMinutes(1));
+        assertThat(pool.recycle(room)).isTrue();
+
+        verify(mixer).release(any(Continuation.class));
+        assertThat(pool.take().pipeline()).isSameAs(room.getPipeline());
+    }
+
+    private Room room(SignalingProperties properties, RoomMode mode) {
+        return new Room("room", mock(MediaPipeline.class), List.of(), List.of(), properties, mode) {
+            @Override
+            Hub createHub(RoomMode mode) {
+                return mock(Composite.class);
+            }
+        };
+    }
+
+    private UserSession participant(String name, Room room, SignalingProperties properties) {
+        List<JsonNode> messages = new CopyOnWriteArrayList<>();
+        received.put(name, messages);
+        TestWebSocketSession session = new TestWebSocketSession(name, SignalingFixtures.json(messages));
+        return SignalingFixtures.participant(room, name, session, properties, mock(WebRtcEndpoint.class));
+    }
+
+    private ObjectNode ping() {
+        ObjectNode ping = JsonNodeFactory.instance.objectNode();
+        ping.put("id", "ping");
+        return ping;
+    }
+
+    private List<String> ids(String user) {
+        List<String> ids = new ArrayList<>();
+        for (JsonNode message : received.get(user)) {
+            ids.add(message.get("id").asText());
+        }
+        return ids;
+    }
+
+    private List<JsonNode> messages(String user, String id) {
+        return received.get(user).stream().filter(m -> id.equals(m.get("id").asText())).toList();
+    }
+
+    private SignalingProperties properties(int compositeThreshold) {
+        return SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 64)
+                .set(SignalingProperties::setCompositeThreshold, compositeThreshold)
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package com.co2plant.rtc.webrtc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoomMailboxTest {
+
+    @Test
+    void commandsFromManyThreadsNeverOverlapAndKeepPerSenderOrder() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<List<Integer>> seen = new ArrayList<>();
+        RoomMailbox mailbox = new RoomMailbox("room", () -> { });
+
+        int senders = 16;
+        int perSender = 200;
+        for (int s = 0; s < senders; s++) {
+            seen.add(new ArrayList<>()); // only touched from the mailbox
+        }
+        CyclicBarrier start = new CyclicBarrier(senders);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < senders; s++) {
+                final int sender = s;
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perSender; i++) {
+                        final int n = i;
+                        CompletableFuture<Integer> result = mailbox.submit(() -> {
+                            if (running.incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            seen.get(sender).add(n);
+                            running.decrementAndGet();
+                            return n;
+                        });
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(overlaps).hasValue(0);
+        for (List<Integer> sender : seen) {
+            assertThat(sender).hasSize(perSender).isSorted();
+        }
+        RoomMailbox.Stats stats = mailbox.getStats();
+        assertThat(stats.commands()).isEqualTo(senders * perSender);
+        // Commands that piled up while a tick ran were taken together
+        assertThat(stats.ticks()).isLessThan(stats.commands());
+        assertThat(stats.maxBatch()).isGreaterThan(1);
+    }
+
+    @Test
+    void endOfTickRunsBeforeResultsArePublished() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ticks = new AtomicInteger();
+        RoomMailbox mailbox = new RoomMailbox("room", ticks::incrementAndGet);
+
+        CompletableFuture<Void> blocker = mailbox.submit(() -> {
+            await(release);
+            return null;
+        });
+        List<CompletableFuture<Integer>> burst = new ArrayList<>();
+        waitUntil(() -> mailbox.getPending() == 0);
+        for (int i = 0; i < 10; i++) {
+            burst.add(mailbox.submit(ticks::get));
+        }
+        assertThat(mailbox.getPending()).isEqualTo(10);
+
+        release.countDown();
+        blocker.get(2, TimeUnit.SECONDS);
+        for (CompletableFuture<Integer> result : burst) {
+            // All ten ran in the second tick, before its end-of-tick hook
+            assertThat(result.get(2, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        waitUntil(() -> ticks.get() == 2);
+    }
+
+    @Test
+    void nestedCallsRunInline() throws Exception {
+        RoomMailbox mailbox = new RoomMailbox("room", () -> { });
+
+        int result = mailbox.call(() -> mailbox.call(() -> mailbox.submit(() -> 42).join()));
+
+        assertThat(result).isEqualTo(42);
+        assertThat(mailbox.inMailbox()).isFalse();
+    }
+
+    @Test
+    void failuresReachTheCallerAndDoNotStopTheMailbox() throws Exception {
+        RoomMailbox mailbox = new RoomMailbox("room", () -> { });
+
+        assertThatThrownBy(() -> mailbox.call(() -> {
+            throw new IOException("socket gone");
+        })).isInstanceOf(IOException.class).hasMessage("socket gone");
+        assertThatThrownBy(() -> mailbox.call(() -> {
+            throw new IllegalStateException("bad state");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(mailbox.call(() -> "still running")).isEqualTo("still running");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
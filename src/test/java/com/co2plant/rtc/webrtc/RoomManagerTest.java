@@ -0,0 +1,155 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RoomManagerTest {
+
+    @Test
+    void concurrentJoinsCreateOnePipeline() throws Exception {
+        KurentoClient client = client();
+        RoomManager roomManager = roomManager(client, Duration.ofSeconds(30));
+
+        int joiners = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        Set<Room> seen = ConcurrentHashMap.newKeySet();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < joiners; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    seen.add(roomManager.acquireRoom("room"));
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(seen).hasSize(1);
+        assertThat(seen.iterator().next().getReferenceCount()).isEqualTo(joiners);
+        verify(client, times(1)).createMediaPipeline();
+    }
+
+    @Test
+    void slowPipelineCreationOnlyHoldsUpThatRoom() throws Exception {
+        KurentoClient client = mock(KurentoClient.class);
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch kmsAnswers = new CountDownLatch(1);
+        when(client.createMediaPipeline())
+                .thenAnswer(invocation -> {
+                    creating.countDown();
+                    kmsAnswers.await(5, TimeUnit.SECONDS);
+                    return mock(MediaPipeline.class);
+                })
+                .thenAnswer(invocation -> mock(MediaPipeline.class));
+        RoomManager roomManager = roomManager(client, Duration.ofSeconds(30));
+
+        CompletableFuture<Room> first = CompletableFuture.supplyAsync(() -> roomManager.acquireRoom("slow"));
+        assertThat(creating.await(2, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Room> second = CompletableFuture.supplyAsync(() -> roomManager.acquireRoom("slow"));
+
+        assertThat(CompletableFuture.supplyAsync(() -> roomManager.acquireRoom("quick")).get(2, TimeUnit.SECONDS))
+                .isNotNull();
+        assertThat(roomManager.findRoom("slow")).isNull();
+        assertThat(second).isNotDone();
+
+        kmsAnswers.countDown();
+        Room room = first.get(2, TimeUnit.SECONDS);
+        assertThat(second.get(2, TimeUnit.SECONDS)).isSameAs(room);
+        assertThat(room.getReferenceCount()).isEqualTo(2);
+        assertThat(roomManager.findRoom("slow")).isSameAs(room);
+    }
+
+    @Test
+    void failedCreationLeavesTheNameFreeForTheNextJoin() {
+        KurentoClient client = mock(KurentoClient.class);
+        when(client.createMediaPipeline())
+                .thenThrow(new IllegalStateException("down"))
+                .thenAnswer(invocation -> mock(MediaPipeline.class));
+        RoomManager roomManager = roomManager(client, Duration.ofSeconds(30));
+
+        assertThatThrownBy(() -> roomManager.acquireRoom("room")).hasMessage("down");
+        assertThat(roomManager.findRoom("room")).isNull();
+
+        assertThat(roomManager.acquireRoom("room")).isNotNull();
+        assertThat(roomManager.getRoomCount()).isEqualTo(1);
+    }
+
+    @Test
+    void failingRoomCreatedListenerDoesNotStrandThePipeline() {
+        KurentoClient client = client();
+        KmsCluster cluster = new KmsCluster(List.of(new KmsNode("ws://kms", client)),
+                KmsCluster.PlacementStrategy.ENDPOINTS);
+        RoomListener failing = new RoomListener() {
+            @Override
+            public void roomCreated(Room room) {
+                throw new IllegalStateException("listener down");
+            }
+        };
+        RoomManager roomManager = new RoomManager(cluster, SignalingFixtures.properties().build(), List.of(failing));
+
+        Room room = roomManager.acquireRoom("room");
+
+        assertThat(roomManager.findRoom("room")).isSameAs(room);
+        assertThat(cluster.nodeOf(room)).isNotNull();
+    }
+
+    @Test
+    void emptyRoomLingersAndIsReusedOnRejoin() {
+        KurentoClient client = client();
+        RoomManager roomManager = roomManager(client, Duration.ofMinutes(1));
+
+        Room room = roomManager.acquireRoom("room");
+        roomManager.releaseRoom(room);
+        roomManager.reapIdleRooms();
+
+        assertThat(roomManager.acquireRoom("room")).isSameAs(room);
+        verify(client, times(1)).createMediaPipeline();
+    }
+
+    @Test
+    void sweeperReapsRoomsIdleLongerThanLinger() {
+        KurentoClient client = client();
+        RoomManager roomManager = roomManager(client, Duration.ZERO);
+
+        Room room = roomManager.acquireRoom("room");
+        roomManager.releaseRoom(room);
+        roomManager.reapIdleRooms();
+
+        assertThat(roomManager.findRoom("room")).isNull();
+        assertThat(room.acquire()).isFalse();
+        verify(room.getPipeline()).release(any(Continuation.class));
+
+        assertThat(roomManager.acquireRoom("room")).isNotSameAs(room);
+    }
+
+    private RoomManager roomManager(KurentoClient client, Duration linger) {
+        SignalingProperties properties = SignalingFixtures.properties().set(SignalingProperties::setRoomLinger, linger).build();
+        KmsCluster cluster = new KmsCluster(List.of(new KmsNode("ws://kms", client)),
+                KmsCluster.PlacementStrategy.ENDPOINTS);
+        return new RoomManager(cluster, properties);
+    }
+
+    private KurentoClient client() {
+        KurentoClient client = mock(KurentoClient.class);
+        when(client.createMediaPipeline()).thenAnswer(invocation -> mock(MediaPipeline.class));
+        return client;
+    }
+}
@@ -0,0 +1,81 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.DispatcherOneToMany;
+import org.kurento.client.Hub;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RoomPresenterTest {
+
+    private final Map<String, List<JsonNode>> received = new ConcurrentHashMap<>();
+
+    @Test
+    void viewersAreReceiveOnlyAndOfferedThePresenterStream() throws Exception {
+        SignalingProperties properties = properties();
+        Room room = new Room("webinar", mock(MediaPipeline.class), List.of(), List.of(), properties,
+                RoomMode.BROADCAST) {
+            @Override
+            Hub createHub(RoomMode mode) {
+                return mock(DispatcherOneToMany.class);
+            }
+
+            @Override
+            WebRtcEndpoint takeOutgoingEndpoint() {
+                return mock(WebRtcEndpoint.class);
+            }
+        };
+
+        UserSession host = room.join("host", "manager", session("host"));
+        for (int i = 0; i < 50; i++) {
+            room.join("viewer" + i, "user", session("viewer" + i));
+        }
+
+        assertThat(host.canPublish()).isTrue();
+        assertThat(room.getParticipant("viewer7").canPublish()).isFalse();
+        // No publish endpoints and no mesh subscriptions for viewers
+        assertThat(room.getEndpointCount()).isEqualTo(1);
+
+        // Queued behind anything the joins sent, so once it is in everything before it is too
+        ObjectNode ping = JsonNodeFactory.instance.objectNode();
+        ping.put("id", "ping");
+        room.broadcast(ping, null);
+        waitUntil(() -> received.values().stream()
+                .allMatch(messages -> messages.stream().anyMatch(m -> "ping".equals(m.get("id").asText()))));
+        JsonNode existing = received.get("viewer7").stream()
+                .filter(m -> "existingParticipants".equals(m.get("id").asText())).findFirst().orElseThrow();
+        assertThat(existing.get("publish").asBoolean()).isFalse();
+        assertThat(existing.get("data").get(0).get("name").asText()).isEqualTo(Room.PRESENTER_STREAM);
+        assertThat(received.get("host")).noneMatch(m -> "newParticipantArrived".equals(m.get("id").asText()));
+    }
+
+    private WebSocketSession session(String name) {
+        List<JsonNode> messages = new CopyOnWriteArrayList<>();
+        received.put(name, messages);
+        return new TestWebSocketSession(name, SignalingFixtures.json(messages));
+    }
+
+    private SignalingProperties properties() {
+        return SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 64)
+                .set(SignalingProperties::setCandidateBufferMaxPeers, 4)
+                .set(SignalingProperties::setCandidateBufferMaxPerPeer, 4)
+                .set(SignalingProperties::setCandidateBufferTtl, Duration.ofSeconds(5))
+                .build();
+    }
+}
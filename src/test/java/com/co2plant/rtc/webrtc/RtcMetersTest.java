@@ -0,0 +1,155 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.co2plant.rtc.webrtc.SignalingFixtures.waitUntil;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RtcMetersTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void addRegistry() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void removeRegistry() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void timesKurentoCallsByOutcome() {
+        CompletableFuture<String> ok = KurentoFutures.call("metricsTestOffer", c -> complete(c, "answer"));
+        CompletableFuture<String> failed = KurentoFutures.call("metricsTestOffer",
+                c -> fail(c, new IllegalStateException("boom")));
+
+        assertThat(ok).isCompletedWithValue("answer");
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(rpc("metricsTestOffer", "success").count()).isEqualTo(1);
+        assertThat(rpc("metricsTestOffer", "error").count()).isEqualTo(1);
+    }
+
+    @Test
+    void timesBlockingCallsEvenWhenTheyThrow() {
+        assertThat(KurentoFutures.timed("metricsTestBuild", () -> "endpoint")).isEqualTo("endpoint");
+        Supplier<String> broken = () -> {
+            throw new IllegalStateException("KMS gone");
+        };
+        assertThatThrownBy(() -> KurentoFutures.timed("metricsTestBuild", broken))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(rpc("metricsTestBuild", "success").count()).isEqualTo(1);
+        assertThat(rpc("metricsTestBuild", "error").count()).isEqualTo(1);
+    }
+
+    @Test
+    void timesOutboundFramesAndCountsDrops() throws Exception {
+        TestWebSocketSession session = new TestWebSocketSession("metrics");
+        OutboundQueue queue = new OutboundQueue(session, 4, OutboundQueue.OverflowPolicy.DROP);
+
+        queue.offer("{\"id\":\"ping\"}");
+        waitUntil(() -> registry.get("rtc.signaling.outbound.send").timer().count() == 1);
+        session.close();
+        queue.offer("{\"id\":\"ping\"}");
+        waitUntil(() -> queue.getStats().dropped() == 1);
+        queue.close();
+
+        assertThat(registry.get("rtc.signaling.outbound.queued").timer().count()).isEqualTo(1);
+        assertThat(registry.get("rtc.signaling.outbound.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void gaugesFollowRoomsAndNodes() {
+        RoomManager rooms = mock(RoomManager.class);
+        when(rooms.getRoomCount()).thenReturn(3);
+        when(rooms.getRooms()).thenReturn(List.of());
+        KmsNode node = mock(KmsNode.class);
+        when(node.getUrl()).thenReturn("ws://kms-1");
+        when(node.getEndpointCount()).thenReturn(42);
+        KmsCluster kms = mock(KmsCluster.class);
+        when(kms.getNodes()).thenReturn(List.of(node));
+
+        new RtcMeterBinder(rooms, kms).bindTo(registry);
+
+        assertThat(registry.get("rtc.rooms").gauge().value()).isEqualTo(3);
+        assertThat(registry.get("rtc.participants").gauge().value()).isZero();
+        assertThat(registry.get("rtc.signaling.outbound.depth").gauge().value()).isZero();
+        assertThat(registry.get("rtc.signaling.outbound.full").gauge().value()).isZero();
+        assertThat(registry.get("rtc.kms.endpoints").tag("node", "ws://kms-1").gauge().value()).isEqualTo(42);
+    }
+
+    @Test
+    void outboundGaugesFindTheFullestQueue() throws Exception {
+        SignalingProperties properties = SignalingFixtures.properties()
+                .set(SignalingProperties::setOutboundCapacity, 2)
+                .set(SignalingProperties::setOverflowPolicy, OutboundQueue.OverflowPolicy.DROP)
+                .build();
+        Room room = new Room("room", mock(MediaPipeline.class), properties);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch stuck = new CountDownLatch(1);
+        TestWebSocketSession slow = new TestWebSocketSession("slow", message -> {
+            writing.countDown();
+            try {
+                stuck.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        UserSession user = SignalingFixtures.participant(room, "slow", slow, properties, mock(WebRtcEndpoint.class));
+        room.join(user);
+        RoomManager rooms = mock(RoomManager.class);
+        when(rooms.getRooms()).thenReturn(List.of(room));
+        new RtcMeterBinder(rooms, mock(KmsCluster.class)).bindTo(registry);
+
+        // The join's first frame is stuck in the socket write, so the rest fill the queue
+        assertThat(writing.await(2, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 4; i++) {
+            user.getOutbound().offer("{\"id\":\"ping\"}");
+        }
+
+        assertThat(registry.get("rtc.signaling.outbound.depth").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("rtc.signaling.outbound.depth.max").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("rtc.signaling.outbound.full").gauge().value()).isEqualTo(1);
+        stuck.countDown();
+    }
+
+    private Timer rpc(String operation, String outcome) {
+        return registry.get("rtc.kurento.rpc").tag("operation", operation).tag("outcome", outcome).timer();
+    }
+
+    private static <T> void complete(Continuation<T> continuation, T result) {
+        try {
+            continuation.onSuccess(result);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> void fail(Continuation<T> continuation, Throwable cause) {
+        try {
+            continuation.onError(cause);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
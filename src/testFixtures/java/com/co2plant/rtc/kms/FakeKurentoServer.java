@@ -0,0 +1,525 @@
+package com.co2plant.rtc.kms;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.websocket.server.WsSci;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for a Kurento Media Server: speaks the Kurento JSON-RPC protocol over WebSocket so
+ * an unmodified {@code KurentoClient} can run the signaling code without Docker or real media.
+ * <p>
+ * It keeps the media object tree (pipelines, elements, hub ports, connections) and answers
+ * {@code create}, {@code invoke}, {@code subscribe}, {@code unsubscribe}, {@code release} and
+ * {@code ping}. {@code processOffer} returns an answer with the offer's media sections,
+ * {@code gatherCandidates} fires {@code IceCandidateFound} and then {@code IceGatheringDone} to
+ * subscribers. Property setters are stored and getters return them. Any other operation succeeds with
+ * no value. Every reply can be delayed per method or operation, with seeded jitter so runs repeat.
+ * <p>
+ * Start one with {@link #builder()}, or run {@link #main} ({@code ./gradlew fakeKms}) and point
+ * {@code kurento.client.url} at it.
+ */
+public class FakeKurentoServer implements Closeable {
+
+    public static final String PATH = "/kurento";
+
+    private static final int OBJECT_NOT_FOUND = 40101;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final String SERVER_MANAGER = "manager_ServerManager";
+
+    private final Logger log = LoggerFactory.getLogger(FakeKurentoServer.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonNodeFactory json = JsonNodeFactory.instance;
+
+    private final Map<String, Duration> latencies;
+    private final Duration defaultLatency;
+    private final Duration jitter;
+    private final Random random;
+    private final int candidatesPerGathering;
+
+    private final ConcurrentMap<String, MediaObject> objects = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private final Tomcat tomcat;
+    private final int port;
+
+    private FakeKurentoServer(Builder builder) {
+        this.latencies = Map.copyOf(builder.latencies);
+        this.defaultLatency = builder.defaultLatency;
+        this.jitter = builder.jitter;
+        this.random = new Random(builder.seed);
+        this.candidatesPerGathering = builder.candidatesPerGathering;
+        this.scheduler = Executors.newScheduledThreadPool(builder.threads, Thread.ofPlatform()
+                .name("fake-kms-", 0).daemon().factory());
+        this.tomcat = new Tomcat();
+        try {
+            tomcat.setBaseDir(Files.createTempDirectory("fake-kms").toString());
+            final Connector connector = new Connector();
+            connector.setPort(builder.port);
+            tomcat.setConnector(connector);
+            final Context context = tomcat.addContext("", null);
+            // WsFilter only runs for requests that map to a servlet
+            Tomcat.addServlet(context, "default", new HttpServlet() {
+            });
+            context.addServletMappingDecoded("/", "default");
+            context.addServletContainerInitializer(new WsSci(), null);
+            context.addServletContainerInitializer((classes, servletContext) -> {
+                final ServerContainer container =
+                        (ServerContainer) servletContext.getAttribute(ServerContainer.class.getName());
+                try {
+                    container.addEndpoint(ServerEndpointConfig.Builder.create(Connection.class, PATH)
+                            .configurator(new ServerEndpointConfig.Configurator() {
+                                @Override
+                                public <T> T getEndpointInstance(Class<T> endpointClass) {
+                                    return endpointClass.cast(new Connection());
+                                }
+                            })
+                            .build());
+                } catch (DeploymentException e) {
+                    throw new ServletException(e);
+                }
+            }, null);
+            tomcat.start();
+            this.port = connector.getLocalPort();
+        } catch (IOException | LifecycleException e) {
+            scheduler.shutdownNow();
+            throw new IllegalStateException("Could not start the fake KMS", e);
+        }
+        log.info("Fake KMS listening on {}", getUrl());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Runs a fake KMS until killed. Arguments: port (8888), default latency in ms (0).
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final FakeKurentoServer server = builder()
+                .port(args.length > 0 ? Integer.parseInt(args[0]) : 8888)
+                .latency(Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 0))
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+
+    public String getUrl() {
+        return "ws://127.0.0.1:" + port + PATH;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param method a JSON-RPC method such as {@code create}, or an {@code invoke} operation such as
+     *               {@code processOffer}
+     */
+    public long getCallCount(String method) {
+        final LongAdder count = calls.get(method);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return live media objects, pipelines included
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return ids of the elements {@code objectId} is connected to, empty if unknown
+     */
+    public Set<String> getSinks(String objectId) {
+        final MediaObject object = objects.get(objectId);
+        return object != null ? Set.copyOf(object.sinks) : Set.of();
+    }
+
+    @Override
+    public void close() {
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } catch (LifecycleException e) {
+            log.warn("Fake KMS did not stop cleanly", e);
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void receive(Connection connection, String text) {
+        final JsonNode request;
+        try {
+            request = mapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            log.warn("Fake KMS: unparsable request {}", text);
+            return;
+        }
+        final String method = request.path("method").asText();
+        final JsonNode params = request.path("params");
+        final String key = "invoke".equals(method) ? params.path("operation").asText() : method;
+        calls.computeIfAbsent(key, k -> new LongAdder()).increment();
+
+        final long delay = delayNanos(key);
+        final Runnable reply = () -> reply(connection, request.get("id"), method, params);
+        if (delay > 0) {
+            scheduler.schedule(reply, delay, TimeUnit.NANOSECONDS);
+        } else {
+            reply.run();
+        }
+    }
+
+    private long delayNanos(String key) {
+        long nanos = latencies.getOrDefault(key, defaultLatency).toNanos();
+        if (!jitter.isZero()) {
+            synchronized (random) {
+                nanos += (long) (random.nextDouble() * jitter.toNanos());
+            }
+        }
+        return nanos;
+    }
+
+    private void reply(Connection connection, JsonNode id, String method, JsonNode params) {
+        final ObjectNode response = json.objectNode();
+        response.put("jsonrpc", "2.0");
+        if (id != null) {
+            response.set("id", id);
+        }
+        try {
+            final JsonNode value = switch (method) {
+                case "create" -> create(params);
+                case "invoke" -> invoke(params);
+                case "subscribe" -> subscribe(connection, params);
+                case "unsubscribe" -> {
+                    subscriptions.remove(params.path("subscription").asText());
+                    yield null;
+                }
+                case "release" -> {
+                    release(params.path("object").asText());
+                    yield null;
+                }
+                case "ping" -> json.textNode("pong");
+                case "connect", "closeSession" -> null;
+                default -> throw new RpcError(METHOD_NOT_FOUND, "Method not found: " + method, "METHOD_NOT_FOUND");
+            };
+            final ObjectNode result = response.putObject("result");
+            if (value != null) {
+                result.set("value", value);
+            }
+            result.put("sessionId", connection.sessionId);
+        } catch (RpcError e) {
+            final ObjectNode error = response.putObject("error");
+            error.put("code", e.code);
+            error.put("message", e.getMessage());
+            error.putObject("data").put("type", e.type);
+        }
+        if (id != null) {
+            connection.send(response);
+        }
+        if ("invoke".equals(method) && "gatherCandidates".equals(params.path("operation").asText())
+                && !response.has("error")) {
+            gather(params.path("object").asText());
+        }
+    }
+
+    private JsonNode create(JsonNode params) {
+        final String type = params.path("type").asText();
+        final JsonNode constructor = params.path("constructorParams");
+        final String pipeline;
+        if ("MediaPipeline".equals(type)) {
+            pipeline = null;
+        } else if (constructor.has("mediaPipeline")) {
+            pipeline = find(constructor.path("mediaPipeline").asText()).id;
+        } else if (constructor.has("hub")) {
+            pipeline = find(constructor.path("hub").asText()).pipeline;
+        } else {
+            throw new RpcError(OBJECT_NOT_FOUND, type + " needs a parent", "MEDIA_OBJECT_NOT_FOUND");
+        }
+        final String suffix = UUID.randomUUID() + "_kurento." + type;
+        final String id = pipeline == null ? suffix : pipeline + "/" + suffix;
+        objects.put(id, new MediaObject(id, type, pipeline));
+        return json.textNode(id);
+    }
+
+    private JsonNode invoke(JsonNode params) {
+        final String objectId = params.path("object").asText();
+        final String operation = params.path("operation").asText();
+        final JsonNode args = params.path("operationParams");
+        if (SERVER_MANAGER.equals(objectId)) {
+            return switch (operation) {
+                case "getUsedCpu" -> json.numberNode(0.0f);
+                case "getUsedMemory" -> json.numberNode(0L);
+                default -> null;
+            };
+        }
+        final MediaObject object = find(objectId);
+        switch (operation) {
+            case "connect" -> object.sinks.add(find(args.path("sink").asText()).id);
+            case "disconnect" -> object.sinks.remove(args.path("sink").asText());
+            case "processOffer" -> {
+                return json.textNode(answer(args.path("offer").asText()));
+            }
+            case "getStats" -> {
+                return json.objectNode();
+            }
+            default -> {
+                if (operation.startsWith("set") && args.isObject()) {
+                    args.fields().forEachRemaining(field -> object.properties.put(field.getKey(), field.getValue()));
+                } else if (operation.startsWith("get") && operation.length() > 3) {
+                    final String property = Character.toLowerCase(operation.charAt(3)) + operation.substring(4);
+                    return object.properties.get(property);
+                }
+            }
+        }
+        return null;
+    }
+
+    private JsonNode subscribe(Connection connection, JsonNode params) {
+        final MediaObject object = find(params.path("object").asText());
+        final String id = object.id + "/" + UUID.randomUUID();
+        subscriptions.put(id, new Subscription(connection, object.id, params.path("type").asText()));
+        return json.textNode(id);
+    }
+
+    private void release(String objectId) {
+        final MediaObject object = find(objectId);
+        objects.remove(object.id);
+        if (object.pipeline == null) {
+            // Releasing a pipeline releases everything in it
+            objects.values().removeIf(child -> object.id.equals(child.pipeline));
+        }
+        subscriptions.values().removeIf(s -> !objects.containsKey(s.object));
+    }
+
+    private MediaObject find(String objectId) {
+        final MediaObject object = objects.get(objectId);
+        if (object == null) {
+            throw new RpcError(OBJECT_NOT_FOUND, "Object '" + objectId + "' not found", "MEDIA_OBJECT_NOT_FOUND");
+        }
+        return object;
+    }
+
+    private String answer(String offer) {
+        final StringBuilder sdp = new StringBuilder("v=0\r\no=- ")
+                .append(System.nanoTime()).append(" 0 IN IP4 127.0.0.1\r\ns=Fake Kurento\r\nt=0 0\r\n");
+        for (final String line : offer.split("\r?\n")) {
+            if (line.startsWith("m=") || line.startsWith("a=mid:") || line.startsWith("a=group:")) {
+                sdp.append(line).append("\r\n");
+            }
+        }
+        return sdp.toString();
+    }
+
+    private void gather(String objectId) {
+        for (int i = 0; i < candidatesPerGathering; i++) {
+            final ObjectNode candidate = json.objectNode();
+            candidate.put("__module__", "kurento");
+            candidate.put("__type__", "IceCandidate");
+            candidate.put("candidate", "candidate:" + (i + 1) + " 1 UDP " + (2122252543 - i)
+                    + " 127.0.0.1 " + (40000 + i) + " typ host");
+            candidate.put("sdpMid", "0");
+            candidate.put("sdpMLineIndex", 0);
+            final ObjectNode data = json.objectNode();
+            data.set("candidate", candidate);
+            emit(objectId, "IceCandidateFound", data);
+        }
+        emit(objectId, "IceGatheringDone", json.objectNode());
+    }
+
+    private void emit(String objectId, String type, ObjectNode data) {
+        final long now = System.currentTimeMillis();
+        data.put("source", objectId);
+        data.put("type", type);
+        data.putArray("tags");
+        data.put("timestamp", Long.toString(now / 1000));
+        data.put("timestampMillis", Long.toString(now));
+        for (final Subscription subscription : subscriptions.values()) {
+            if (subscription.object.equals(objectId) && subscription.type.equals(type)) {
+                final ObjectNode event = json.objectNode();
+                event.put("jsonrpc", "2.0");
+                event.put("method", "onEvent");
+                final ObjectNode value = event.putObject("params").putObject("value");
+                value.set("data", data);
+                value.put("object", objectId);
+                value.put("type", type);
+                subscription.connection.send(event);
+            }
+        }
+    }
+
+    private static final class MediaObject {
+        final String id;
+        final String type;
+        final String pipeline; // null for pipelines themselves
+        final Set<String> sinks = ConcurrentHashMap.newKeySet();
+        final Map<String, JsonNode> properties = new ConcurrentHashMap<>();
+
+        MediaObject(String id, String type, String pipeline) {
+            this.id = id;
+            this.type = type;
+            this.pipeline = pipeline;
+        }
+    }
+
+    private record Subscription(Connection connection, String object, String type) {
+    }
+
+    private static final class RpcError extends RuntimeException {
+        final int code;
+        final String type;
+
+        RpcError(int code, String message, String type) {
+            super(message);
+            this.code = code;
+            this.type = type;
+        }
+    }
+
+    /**
+     * One client connection.
+     */
+    final class Connection extends Endpoint implements MessageHandler.Whole<String> {
+
+        private final String sessionId = UUID.randomUUID().toString();
+        private Session session;
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            this.session = session;
+            session.setMaxTextMessageBufferSize(1 << 20);
+            session.addMessageHandler(this);
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void onMessage(String text) {
+            receive(this, text);
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason reason) {
+            connections.decrementAndGet();
+            subscriptions.values().removeIf(s -> s.connection == this);
+        }
+
+        void send(JsonNode message) {
+            synchronized (this) {
+                if (!session.isOpen()) {
+                    return;
+                }
+                try {
+                    session.getBasicRemote().sendText(message.toString());
+                } catch (IOException e) {
+                    log.debug("Fake KMS: could not send to {}: {}", sessionId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Duration> latencies = new HashMap<>();
+        private Duration defaultLatency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private long seed = 42;
+        private int candidatesPerGathering = 2;
+        private int threads = 4;
+        private int port;
+
+        private Builder() {
+        }
+
+        /**
+         * @param port 0 (the default) picks a free one
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Delay before every reply without a more specific one.
+         */
+        public Builder latency(Duration latency) {
+            this.defaultLatency = latency;
+            return this;
+        }
+
+        /**
+         * @param method JSON-RPC method ({@code create}, {@code release}...) or invoke operation
+         *               ({@code processOffer}, {@code connect}...)
+         */
+        public Builder latency(String method, Duration latency) {
+            this.latencies.put(method, latency);
+            return this;
+        }
+
+        /**
+         * Adds a uniformly distributed delay in {@code [0, jitter)} to every reply, drawn from a
+         * generator seeded with {@code seed}.
+         */
+        public Builder jitter(Duration jitter, long seed) {
+            this.jitter = jitter;
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder candidatesPerGathering(int candidates) {
+            this.candidatesPerGathering = candidates;
+            return this;
+        }
+
+        /**
+         * Threads delivering delayed replies.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public FakeKurentoServer start() {
+            return new FakeKurentoServer(this);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.co2plant.rtc.webrtc;
+
+import com.co2plant.rtc.config.SignalingProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kurento.client.WebRtcEndpoint;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Signaling settings and participants for tests and benchmarks that drive a {@link Room} without Spring.
+ */
+public final class SignalingFixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SignalingFixtures() {
+    }
+
+    /**
+     * Properties as in application.yaml; {@link PropertiesBuilder#set} overrides single fields.
+     */
+    public static PropertiesBuilder properties() {
+        return new PropertiesBuilder();
+    }
+
+    /**
+     * A participant of {@code room} whose frames go through a real {@link OutboundQueue} to {@code session}.
+     */
+    public static UserSession participant(Room room, String name, WebSocketSession session,
+                                          SignalingProperties properties, WebRtcEndpoint outgoing) {
+        final OutboundQueue outbound = new OutboundQueue(session, properties.getOutboundCapacity(),
+                properties.getOverflowPolicy());
+        return new UserSession(name, "user", room.getName(), session, outbound, room.getPipeline(), outgoing,
+                new CandidateBuffer(properties));
+    }
+
+    /**
+     * A participant outside any room, for tests of its own state; whatever it is sent is discarded.
+     *
+     * @param outgoing null for a receive-only viewer
+     */
+    public static UserSession participant(String name, String role, WebRtcEndpoint outgoing) {
+        final SignalingProperties properties = properties().build();
+        final WebSocketSession session = new TestWebSocketSession(name);
+        final OutboundQueue outbound = new OutboundQueue(session, properties.getOutboundCapacity(),
+                properties.getOverflowPolicy());
+        return new UserSession(name, role, "room", session, outbound, null, outgoing,
+                new CandidateBuffer(properties));
+    }
+
+    /**
+     * A sink for {@link TestWebSocketSession} that parses every text frame into {@code frames}.
+     */
+    public static Consumer<WebSocketMessage<?>> json(Collection<JsonNode> frames) {
+        return message -> {
+            try {
+                frames.add(MAPPER.readTree(((TextMessage) message).getPayload()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Polls {@code condition} for up to two seconds, for state that settles on another thread.
+     */
+    public static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 2_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        if (!condition.getAsBoolean()) {
+            throw new AssertionError("Condition not met within 2s");
+        }
+    }
+
+    public static final class PropertiesBuilder {
+
+        private final SignalingProperties properties = new SignalingProperties();
+
+        private PropertiesBuilder() {
+            properties.setOutboundCapacity(256);
+            properties.setOverflowPolicy(OutboundQueue.OverflowPolicy.COALESCE_ICE);
+            properties.setInboundCapacity(64);
+            properties.setBroadcastParallelThreshold(64);
+            properties.setIceBatchWindow(Duration.ofMillis(20));
+            properties.setCandidateBufferMaxPeers(64);
+            properties.setCandidateBufferMaxPerPeer(64);
+            properties.setCandidateBufferTtl(Duration.ofSeconds(30));
+            properties.setDefaultRoomMode(RoomMode.MESH);
+            properties.setCompositeThreshold(0);
+            properties.setRoomLinger(Duration.ofSeconds(30));
+        }
+
+        /**
+         * @param setter e.g. {@code SignalingProperties::setOutboundCapacity}
+         */
+        public <T> PropertiesBuilder set(BiConsumer<SignalingProperties, T> setter, T value) {
+            setter.accept(properties, value);
+            return this;
+        }
+
+        public SignalingProperties build() {
+            return properties;
+        }
+    }
+}